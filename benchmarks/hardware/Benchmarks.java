@@ -0,0 +1,458 @@
+package hardware;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the hot paths of the hardware store: looking up an Item
+ * by ID, searching by name, saving the database and loading it on a growing
+ * number of threads, against the serialized file of earlier versions, with
+ * the size of each, checking input against the rules of the forms, rendering
+ * table rows, and selling one Item from many threads at once through
+ * InventoryService, journal included. Like JMH, each benchmark is run for a
+ * few warmup iterations, which are discarded, then for several measured
+ * iterations of a fixed time, and its score is the mean throughput with its
+ * standard deviation. The scores are printed and written as a JSON array in
+ * the form JMH uses, so that runs can be compared to find regressions.
+ * <p>
+ * It is kept in the benchmarks source set, apart from the store, and run by
+ * the benchmark task of the build with a heap large enough for the largest
+ * store, for example:
+ *
+ * <pre>
+ * gradle benchmark -Precords="10000 100000 1000000"
+ * </pre>
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class Benchmarks {
+	/**
+	 * This interface is one benchmark, which performs the operation being
+	 * measured a given number of times.
+	 */
+	private interface Benchmark {
+		/**
+		 * @param operations
+		 *            the number of times to perform the operation.
+		 * @return any value computed from the results, so that the work cannot
+		 *         be optimized away.
+		 * @throws Exception
+		 *             when the operation fails.
+		 */
+		long run(int operations) throws Exception;
+	}
+
+	private static final String[] CSV_LINES = { "Hardware,AB123,Claw hammer,12,19.99,Fasteners",
+			"Appliance,FR001,\"Fridge, \"\"deluxe\"\"\",2,499.99,Acme,Refrigerators",
+			"Customer,Ann,Lee,555-555-1234,1 Main Street", "Employee,Bob,Ray,123456789,52000",
+			"Hardware,AB124,Bad price,3,1.234,Fasteners" };
+	private static final long ITERATION_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+	private static final int MEASUREMENT_ITERATIONS = 5;
+	private static final String[] PHONES = { "555-555-1234", "5555551234", "555-555-123", "123-456-7890" };
+	private static final float[] PRICES = { 19.99f, 1.234f, 0.5f, 100f, 7.001f, 42.42f };
+	private static final String[] QUERIES = { "HAMMER", "drill 12", "saw", "zzz" };
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final String[] WORDS = { "Hammer", "Drill", "Saw", "Wrench", "Nail", "Screw", "Bolt", "Paint" };
+	private static volatile long sink;
+	private final StringBuilder json = new StringBuilder();
+
+	/**
+	 * This method runs one benchmark and records its score.
+	 */
+	private void measure(String name, int records, Benchmark benchmark) throws Exception {
+		for (int x = 0; x < WARMUP_ITERATIONS; x++) {
+			iteration(benchmark);
+		}
+		double[] scores = new double[MEASUREMENT_ITERATIONS];
+		double mean = 0;
+		for (int x = 0; x < scores.length; x++) {
+			scores[x] = iteration(benchmark);
+			mean += scores[x] / scores.length;
+		}
+		double variance = 0;
+		for (double score : scores) {
+			variance += (score - mean) * (score - mean) / (scores.length - 1);
+		}
+		double error = Math.sqrt(variance);
+		System.out.println(String.format(Locale.ROOT, "%-28s %9d %16.1f +- %12.1f ops/s", name, records, mean,
+				error));
+		json.append(json.length() == 0 ? "[\n" : ",\n").append("  {\"benchmark\":").append(Json.quote(name))
+				.append(",\"mode\":\"thrpt\",\"params\":{\"records\":\"").append(records)
+				.append("\"},\"primaryMetric\":{\"score\":").append(String.format(Locale.ROOT, "%.3f", mean))
+				.append(",\"scoreError\":").append(String.format(Locale.ROOT, "%.3f", error))
+				.append(",\"scoreUnit\":\"ops/s\"}}");
+	}
+
+	/**
+	 * This method records the size of a file, in bytes, as a score of its
+	 * own, so that it is compared between runs like the others.
+	 */
+	private void recordSize(String name, int records, long bytes) {
+		System.out.println(String.format(Locale.ROOT, "%-28s %9d %16d bytes", name, records, bytes));
+		json.append(json.length() == 0 ? "[\n" : ",\n").append("  {\"benchmark\":").append(Json.quote(name))
+				.append(",\"mode\":\"size\",\"params\":{\"records\":\"").append(records)
+				.append("\"},\"primaryMetric\":{\"score\":").append(bytes)
+				.append(",\"scoreError\":0,\"scoreUnit\":\"bytes\"}}");
+	}
+
+	private void run(int records) throws Exception {
+		Inventory inventory = newInventory(records);
+		String[] ids = new String[4096];
+		Random random = new Random(1);
+		for (int x = 0; x < ids.length; x++) {
+			ids[x] = ItemIDCodec.decode(random.nextInt(records)).toLowerCase();
+		}
+		measure("lookup.itemByID", records, new Benchmark() {
+			@Override
+			public long run(int operations) {
+				long found = 0;
+				for (int x = 0; x < operations; x++) {
+					if (inventory.getItem(ids[x & 4095]) != null)
+						found++;
+				}
+				return found;
+			}
+		});
+		measure("search.trigramIndex", records, new Benchmark() {
+			@Override
+			public long run(int operations) {
+				long found = 0;
+				for (int x = 0; x < operations; x++) {
+					found += inventory.search(QUERIES[x & 3]).size();
+				}
+				return found;
+			}
+		});
+		List<Item> items = inventory.getItems();
+		measure("search.substringScan", records, new Benchmark() {
+			@Override
+			public long run(int operations) {
+				long found = 0;
+				for (int x = 0; x < operations; x++) {
+					String query = QUERIES[x & 3].toUpperCase();
+					for (Item item : items) {
+						for (String field : item.getSearchFields()) {
+							if (field.toUpperCase().contains(query)) {
+								found++;
+								break;
+							}
+						}
+					}
+				}
+				return found;
+			}
+		});
+		measure("render.itemRows", records, new Benchmark() {
+			@Override
+			public long run(int operations) {
+				long length = 0;
+				for (int x = 0; x < operations; x++) {
+					length += items.get(x % items.size()).toStringArray()[3].length();
+				}
+				return length;
+			}
+		});
+		TransactionLog transactions = newTransactionLog(records);
+		TransactionTableModel transactionRows = new TransactionTableModel(transactions);
+		measure("render.transactionRows", records, new Benchmark() {
+			@Override
+			public long run(int operations) {
+				long hash = 0;
+				for (int x = 0; x < operations; x++) {
+					int row = x % records;
+					for (int column = 0; column < transactionRows.getColumnCount(); column++) {
+						hash += transactionRows.getValueAt(row, column).hashCode();
+					}
+				}
+				return hash;
+			}
+		});
+		File file = File.createTempFile("benchmark", ".hwdb");
+		file.deleteOnExit();
+		Snapshot snapshot = new Snapshot(inventory, transactions, records / 100 + 1);
+		measure("persistence.save", records, new Benchmark() {
+			@Override
+			public long run(int operations) throws IOException {
+				for (int x = 0; x < operations; x++) {
+					snapshot.write(file.getPath());
+				}
+				return file.length();
+			}
+		});
+		// The load is measured on a growing number of threads, so that how it
+		// scales shows as the scores of one run; its time is 1 / score.
+		for (int loadThreads = 1; loadThreads <= Math.max(4, Runtime.getRuntime()
+				.availableProcessors()); loadThreads *= 2) {
+			int decoders = loadThreads;
+			measure("persistence.load." + loadThreads + "Threads", records, new Benchmark() {
+				@Override
+				public long run(int operations) throws IOException {
+					long size = 0;
+					for (int x = 0; x < operations; x++) {
+						size += Snapshot.read(file.getPath(), new Inventory(), new TransactionLog(), null, decoders)
+								.transactions.size();
+					}
+					return size;
+				}
+			});
+		}
+		// The same store is saved and loaded as earlier versions did, as one
+		// serialized object graph with a Transaction object per sale. Those
+		// also held a Form each, which is left out, so the legacy figures
+		// are the best the format could do.
+		File legacyFile = File.createTempFile("benchmark", ".srl");
+		legacyFile.deleteOnExit();
+		ArrayList<List<?>> legacyStore = newLegacyStore(inventory, transactions);
+		measure("persistence.legacy.save", records, new Benchmark() {
+			@Override
+			public long run(int operations) throws IOException {
+				for (int x = 0; x < operations; x++) {
+					try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+							new FileOutputStream(legacyFile)))) {
+						out.writeObject(legacyStore);
+					}
+				}
+				return legacyFile.length();
+			}
+		});
+		measure("persistence.legacy.load", records, new Benchmark() {
+			@Override
+			public long run(int operations) throws Exception {
+				long size = 0;
+				for (int x = 0; x < operations; x++) {
+					try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+							new FileInputStream(legacyFile)))) {
+						size += ((List<?>) in.readObject()).size();
+					}
+				}
+				return size;
+			}
+		});
+		recordSize("persistence.fileSize", records, file.length());
+		recordSize("persistence.legacy.fileSize", records, legacyFile.length());
+		legacyFile.delete();
+		// Each incremental save follows one change, so that it encodes one
+		// segment of items and copies the rest of the file.
+		Snapshot loaded = Snapshot.read(file.getPath(), new Inventory(), new TransactionLog(), null);
+		loaded.inventory.addListener(loaded.layout);
+		int changedKey = loaded.inventory.getItems().get(0).key;
+		measure("persistence.save.incremental", records, new Benchmark() {
+			@Override
+			public long run(int operations) throws IOException {
+				long written = 0;
+				for (int x = 0; x < operations; x++) {
+					loaded.inventory.addQuantity(changedKey, 1);
+					written += Snapshot.freeze(loaded.inventory, loaded.transactions, loaded.nextUserID, 0,
+							loaded.layout).write(file.getPath());
+				}
+				return written;
+			}
+		});
+		file.delete();
+	}
+
+	/**
+	 * This method measures sales of one Item posted through InventoryService
+	 * from a growing number of threads at once, journal included, as the
+	 * registers of a busy store post them.
+	 */
+	private void runSales() throws Exception {
+		File directory = Files.createTempDirectory("benchmark").toFile();
+		InventoryService service = new InventoryService(new File(directory, "benchmark.hwdb").getPath(),
+				new File(directory, "benchmark.jnl").getPath(), false, 0);
+		service.load();
+		service.addItem(new HardwareItem(0, "Hammer", 1, 9.99f, (byte) 0));
+		Customer customer = new Customer(service.newUserID(), "Ann", "Lee", "555-555-1234", "1 Main Street");
+		service.addUser(customer);
+		Employee employee = new Employee(service.newUserID(), "Bob", "Ray", 123456789, 52000);
+		service.addUser(employee);
+		Transaction sale = new Transaction(new Date(), 0, 1, customer.ID, employee.ID);
+		for (int threads = 1; threads <= Math.max(8, Runtime.getRuntime().availableProcessors() * 2); threads *= 2) {
+			int sellerCount = threads;
+			measure("sales.singleItem." + threads + "Threads", 1, new Benchmark() {
+				@Override
+				public long run(int operations) throws Exception {
+					service.addQuantity(ItemIDCodec.decode(0), operations);
+					Thread[] sellers = new Thread[sellerCount];
+					for (int x = 0; x < sellerCount; x++) {
+						int share = operations / sellerCount + (x < operations % sellerCount ? 1 : 0);
+						sellers[x] = new Thread() {
+							@Override
+							public void run() {
+								try {
+									for (int y = 0; y < share; y++) {
+										service.postTransaction(sale);
+									}
+								} catch (ValidationException e) {
+									throw new IllegalStateException(e);
+								}
+							}
+						};
+						sellers[x].start();
+					}
+					for (Thread seller : sellers) {
+						seller.join();
+					}
+					return service.getItem(ItemIDCodec.decode(0)).getQuantity();
+				}
+			});
+		}
+		service.close();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private void runValidation() throws Exception {
+		measure("validate.phone", 0, new Benchmark() {
+			@Override
+			public long run(int operations) {
+				long valid = 0;
+				for (int x = 0; x < operations; x++) {
+					if (Customer.isValidPhone(PHONES[x & 3]))
+						valid++;
+				}
+				return valid;
+			}
+		});
+		measure("validate.price", 0, new Benchmark() {
+			@Override
+			public long run(int operations) {
+				long valid = 0;
+				for (int x = 0; x < operations; x++) {
+					if (Item.isValidPrice(PRICES[x % PRICES.length]))
+						valid++;
+				}
+				return valid;
+			}
+		});
+		measure("validate.csvLine", 0, new Benchmark() {
+			@Override
+			public long run(int operations) {
+				long valid = 0;
+				for (int x = 0; x < operations; x++) {
+					try {
+						if (CsvImporter.parse(CSV_LINES[x % CSV_LINES.length]) != null)
+							valid++;
+					} catch (ValidationException e) {
+					}
+				}
+				return valid;
+			}
+		});
+	}
+
+	/**
+	 * This method runs the benchmark in growing batches until a whole
+	 * iteration time has passed.
+	 *
+	 * @return the operations per second.
+	 */
+	private static double iteration(Benchmark benchmark) throws Exception {
+		long start = System.nanoTime(), elapsed, operations = 0;
+		int batch = 1;
+		do {
+			sink += benchmark.run(batch);
+			operations += batch;
+			elapsed = System.nanoTime() - start;
+			if (elapsed < ITERATION_NANOS / 10)
+				batch *= 2;
+		} while (elapsed < ITERATION_NANOS);
+		return operations * 1e9 / elapsed;
+	}
+
+	private static Inventory newInventory(int records) {
+		Inventory inventory = new Inventory();
+		Random random = new Random(records);
+		for (int key = 0; key < records; key++) {
+			if (key % 4 == 0)
+				inventory.addItem(new Appliance(key, WORDS[random.nextInt(WORDS.length)] + " " + key, 5, 499.99f,
+						"Acme", (byte) random.nextInt(4)));
+			else
+				inventory.addItem(new HardwareItem(key, WORDS[random.nextInt(WORDS.length)] + " " + key, 20, 9.99f,
+						(byte) random.nextInt(4)));
+		}
+		for (int id = 1; id <= Math.max(2, records / 100); id++) {
+			if (id % 2 == 0)
+				inventory.addUser(new Employee(id, "First" + id, "Last" + id, 123456789, 50000));
+			else
+				inventory.addUser(new Customer(id, "First" + id, "Last" + id, "555-555-1234", id + " Main Street"));
+		}
+		return inventory;
+	}
+
+	/**
+	 * This method lays a store out as the Main object of earlier versions
+	 * held it: a list of its items, one of its users and one of its
+	 * transactions, in one list.
+	 */
+	private static ArrayList<List<?>> newLegacyStore(Inventory inventory, TransactionLog transactions) {
+		ArrayList<Transaction> sales = new ArrayList<Transaction>(transactions.size());
+		for (int x = 0; x < transactions.size(); x++) {
+			sales.add(new Transaction(new Date(transactions.getTime(x)), transactions.getItemKey(x),
+					transactions.getQuantity(x), transactions.getCustomerID(x), transactions.getEmployeeID(x)));
+		}
+		ArrayList<List<?>> store = new ArrayList<List<?>>(3);
+		store.add(new ArrayList<Item>(inventory.getItems()));
+		store.add(new ArrayList<User>(inventory.getUsers()));
+		store.add(sales);
+		return store;
+	}
+
+	private static TransactionLog newTransactionLog(int records) {
+		TransactionLog transactions = new TransactionLog();
+		for (int x = 0; x < records; x++) {
+			transactions.append(1500000000000L + x, x, 1 + x % 5, 1, 2);
+		}
+		return transactions;
+	}
+
+	/**
+	 * This method runs every benchmark.
+	 *
+	 * @param args
+	 *            the name of the JSON file to write, which defaults to
+	 *            benchmarks.json, then the numbers of records to run the store
+	 *            benchmarks with, which default to 10000, 100000 and 1000000.
+	 * @throws Exception
+	 *             when a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		String output = args.length > 0 ? args[0] : "benchmarks.json";
+		int[] sizes = { 10000, 100000, 1000000 };
+		if (args.length > 1) {
+			sizes = new int[args.length - 1];
+			for (int x = 1; x < args.length; x++) {
+				sizes[x - 1] = Integer.parseInt(args[x]);
+			}
+		}
+		Benchmarks benchmarks = new Benchmarks();
+		System.out.println(String.format("%-28s %9s %16s    %12s", "Benchmark", "Records", "Score", "Error"));
+		benchmarks.runValidation();
+		benchmarks.runSales();
+		for (int records : sizes) {
+			benchmarks.run(records);
+		}
+		try (PrintWriter out = new PrintWriter(output, "UTF-8")) {
+			out.println(benchmarks.json.append("\n]"));
+		}
+		System.out.println("Results written to " + output + ".");
+	}
+}
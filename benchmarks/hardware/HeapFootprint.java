@@ -0,0 +1,201 @@
+package hardware;
+
+import java.awt.FlowLayout;
+import java.awt.GraphicsEnvironment;
+import java.awt.GridLayout;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+
+import javax.swing.JButton;
+import javax.swing.JPanel;
+
+/**
+ * This class measures how many bytes of heap a transaction takes: as a
+ * Transaction object, as a row of a TransactionLog, and, as the baseline, with
+ * the Form which every Transaction carried before the forms were moved into
+ * the editors. A headless JVM cannot create the dialog of that Form, so it
+ * measures only the lines and buttons in it, which is a lower bound. It fails,
+ * with exit status 1, if a Transaction or a row takes more than it should,
+ * so that a field holding user interface state cannot creep back into the
+ * domain classes unnoticed.
+ * <p>
+ * The heapFootprint task of the build runs it with a fixed heap, so that the
+ * collector does not resize it while measuring, as part of the check task. It
+ * runs headless only where there is no display.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class HeapFootprint {
+	/**
+	 * This interface allocates the objects being measured.
+	 */
+	private interface Allocation {
+		/**
+		 * @param count
+		 *            the number of objects to allocate.
+		 * @return an object through which all of them are reachable.
+		 */
+		Object allocate(int count);
+	}
+
+	private static final long COLLECTION_PAUSE_MILLIS = 100;
+	private static final int FORMS = 200;
+	private static final int MAX_COLLECTIONS = 50;
+	/**
+	 * The most bytes a row of a TransactionLog may take.
+	 */
+	private static final long MAX_ROW_BYTES = 40;
+	/**
+	 * The most bytes a Transaction may take, with its Date.
+	 */
+	private static final long MAX_TRANSACTION_BYTES = 96;
+	private static final int SETTLED_COLLECTIONS = 5;
+	private static final int TRANSACTIONS = 500000;
+
+	private HeapFootprint() {
+	}
+
+	/**
+	 * This method runs the measurements.
+	 *
+	 * @param args
+	 *            the arguments passed from the JVM, which are ignored.
+	 */
+	public static void main(String[] args) {
+		long transactionBytes = bytesPerObject(TRANSACTIONS, new Allocation() {
+			@Override
+			public Object allocate(int count) {
+				ArrayList<Transaction> transactions = new ArrayList<Transaction>(count);
+				for (int x = 0; x < count; x++) {
+					transactions.add(new Transaction(new Date(x), x, 1, 2, 1));
+				}
+				return transactions;
+			}
+		});
+		long rowBytes = bytesPerObject(TRANSACTIONS, new Allocation() {
+			@Override
+			public Object allocate(int count) {
+				TransactionLog transactions = new TransactionLog();
+				for (int x = 0; x < count; x++) {
+					transactions.append(x, x, 1, 2, 1);
+				}
+				return transactions;
+			}
+		});
+		print("Transaction", transactionBytes);
+		print("TransactionLog row", rowBytes);
+		if (GraphicsEnvironment.isHeadless()) {
+			// A dialog cannot be created without a display, but the lines and
+			// buttons in it can, so they give a lower bound of the baseline.
+			long contentsBytes = bytesPerObject(FORMS, new Allocation() {
+				@Override
+				public Object allocate(int count) {
+					ArrayList<JPanel> contents = new ArrayList<JPanel>(count);
+					for (int x = 0; x < count; x++) {
+						contents.add(newTransactionFormContents());
+					}
+					return contents;
+				}
+			});
+			print("Transaction before, at least", transactionBytes + contentsBytes);
+			System.out.println("The JVM is headless, so only the lines and buttons of the Form each Transaction used "
+					+ "to carry are measured, not its dialog.");
+		} else {
+			long formBytes = bytesPerObject(FORMS, new Allocation() {
+				@Override
+				public Object allocate(int count) {
+					ArrayList<Form> forms = new ArrayList<Form>(count);
+					for (int x = 0; x < count; x++) {
+						forms.add(new Form(newTransactionFormLines()));
+					}
+					return forms;
+				}
+			});
+			print("Transaction before, with Form", transactionBytes + formBytes);
+		}
+		if (transactionBytes > MAX_TRANSACTION_BYTES || rowBytes > MAX_ROW_BYTES) {
+			System.out.println("A transaction takes more than " + MAX_TRANSACTION_BYTES + " bytes as an object or "
+					+ MAX_ROW_BYTES + " bytes as a row.");
+			System.exit(1);
+		}
+	}
+
+	private static long bytesPerObject(int count, Allocation allocation) {
+		long before = usedHeap();
+		Object allocated = allocation.allocate(count);
+		long after = usedHeap();
+		Reference.reachabilityFence(allocated);
+		return (after - before) / count;
+	}
+
+	/**
+	 * This method creates what the Form which every Transaction used to hold
+	 * contains, as its constructor lays it out, without the dialog.
+	 */
+	private static JPanel newTransactionFormContents() {
+		JPanel contents = new JPanel(new GridLayout(0, 1));
+		for (FormLine line : newTransactionFormLines()) {
+			contents.add(line);
+		}
+		JPanel bottomPanel = new JPanel(new FlowLayout());
+		bottomPanel.add(new JButton("OK"));
+		bottomPanel.add(new JButton("Cancel"));
+		contents.add(bottomPanel);
+		return contents;
+	}
+
+	/**
+	 * This method creates the lines of the Form which every Transaction used
+	 * to hold.
+	 */
+	private static FormLine[] newTransactionFormLines() {
+		String[] names = { "Item ID", "Quantity", "Customer ID", "Employee ID" };
+		FormLine[] lines = new FormLine[names.length];
+		for (int x = 0; x < lines.length; x++) {
+			lines[x] = new FormLine(names[x], "Please enter a valid value.") {
+				private static final long serialVersionUID = 3812049675421176652L;
+
+				@Override
+				protected boolean verify() {
+					return true;
+				}
+			};
+		}
+		return lines;
+	}
+
+	private static void print(String name, long bytes) {
+		System.out.println(String.format(Locale.ROOT, "%-32s %9d bytes", name, bytes));
+	}
+
+	/**
+	 * This method collects garbage until the heap in use has not shrunk for a
+	 * while, since what a measurement allocated is not always freed by the
+	 * first collections after it returns.
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int settled = 0, x = 0; settled < SETTLED_COLLECTIONS && x < MAX_COLLECTIONS; x++) {
+			System.gc();
+			long collected = runtime.totalMemory() - runtime.freeMemory();
+			if (collected < used) {
+				used = collected;
+				settled = 0;
+			} else {
+				settled++;
+			}
+			try {
+				Thread.sleep(COLLECTION_PAUSE_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return used;
+	}
+}
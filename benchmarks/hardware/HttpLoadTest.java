@@ -0,0 +1,157 @@
+package hardware;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class load tests HttpEndpoint on localhost. It fills a fresh
+ * InventoryService in temporary files with items and users, serves it, and has
+ * a number of clients send a mix of lookups, searches, stock adjustments and
+ * sales over kept-alive connections for a while. It then prints the throughput
+ * and client latency, and the server's own metrics, which include its latency
+ * per endpoint.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class HttpLoadTest {
+	private static final String[] WORDS = { "Hammer", "Drill", "Saw", "Wrench", "Nail", "Screw", "Bolt", "Paint" };
+	private final String baseURL;
+	private final LongAdder errors = new LongAdder();
+	private final int items;
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private HttpLoadTest(String baseURL, int items) {
+		this.baseURL = baseURL;
+		this.items = items;
+	}
+
+	/**
+	 * This method sends requests until deadline, as one client.
+	 */
+	private void run(long seed, long deadline, int customerID, int employeeID) {
+		Random random = new Random(seed);
+		while (System.nanoTime() < deadline) {
+			String id = ItemIDCodec.decode(random.nextInt(items));
+			int kind = random.nextInt(10);
+			long start = System.nanoTime();
+			try {
+				int status;
+				if (kind < 6)
+					status = send("GET", "/items/" + id, null);
+				else if (kind < 8)
+					status = send("GET", "/items?limit=20&q=" + WORDS[random.nextInt(WORDS.length)], null);
+				else if (kind < 9)
+					status = send("POST", "/items/" + id + "/stock", "{\"quantity\":5}");
+				else
+					status = send("POST", "/transactions", "{\"item\":\"" + id + "\",\"quantity\":1,\"customer\":"
+							+ customerID + ",\"employee\":" + employeeID + "}");
+				if (status >= 300 && status != 422)
+					errors.increment();
+			} catch (IOException e) {
+				errors.increment();
+			}
+			latency.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * This method sends one request and reads the whole response, so that
+	 * HttpURLConnection can reuse the connection for the next request.
+	 */
+	private int send(String method, String path, String body) throws IOException {
+		return read((HttpURLConnection) new URL(baseURL + path).openConnection(), method, body);
+	}
+
+	private static int read(HttpURLConnection connection, String method, String body) throws IOException {
+		connection.setRequestMethod(method);
+		if (body != null) {
+			connection.setDoOutput(true);
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			connection.setFixedLengthStreamingMode(bytes.length);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(bytes);
+			}
+		}
+		int status = connection.getResponseCode();
+		try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+			if (in != null)
+				in.transferTo(new ByteArrayOutputStream());
+		}
+		return status;
+	}
+
+	/**
+	 * This method runs the load test.
+	 *
+	 * @param args
+	 *            the number of clients, which defaults to 16, then the number
+	 *            of seconds, which defaults to 10, then the number of items,
+	 *            which defaults to 100000.
+	 * @throws Exception
+	 *             when the test cannot be set up.
+	 */
+	public static void main(String[] args) throws Exception {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int items = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+		HttpEndpoint.useNoDelay();
+		File database = File.createTempFile("loadtest", ".hwdb"), journal = File.createTempFile("loadtest", ".jnl");
+		database.delete();
+		database.deleteOnExit();
+		journal.deleteOnExit();
+		InventoryService service = new InventoryService(database.getPath(), journal.getPath(), false, 1);
+		service.load();
+		Random random = new Random(1);
+		ArrayList<Item> batch = new ArrayList<Item>();
+		for (int x = 0; x < items; x++) {
+			batch.add(new HardwareItem(x, WORDS[random.nextInt(WORDS.length)] + " " + x, 1000000, 9.99f,
+					(byte) random.nextInt(4)));
+		}
+		service.addItems(batch);
+		int customerID = service.newUserID(), employeeID = service.newUserID();
+		service.addUser(new Customer(customerID, "Load", "Test", "555-555-5555", "1 Test Street"));
+		service.addUser(new Employee(employeeID, "Load", "Test", 123456789, 1));
+		HttpEndpoint endpoint = new HttpEndpoint(service, 0, clients);
+		endpoint.start();
+		HttpLoadTest test = new HttpLoadTest("http://localhost:" + endpoint.getPort(), items);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		Thread[] threads = new Thread[clients];
+		for (int x = 0; x < clients; x++) {
+			long seed = x;
+			threads[x] = new Thread("Client " + x) {
+				@Override
+				public void run() {
+					test.run(seed, deadline, customerID, employeeID);
+				}
+			};
+			threads[x].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long requests = test.latency.getCount();
+		System.out.printf("%d clients, %d requests in %ds: %.0f requests/s, %d errors%n", clients, requests, seconds,
+				requests / (double) seconds, test.errors.sum());
+		System.out.println("Client latency: " + test.latency);
+		HttpURLConnection metrics = (HttpURLConnection) new URL(test.baseURL + "/metrics").openConnection();
+		try (InputStream in = metrics.getInputStream()) {
+			System.out.println("Server metrics: " + new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		endpoint.stop();
+		service.close();
+		database.delete();
+		journal.delete();
+	}
+}
@@ -0,0 +1,74 @@
+package hardware;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This class checks that a change made while a save is being written is saved
+ * by the next save, which copies every segment it believes unchanged from the
+ * file the first one wrote. It checks the first save of a store, while the
+ * layout has no segments yet, and a later one, and fails, with exit status 1,
+ * if the file read back does not hold the change.
+ * <p>
+ * The saveCheck task of the build runs it as part of the check task.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class SaveCheck {
+	private static final int ITEMS = 3 * Snapshot.SEGMENT_RECORDS;
+
+	private SaveCheck() {
+	}
+
+	/**
+	 * This method runs the checks.
+	 *
+	 * @param args
+	 *            the arguments passed from the JVM, which are ignored.
+	 * @throws IOException
+	 *             when a file cannot be written or read.
+	 */
+	public static void main(String[] args) throws IOException {
+		File file = File.createTempFile("save-check", ".hwdb");
+		file.deleteOnExit();
+		boolean passed = check("change during the first save", file, new SnapshotLayout())
+				& check("change during a later save", file, null);
+		file.delete();
+		if (!passed)
+			System.exit(1);
+	}
+
+	/**
+	 * This method saves a store while changing one of its items, then saves it
+	 * again and reads it back.
+	 *
+	 * @param layout
+	 *            the layout of the store, or null to save it once first and
+	 *            follow the layout of that file.
+	 * @return whether the file read back holds the change.
+	 */
+	private static boolean check(String name, File file, SnapshotLayout layout) throws IOException {
+		Inventory inventory = new Inventory();
+		for (int key = 0; key < ITEMS; key++) {
+			inventory.addItem(new HardwareItem(key, "Item " + key, 10, 9.99f, (byte) 0));
+		}
+		TransactionLog transactions = new TransactionLog();
+		if (layout == null) {
+			new Snapshot(inventory, transactions, 1).write(file.getPath());
+			layout = Snapshot.read(file.getPath()).layout;
+		}
+		inventory.addListener(layout);
+		int changedKey = ITEMS - 1;
+		Snapshot saving = Snapshot.freeze(inventory, transactions, 1, 0, layout);
+		inventory.addQuantity(changedKey, 100);
+		saving.write(file.getPath());
+		Snapshot.freeze(inventory, transactions, 1, 0, layout).write(file.getPath());
+		int saved = Snapshot.read(file.getPath()).inventory.getItem(changedKey).getQuantity();
+		boolean passed = saved == inventory.getItem(changedKey).getQuantity();
+		System.out.println(name + ": " + (passed ? "saved" : "LOST, " + saved + " on disk instead of "
+				+ inventory.getItem(changedKey).getQuantity()));
+		return passed;
+	}
+}
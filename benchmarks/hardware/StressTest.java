@@ -0,0 +1,378 @@
+package hardware;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class runs many mutators against one InventoryService at once, the way
+ * registers, imports and clerks share a busy store: sales one at a time and in
+ * batches, new items, stock added to existing ones, users edited, and saves
+ * running all the while. The store is first filled by a bulk import, which
+ * ends with its first save, while stock is already being received. Sales then
+ * often target the Item being added at that very moment, so that the order of
+ * its records in the journal is put to the test, and the saves stop halfway,
+ * so that the journal holds the second half of the changes.
+ * <p>
+ * Once the mutators stop, it checks that the stock of every Item is what was
+ * added to it less what the transaction log says was sold of it, then loads
+ * the store twice more from its files: once as after a crash, replaying the
+ * journal on top of the last save, and once after a clean close. Each copy
+ * must hold the same items, users and transactions, though sales made at once
+ * may come back in another order. It fails, with exit status 1, when anything
+ * does not match or a mutator throws anything but a ValidationException.
+ * <p>
+ * The stressTest task of the build runs it as part of the check task, for
+ * example:
+ *
+ * <pre>
+ * gradle stressTest -Pthreads=16 -Pseconds=30
+ * </pre>
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class StressTest {
+	/**
+	 * This class is one mutator, which makes one kind of change over and
+	 * over until the test stops.
+	 */
+	private abstract class Mutator extends Thread {
+		final Random random;
+
+		Mutator(String name, int seed) {
+			super(name);
+			random = new Random(seed);
+		}
+
+		/**
+		 * This method makes one change, which the store may reject.
+		 */
+		abstract void mutate() throws ValidationException;
+
+		@Override
+		public void run() {
+			try {
+				while (System.nanoTime() < deadline) {
+					try {
+						mutate();
+					} catch (ValidationException e) {
+					}
+				}
+			} catch (RuntimeException | Error e) {
+				failures.add(getName() + " threw " + e);
+			}
+		}
+	}
+
+	private static final int CUSTOMERS = 8;
+	private static final int HOT_ITEMS = 16;
+	private static final int HOT_STOCK = 1000000;
+	private static final int ITEMS = 3 * Snapshot.SEGMENT_RECORDS;
+	private static final int MAX_NEW_ITEMS = 1 << 20;
+	private static final int NEW_STOCK = 100;
+	private static final long PAUSE_MILLIS = 2;
+	private final int[] customerIDs = new int[CUSTOMERS];
+	/**
+	 * When the mutators stop, which is set once the store has been imported.
+	 */
+	private volatile long deadline = Long.MAX_VALUE;
+	private final File directory;
+	private int employeeID;
+	private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<String>();
+	/**
+	 * Whether the import, with the save it ends with, has finished.
+	 */
+	private volatile boolean imported;
+	/**
+	 * When the saver stops, halfway through.
+	 */
+	private volatile long lastSave;
+	/**
+	 * The key the next new Item is given, the keys before it having been
+	 * given out already.
+	 */
+	private final AtomicInteger nextKey = new AtomicInteger(ITEMS);
+	private InventoryService service;
+	/**
+	 * The stock added to each Item, by key, when it was added and since.
+	 */
+	private final AtomicLongArray stockAdded = new AtomicLongArray(ITEMS + MAX_NEW_ITEMS);
+
+	private StressTest(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * This method loads the store from its files and checks that it holds the
+	 * same items, users and transactions as the store it was saved from.
+	 */
+	private InventoryService checkReload(String name, String expected) throws IOException {
+		InventoryService reloaded = newService();
+		reloaded.load();
+		if (!describe(reloaded).equals(expected))
+			failures.add("The store loaded " + name + " differs from the store it was saved from.");
+		return reloaded;
+	}
+
+	/**
+	 * This method checks that the stock of each Item is what was added to it
+	 * less what was sold of it.
+	 */
+	private void checkStock() {
+		long[] sold = new long[stockAdded.length()];
+		TransactionLog.Cursor cursor = service.getTransactions().cursor();
+		if (cursor.seek(0)) {
+			do {
+				sold[cursor.getItemKey()] += cursor.getQuantity();
+			} while (cursor.next());
+		}
+		int wrong = 0;
+		for (int key = 0; key < nextKey.get(); key++) {
+			Item item = service.getItem(ItemIDCodec.decode(key));
+			long expected = stockAdded.get(key) - sold[key], quantity = item == null ? 0 : item.getQuantity();
+			if ((quantity != expected || quantity < 0) && wrong++ < 10)
+				failures.add("Item " + ItemIDCodec.decode(key) + " has " + quantity + " in stock, not " + expected
+						+ ".");
+		}
+		if (wrong > 10)
+			failures.add((wrong - 10) + " more items have the wrong stock.");
+	}
+
+	/**
+	 * This method imports the items the store starts with in one batch, which
+	 * ends with the first save of the store.
+	 */
+	private void importItems() {
+		ArrayList<Item> items = new ArrayList<Item>(ITEMS);
+		for (int key = 0; key < ITEMS; key++) {
+			int stock = key < HOT_ITEMS ? HOT_STOCK : 10;
+			stockAdded.set(key, stock);
+			items.add(new HardwareItem(key, "Item " + key, stock, 9.99f, (byte) (key & 3)));
+		}
+		service.addItems(items);
+		imported = true;
+	}
+
+	/**
+	 * @return a sale of a hot Item, or of the Item being added most recently,
+	 *         which may not be in the store yet.
+	 */
+	private Transaction newSale(Random random) {
+		int key = random.nextBoolean() ? random.nextInt(HOT_ITEMS) : nextKey.get() - 1;
+		return new Transaction(new Date(), key, 1 + random.nextInt(3), customerIDs[random.nextInt(CUSTOMERS)],
+				employeeID);
+	}
+
+	private InventoryService newService() {
+		return new InventoryService(new File(directory, "stress.hwdb").getPath(),
+				new File(directory, "stress.jnl").getPath(), false, 0);
+	}
+
+	/**
+	 * This method fills the store, runs the mutators for the given time, then
+	 * checks the store.
+	 */
+	private void run(int threads, int seconds) throws Exception {
+		service = newService();
+		service.load();
+		for (int x = 0; x < CUSTOMERS; x++) {
+			customerIDs[x] = service.newUserID();
+			service.addUser(new Customer(customerIDs[x], "First" + x, "Last" + x, "555-555-1234", "1 Main Street"));
+		}
+		employeeID = service.newUserID();
+		service.addUser(new Employee(employeeID, "Bob", "Ray", 123456789, 52000));
+		// Stock is received while the items are imported; the rest starts
+		// once they are in.
+		ArrayList<Thread> early = new ArrayList<Thread>(), late = new ArrayList<Thread>();
+		for (int x = 0; x < threads; x++) {
+			switch (x % 8) {
+			case 4:
+				late.add(new Mutator("batcher-" + x, x) {
+					@Override
+					void mutate() {
+						ArrayList<Transaction> batch = new ArrayList<Transaction>();
+						for (int y = 0; y < 8; y++) {
+							batch.add(newSale(random));
+						}
+						service.postTransactions(batch);
+					}
+				});
+				break;
+			case 5:
+				late.add(new Mutator("adder-" + x, x) {
+					@Override
+					void mutate() throws ValidationException {
+						int key = nextKey.getAndIncrement();
+						if (key >= stockAdded.length()) {
+							nextKey.decrementAndGet();
+							return;
+						}
+						stockAdded.set(key, NEW_STOCK);
+						service.addItem(new HardwareItem(key, "New " + key, NEW_STOCK, 1.99f, (byte) 0));
+					}
+				});
+				break;
+			case 6:
+				early.add(new Mutator("stocker-" + x, x) {
+					@Override
+					void mutate() throws ValidationException {
+						// Stock is received for every Item while the import is
+						// saved, then only for the hot items and the new ones,
+						// so that a change to the others which the first save
+						// loses is never written over by a later one.
+						int key;
+						if (imported) {
+							key = random.nextBoolean() ? random.nextInt(HOT_ITEMS)
+									: ITEMS + random.nextInt(Math.max(1, nextKey.get() - ITEMS));
+						} else if (service.getInventory().getItems().size() == ITEMS) {
+							key = random.nextInt(ITEMS);
+						} else {
+							pause();
+							return;
+						}
+						int quantity = 1 + random.nextInt(10);
+						service.addQuantity(ItemIDCodec.decode(key), quantity);
+						stockAdded.addAndGet(key, quantity);
+						if (imported)
+							pause();
+					}
+				});
+				break;
+			case 7:
+				late.add(new Mutator("clerk-" + x, x) {
+					@Override
+					void mutate() throws ValidationException {
+						int id = customerIDs[random.nextInt(CUSTOMERS)];
+						service.updateUser(new Customer(id, "First" + id, "Last" + id, "555-555-1234",
+								random.nextInt(1000) + " Main Street"));
+					}
+				});
+				break;
+			default:
+				late.add(new Mutator("seller-" + x, x) {
+					@Override
+					void mutate() throws ValidationException {
+						service.postTransaction(newSale(random));
+					}
+				});
+			}
+		}
+		late.add(new Mutator("saver", threads) {
+			@Override
+			void mutate() {
+				if (System.nanoTime() < lastSave)
+					service.save();
+				else
+					pause();
+			}
+		});
+		for (Thread mutator : early) {
+			mutator.start();
+		}
+		importItems();
+		long start = System.nanoTime();
+		lastSave = start + TimeUnit.SECONDS.toNanos(seconds) / 2;
+		deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+		for (Thread mutator : late) {
+			mutator.start();
+		}
+		early.addAll(late);
+		for (Thread mutator : early) {
+			mutator.join();
+		}
+		checkStock();
+		String expected = describe(service);
+		System.out.println(String.format("%d mutators for %d s: %d items, %d transactions", threads, seconds,
+				service.getItems().size(), service.getTransactions().size()));
+		// The store is left as a crash would leave it, so that the first
+		// reload replays the journal on top of the last save. Since the store
+		// still holds its history file, that reload keeps its transactions on
+		// the heap, with a warning.
+		InventoryService reloaded = checkReload("after a crash", expected);
+		reloaded.close();
+		checkReload("after a clean close", expected);
+	}
+
+	/**
+	 * @return every item, user and transaction of the store as text. The
+	 *         transactions are sorted, since sales made at once may be logged
+	 *         in one order and journaled in another, and so reloaded in it.
+	 */
+	private static String describe(InventoryService service) {
+		StringBuilder text = new StringBuilder();
+		for (Item item : service.getItems()) {
+			text.append(String.join(",", item.toStringArray())).append('\n');
+		}
+		for (User user : service.getUsers()) {
+			text.append(String.join(",", user.toStringArray())).append('\n');
+		}
+		ArrayList<String> transactions = new ArrayList<String>();
+		TransactionLog.Cursor cursor = service.getTransactions().cursor();
+		if (cursor.seek(0)) {
+			do {
+				transactions.add(cursor.getTime() + "," + cursor.getItemKey() + "," + cursor.getQuantity() + ","
+						+ cursor.getCustomerID() + "," + cursor.getEmployeeID());
+			} while (cursor.next());
+		}
+		Collections.sort(transactions);
+		for (String transaction : transactions) {
+			text.append(transaction).append('\n');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * This method runs the stress test in a temporary directory.
+	 *
+	 * @param args
+	 *            the number of mutators, or 0 for twice the number of
+	 *            processors and at least 8, which is the default, then how
+	 *            many seconds they run, which defaults to 5.
+	 * @throws Exception
+	 *             when the store cannot be loaded or saved.
+	 */
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+		if (threads <= 0)
+			threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		File directory = Files.createTempDirectory("stress").toFile();
+		StressTest test = new StressTest(directory);
+		try {
+			test.run(threads, seconds);
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+		for (String failure : test.failures) {
+			System.out.println(failure);
+		}
+		System.out.println(test.failures.isEmpty() ? "Passed." : "FAILED.");
+		// The store left as after a crash still has its journal open.
+		System.exit(test.failures.isEmpty() ? 0 : 1);
+	}
+
+	/**
+	 * This method waits a little, so that only a few changes are made between
+	 * saves by the mutators which pause.
+	 */
+	private static void pause() {
+		try {
+			Thread.sleep(PAUSE_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package hardware;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * This class is a model which represents an appliance item in a hardware store.
  * 
@@ -11,41 +15,52 @@ public class Appliance extends Item {
 	private static final long serialVersionUID = -6956503668441872944L;
 	private static final String[] TYPES = { "Refrigerators", "Washers&Dryers", "Ranges&Ovens", "Small Appliances" };
 	private String brand;
-	private final Form form = new Form(new FormLine[] { basicLines[0], basicLines[1], basicLines[2], basicLines[3],
-			new FormLine("Brand", "Please enter a brand with at least 1 character.") {
-				private static final long serialVersionUID = -8996714202555190890L;
+	private byte type;
 
-				@Override
-				protected boolean verify() {
-					return getInput().length() > 0;
-				}
-			}, new FormLine("Type",
-					"Please enter the type from " + TYPES[0] + ", " + TYPES[1] + ", " + TYPES[2] + ", or " + TYPES[3]) {
-				private static final long serialVersionUID = 5499221046297404914L;
+	/**
+	 * This constructor creates a new Appliance from its field values.
+	 * 
+	 * @param key
+	 *            the ID of this Appliance, as packed by ItemIDCodec.
+	 * @param name
+	 *            the name of this Appliance.
+	 * @param quantity
+	 *            the quantity of this Appliance in stock.
+	 * @param price
+	 *            the price of this Appliance.
+	 * @param brand
+	 *            the brand of this Appliance.
+	 * @param type
+	 *            the type of this Appliance, as returned by whatType().
+	 */
+	public Appliance(int key, String name, int quantity, float price, String brand, byte type) {
+		super(key, name, quantity, price);
+		this.brand = brand;
+		this.type = type;
+	}
 
-				@Override
-				protected boolean verify() {
-					return whatType(getInput()) != -1;
-				}
-			} });
-	private byte type;
+	/**
+	 * This constructor reads an Appliance from a stream written by write().
+	 * 
+	 * @param in
+	 *            the stream to read from.
+	 * @throws IOException
+	 *             when the stream cannot be read.
+	 */
+	Appliance(DataInput in) throws IOException {
+		super(in);
+		brand = in.readUTF();
+		type = in.readByte();
+	}
 
 	/**
-	 * This constructor makes a form dialog appear and uses the form input to
-	 * initialize the Appliance class variables.
+	 * This method adds the brand and type to the fields searched by name.
 	 * 
-	 * @throws CancelException
-	 *             This exception is thrown when the user presses cancel on the
-	 *             form dialog.
+	 * @see hardware.Item#getSearchFields()
 	 */
-	public Appliance() throws CancelException {
-		String[] result = form.result();
-		ID = result[0].toUpperCase();
-		name = result[1];
-		quantity = Integer.parseInt(result[2]);
-		price = Float.parseFloat(result[3]);
-		brand = result[4];
-		type = whatType(result[5]);
+	@Override
+	public String[] getSearchFields() {
+		return new String[] { name, brand, TYPES[type] };
 	}
 
 	/**
@@ -63,6 +78,42 @@ public class Appliance extends Item {
 		return item;
 	}
 
+	/**
+	 * This method adds the rules for the brand and type to those of
+	 * Item.validate().
+	 * 
+	 * @see hardware.Item#validate()
+	 */
+	@Override
+	void validate() throws ValidationException {
+		super.validate();
+		if (brand == null || brand.length() == 0)
+			throw new ValidationException("Please enter a brand with at least 1 character.");
+		if (type < 0 || type >= TYPES.length)
+			throw new ValidationException("Please enter the type from " + TYPES[0] + ", " + TYPES[1] + ", "
+					+ TYPES[2] + ", or " + TYPES[3]);
+	}
+
+	/**
+	 * This method adds the brand and type to the fields written by
+	 * Item.write().
+	 * 
+	 * @see hardware.Item#write(java.io.DataOutput)
+	 */
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		out.writeUTF(brand);
+		out.writeByte(type);
+	}
+
+	/**
+	 * @return the names of the Appliance types, in the order of their bytes.
+	 */
+	public static String[] getTypes() {
+		return TYPES.clone();
+	}
+
 	/**
 	 * This method finds which Appliance type a String corresponds to.
 	 * 
@@ -0,0 +1,305 @@
+package hardware;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * This class is a logging Handler which never makes its caller wait for the
+ * disk. Records are put on a bounded queue, an array used as a ring, and a
+ * background thread takes them off in batches, formats them and writes each
+ * batch to the log file with one write. When the file grows past a limit it is
+ * rotated: hardware.log becomes hardware.log.1, which becomes hardware.log.2,
+ * and so on up to a number of files, the oldest being deleted.
+ * <p>
+ * When the queue is full, the OverflowPolicy decides whether a record below
+ * WARNING is dropped or its caller waits for room. Warnings and severe records
+ * always wait, so that problems are never lost. Dropped records are counted
+ * in the global Metrics as "log.dropped".
+ * <p>
+ * Records are written by the CompactFormatter unless another Formatter is
+ * set, one line each.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class AsyncLogHandler extends Handler {
+	/**
+	 * This class formats a record as one line of tab separated fields: the
+	 * time in UTC, the level, the ID of the thread which logged it, and the
+	 * message, followed by the stack trace of any Throwable on the same line.
+	 * Tabs, line breaks and backslashes in the message are escaped, so that
+	 * every line is one record and the log can be read by other programs.
+	 * The class and method which logged the record are left out, since
+	 * finding them means walking the stack of the thread which logged it.
+	 */
+	public static class CompactFormatter extends Formatter {
+		@Override
+		public String format(LogRecord record) {
+			StringBuilder line = new StringBuilder(96);
+			DateTimeFormatter.ISO_INSTANT.formatTo(record.getInstant(), line);
+			line.append('\t').append(record.getLevel().getName()).append('\t').append(record.getLongThreadID())
+					.append('\t');
+			escape(formatMessage(record), line);
+			if (record.getThrown() != null) {
+				StringWriter trace = new StringWriter();
+				record.getThrown().printStackTrace(new PrintWriter(trace));
+				line.append('\t');
+				escape(trace.toString(), line);
+			}
+			return line.append('\n').toString();
+		}
+
+		private static void escape(String text, StringBuilder line) {
+			if (text == null)
+				return;
+			for (int x = 0; x < text.length(); x++) {
+				char c = text.charAt(x);
+				if (c == '\\')
+					line.append("\\\\");
+				else if (c == '\t')
+					line.append("\\t");
+				else if (c == '\n')
+					line.append("\\n");
+				else if (c != '\r')
+					line.append(c);
+			}
+		}
+	}
+
+	/**
+	 * This enumeration tells what publish() does with a record below WARNING
+	 * when the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The record is dropped and counted.
+		 */
+		DROP,
+		/**
+		 * The caller waits until the writer has made room.
+		 */
+		BLOCK
+	}
+
+	private static final int BATCH_SIZE = 512;
+	private static final LongAdder DROPPED = Metrics.getGlobal().counter("log.dropped");
+	private static final LatencyHistogram WRITE_LATENCY = Metrics.getGlobal().histogram("log.write");
+	private volatile boolean closed = false;
+	private final int count;
+	private final File file;
+	private final long limit;
+	private OutputStream out;
+	private final OverflowPolicy policy;
+	private final ArrayBlockingQueue<LogRecord> queue;
+	private long queued = 0;
+	private long size;
+	private final Thread writer;
+	private long written = 0;
+
+	/**
+	 * This constructor opens the log file, appending to it, and starts the
+	 * background writer.
+	 *
+	 * @param filename
+	 *            the name of the log file.
+	 * @param capacity
+	 *            the number of records which may wait to be written.
+	 * @param policy
+	 *            what is done with a record below WARNING when that many are
+	 *            waiting.
+	 * @param limit
+	 *            the size in bytes past which the file is rotated, or 0 to
+	 *            never rotate it.
+	 * @param count
+	 *            the number of files to keep, counting the current one.
+	 * @throws IOException
+	 *             when the log file cannot be opened.
+	 */
+	public AsyncLogHandler(String filename, int capacity, OverflowPolicy policy, long limit, int count)
+			throws IOException {
+		file = new File(filename);
+		queue = new ArrayBlockingQueue<LogRecord>(capacity);
+		this.policy = policy;
+		this.limit = limit;
+		this.count = Math.max(1, count);
+		open();
+		setFormatter(new CompactFormatter());
+		Metrics.getGlobal().gauge("log.queued", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return queue.size();
+			}
+		});
+		writer = new Thread("Log writer") {
+			@Override
+			public void run() {
+				writeBatches();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * This method writes every record still queued, then closes the log file.
+	 * Records published afterwards are ignored.
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		writer.interrupt();
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * This method waits until every record published before it was called
+	 * has been written to the log file.
+	 */
+	@Override
+	public void flush() {
+		synchronized (this) {
+			long target = queued;
+			while (written < target && writer.isAlive()) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method queues a record to be written, which costs its caller only
+	 * the queueing unless the queue is full.
+	 *
+	 * @param record
+	 *            the record to be written.
+	 */
+	@Override
+	public void publish(LogRecord record) {
+		if (closed || !isLoggable(record))
+			return;
+		// The parameters are kept for the writer to format, so they must not
+		// be changed afterwards, which is how the store logs already.
+		if (!queue.offer(record)) {
+			if (policy == OverflowPolicy.DROP && record.getLevel().intValue() < Level.WARNING.intValue()) {
+				DROPPED.increment();
+				return;
+			}
+			try {
+				queue.put(record);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				DROPPED.increment();
+				return;
+			}
+		}
+		synchronized (this) {
+			queued++;
+		}
+	}
+
+	private void open() throws IOException {
+		size = file.length();
+		out = new FileOutputStream(file, true);
+	}
+
+	/**
+	 * This method closes the log file, shifts every older file up by one,
+	 * deleting the oldest, and starts a new log file.
+	 */
+	private void rotate() throws IOException {
+		out.close();
+		String name = file.getPath();
+		for (int x = count - 1; x >= 1; x--) {
+			File older = new File(x == 1 ? name : name + "." + (x - 1));
+			if (older.exists())
+				Files.move(older.toPath(), new File(name + "." + x).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		if (count == 1)
+			Files.deleteIfExists(file.toPath());
+		open();
+	}
+
+	/**
+	 * This method is run by the background writer. It waits for a record,
+	 * takes it with every record queued behind it, up to BATCH_SIZE, and
+	 * writes them with one write, until the handler is closed and the queue
+	 * is empty.
+	 */
+	private void writeBatches() {
+		ArrayList<LogRecord> batch = new ArrayList<LogRecord>(BATCH_SIZE);
+		StringBuilder text = new StringBuilder();
+		while (true) {
+			try {
+				if (!closed)
+					batch.add(queue.take());
+			} catch (InterruptedException e) {
+			}
+			queue.drainTo(batch, BATCH_SIZE - batch.size());
+			if (batch.isEmpty()) {
+				if (closed)
+					break;
+				continue;
+			}
+			long start = System.nanoTime();
+			Formatter formatter = getFormatter();
+			for (LogRecord record : batch) {
+				try {
+					text.append(formatter.format(record));
+				} catch (RuntimeException e) {
+					reportError("Problem formatting a log record.", e, ErrorManager.FORMAT_FAILURE);
+				}
+			}
+			try {
+				byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+				out.write(bytes);
+				size += bytes.length;
+				if (limit > 0 && size >= limit)
+					rotate();
+			} catch (IOException e) {
+				reportError("Problem writing the log file.", e, ErrorManager.WRITE_FAILURE);
+			}
+			WRITE_LATENCY.record(System.nanoTime() - start);
+			synchronized (this) {
+				written += batch.size();
+				notifyAll();
+			}
+			batch.clear();
+			text.setLength(0);
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			reportError("Problem closing the log file.", e, ErrorManager.CLOSE_FAILURE);
+		}
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+}
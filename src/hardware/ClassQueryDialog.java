@@ -3,6 +3,8 @@ package hardware;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import javax.swing.JButton;
@@ -17,10 +19,13 @@ import javax.swing.JDialog;
  * @since 1.0
  */
 public class ClassQueryDialog extends JDialog {
+	private enum Choice {
+		CANCEL, CLASS1, CLASS2
+	}
+
 	private static final Logger LOGGER = Logger.getGlobal();
 	private static final long serialVersionUID = 578406964070149300L;
-	private boolean cancelled = false;
-	private volatile Boolean selectedClass;
+	private final LinkedBlockingQueue<Choice> choices = new LinkedBlockingQueue<Choice>();
 
 	/**
 	 * This constructor creates a dialog which will ask the user which of two
@@ -42,13 +47,12 @@ public class ClassQueryDialog extends JDialog {
 				String s = ((JButton) e.getSource()).getText();
 				if (s == class1) {
 					LOGGER.info("User selected class " + class1 + ".");
-					selectedClass = true;
+					choices.offer(Choice.CLASS1);
 				} else if (s == class2) {
 					LOGGER.info("User selected class " + class2 + ".");
-					selectedClass = false;
+					choices.offer(Choice.CLASS2);
 				} else if (s == "Cancel") {
-					cancelled = true;
-					selectedClass = true;
+					choices.offer(Choice.CANCEL);
 				}
 			}
 		};
@@ -63,7 +67,16 @@ public class ClassQueryDialog extends JDialog {
 	}
 
 	/**
-	 * This method shows the dialog and tells which class the user selected.s
+	 * This method cancels the dialog as if the user had pressed "Cancel," so
+	 * that the thread waiting in isClass1() throws a CancelException.
+	 */
+	public void cancel() {
+		choices.offer(Choice.CANCEL);
+	}
+
+	/**
+	 * This method shows the dialog and tells which class the user selected. The
+	 * calling thread is parked until the user presses a button.
 	 * 
 	 * @return true, if the user selected class 1, false if the user selected
 	 *         class 2, does not return and simply throws a CancelException if
@@ -72,15 +85,39 @@ public class ClassQueryDialog extends JDialog {
 	 *             when the user presses "Cancel"
 	 */
 	public boolean isClass1() throws CancelException {
-		selectedClass = null;
-		cancelled = false;
+		return isClass1(0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * This method works like isClass1(), but gives up after a timeout.
+	 * 
+	 * @param timeout
+	 *            how long to wait for the user, 0 to wait forever.
+	 * @param unit
+	 *            the unit of timeout.
+	 * @return true, if the user selected class 1, false if the user selected
+	 *         class 2.
+	 * @throws CancelException
+	 *             when the user presses "Cancel," the dialog is cancelled with
+	 *             cancel(), the waiting thread is interrupted or the timeout
+	 *             passes.
+	 */
+	public boolean isClass1(long timeout, TimeUnit unit) throws CancelException {
+		choices.clear();
 		setVisible(true);
-		while (selectedClass == null) {
+		Choice choice;
+		try {
+			if (timeout > 0)
+				choice = choices.poll(timeout, unit);
+			else
+				choice = choices.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			choice = Choice.CANCEL;
 		}
 		setVisible(false);
-		boolean value = selectedClass;
-		if (cancelled)
+		if (choice == null || choice == Choice.CANCEL)
 			throw new CancelException();
-		return value;
+		return choice == Choice.CLASS1;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,450 @@
+package hardware;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * This class imports items and users in bulk from a CSV file, one per line, in
+ * the same order as the fields of the forms:
+ *
+ * <pre>
+ * Hardware,ID,name,quantity,price,category
+ * Appliance,ID,name,quantity,price,brand,type
+ * Customer,first name,last name,phone number,address
+ * Employee,first name,last name,SSN,salary
+ * </pre>
+ *
+ * Fields may be quoted, with "" standing for a quote inside a quoted field. A
+ * first line which first field is "Kind" is a header and is skipped, as are
+ * blank lines.
+ * <p>
+ * The file is streamed through a FileChannel and cut into batches of lines. The
+ * batches are parsed and checked against the rules of the forms on a pool of
+ * threads, then added through the InventoryService in file order, so only a
+ * few batches are held in memory however long the file is. Rejected lines are
+ * written to a reject file, each preceded by its line number and the reason.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class CsvImporter {
+	/**
+	 * This class reports the outcome of an import.
+	 */
+	public static final class Report {
+		private final long imported, nanos, rejected;
+
+		private Report(long imported, long rejected, long nanos) {
+			this.imported = imported;
+			this.rejected = rejected;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return the number of items and users added.
+		 */
+		public long getImported() {
+			return imported;
+		}
+
+		/**
+		 * @return the number of lines written to the reject file.
+		 */
+		public long getRejected() {
+			return rejected;
+		}
+
+		/**
+		 * @return the number of lines imported or rejected per second.
+		 */
+		public double getRowsPerSecond() {
+			return rowsPerSecond(imported + rejected, nanos);
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("imported %d, rejected %d in %.2fs, %.0f rows/s", imported, rejected,
+					nanos / 1e9, getRowsPerSecond());
+		}
+	}
+
+	private static class Batch {
+		private int count = 0;
+		private final long[] lineNumbers = new long[BATCH_LINES];
+		private final String[] lines = new String[BATCH_LINES];
+		private final String[] reasons = new String[BATCH_LINES];
+		private final Object[] rows = new Object[BATCH_LINES];
+	}
+
+	private static final int BATCH_LINES = 1024;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final Logger LOGGER = Logger.getGlobal();
+	private static final int MAX_LINE_CHARS = 1 << 16;
+	private static final long PROGRESS_NANOS = TimeUnit.SECONDS.toNanos(5);
+	private static final Pattern SSN_PATTERN = Pattern.compile("\\d{9}");
+	private final InventoryService service;
+	private final int threads;
+
+	/**
+	 * @param service
+	 *            the InventoryService to add the items and users to.
+	 * @param threads
+	 *            the number of threads which parse and check lines.
+	 */
+	public CsvImporter(InventoryService service, int threads) {
+		this.service = service;
+		this.threads = threads;
+	}
+
+	/**
+	 * This method imports a CSV file, logging its progress every few seconds.
+	 *
+	 * @param filename
+	 *            the name of the CSV file.
+	 * @param rejectFilename
+	 *            the name of the reject file, which is replaced.
+	 * @return the outcome of the import.
+	 * @throws IOException
+	 *             when the CSV file cannot be read or the reject file cannot be
+	 *             written. The lines before the problem have been imported.
+	 */
+	public Report importFile(String filename, String rejectFilename) throws IOException {
+		long start = System.nanoTime(), lastProgress = start, imported = 0, rejected = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "CSV parser " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		ArrayBlockingQueue<Future<Batch>> parsed = new ArrayBlockingQueue<Future<Batch>>(threads * 2);
+		AtomicReference<IOException> readProblem = new AtomicReference<IOException>();
+		Thread reader = new Thread("CSV reader") {
+			@Override
+			public void run() {
+				try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+					read(channel, pool, parsed);
+				} catch (IOException e) {
+					readProblem.set(e);
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					parsed.put(CompletableFuture.completedFuture((Batch) null));
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+		try (BufferedWriter rejects = Files.newBufferedWriter(Paths.get(rejectFilename), StandardCharsets.UTF_8)) {
+			while (true) {
+				Batch batch;
+				try {
+					batch = parsed.take().get();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new IOException("CSV import stopped: " + e, e);
+				}
+				if (batch == null)
+					break;
+				add(batch);
+				for (int x = 0; x < batch.count; x++) {
+					if (batch.reasons[x] != null) {
+						rejects.write(batch.lineNumbers[x] + "," + quote(batch.reasons[x]) + "," + batch.lines[x]);
+						rejects.newLine();
+						rejected++;
+					} else if (batch.rows[x] != null) {
+						imported++;
+					}
+				}
+				long now = System.nanoTime();
+				if (now - lastProgress >= PROGRESS_NANOS) {
+					lastProgress = now;
+					LOGGER.info(String.format("Importing %s: %d lines so far, %.0f rows/s.", filename,
+							imported + rejected, rowsPerSecond(imported + rejected, now - start)));
+				}
+			}
+		} finally {
+			reader.interrupt();
+			pool.shutdownNow();
+		}
+		if (readProblem.get() != null)
+			throw readProblem.get();
+		Report report = new Report(imported, rejected, System.nanoTime() - start);
+		LOGGER.info("Imported " + filename + ": " + report + ".");
+		return report;
+	}
+
+	/**
+	 * This method adds the rows of a parsed batch which passed the checks, and
+	 * records why the others were rejected by the InventoryService.
+	 */
+	private void add(Batch batch) {
+		ArrayList<Item> items = new ArrayList<Item>();
+		ArrayList<Integer> itemLines = new ArrayList<Integer>();
+		ArrayList<User> users = new ArrayList<User>();
+		ArrayList<Integer> userLines = new ArrayList<Integer>();
+		for (int x = 0; x < batch.count; x++) {
+			if (batch.rows[x] instanceof Item) {
+				items.add((Item) batch.rows[x]);
+				itemLines.add(x);
+			} else if (batch.rows[x] instanceof User) {
+				users.add((User) batch.rows[x]);
+				userLines.add(x);
+			}
+		}
+		ValidationException[] errors = service.addItems(items);
+		for (int x = 0; x < errors.length; x++) {
+			if (errors[x] != null)
+				batch.reasons[itemLines.get(x)] = errors[x].getMessage();
+		}
+		errors = service.addNewUsers(users);
+		for (int x = 0; x < errors.length; x++) {
+			if (errors[x] != null)
+				batch.reasons[userLines.get(x)] = errors[x].getMessage();
+		}
+	}
+
+	/**
+	 * This method streams the file into batches of lines, splitting only at
+	 * line breaks outside quoted fields, and hands each full batch to the pool.
+	 */
+	private void read(FileChannel channel, ExecutorService pool, ArrayBlockingQueue<Future<Batch>> parsed)
+			throws IOException, InterruptedException {
+		ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		StringBuilder line = new StringBuilder();
+		Batch batch = new Batch();
+		boolean quoted = false, endOfInput = false;
+		long lineNumber = 1, firstLineNumber = 1;
+		while (!endOfInput) {
+			endOfInput = channel.read(bytes) < 0;
+			bytes.flip();
+			decoder.decode(bytes, chars, endOfInput);
+			if (endOfInput)
+				decoder.flush(chars);
+			bytes.compact();
+			chars.flip();
+			while (chars.hasRemaining()) {
+				char c = chars.get();
+				if (c == '\n') {
+					lineNumber++;
+					if (!quoted || line.length() > MAX_LINE_CHARS) {
+						batch = addLine(batch, firstLineNumber, line, pool, parsed);
+						firstLineNumber = lineNumber;
+						quoted = false;
+						continue;
+					}
+				} else if (c == '"') {
+					quoted = !quoted;
+				}
+				if (line.length() <= MAX_LINE_CHARS)
+					line.append(c);
+			}
+			chars.clear();
+		}
+		if (line.length() > 0)
+			batch = addLine(batch, firstLineNumber, line, pool, parsed);
+		if (batch.count > 0)
+			parsed.put(pool.submit(parser(batch)));
+	}
+
+	private static Batch addLine(Batch batch, long lineNumber, StringBuilder line, ExecutorService pool,
+			ArrayBlockingQueue<Future<Batch>> parsed) throws InterruptedException {
+		int length = line.length();
+		if (length > 0 && line.charAt(length - 1) == '\r')
+			length--;
+		batch.lineNumbers[batch.count] = lineNumber;
+		batch.lines[batch.count++] = line.substring(0, length);
+		line.setLength(0);
+		if (batch.count < BATCH_LINES)
+			return batch;
+		parsed.put(pool.submit(parser(batch)));
+		return new Batch();
+	}
+
+	/**
+	 * This method turns a line into the Item or User it describes, checked
+	 * against the rules of the forms.
+	 *
+	 * @param line
+	 *            the line, without its line break.
+	 * @return the Item or User, or null if the line is blank.
+	 * @throws ValidationException
+	 *             when the line does not describe a valid Item or User.
+	 */
+	static Object parse(String line) throws ValidationException {
+		if (line.length() > MAX_LINE_CHARS)
+			throw new ValidationException("The line is longer than " + MAX_LINE_CHARS + " characters.");
+		if (line.trim().length() == 0)
+			return null;
+		String[] fields = split(line);
+		switch (fields[0]) {
+		case "Hardware":
+			checkFieldCount(fields, 6);
+			HardwareItem hardwareItem = new HardwareItem(ItemIDCodec.encode(fields[1]), fields[2],
+					parseQuantity(fields[3]), parsePrice(fields[4]), HardwareItem.whatCategory(fields[5]));
+			hardwareItem.validate();
+			return hardwareItem;
+		case "Appliance":
+			checkFieldCount(fields, 7);
+			Appliance appliance = new Appliance(ItemIDCodec.encode(fields[1]), fields[2], parseQuantity(fields[3]),
+					parsePrice(fields[4]), fields[5], Appliance.whatType(fields[6]));
+			appliance.validate();
+			return appliance;
+		case "Customer":
+			checkFieldCount(fields, 5);
+			Customer customer = new Customer(0, fields[1], fields[2], fields[3], fields[4]);
+			customer.validate();
+			return customer;
+		case "Employee":
+			checkFieldCount(fields, 5);
+			if (!SSN_PATTERN.matcher(fields[3]).matches())
+				throw new ValidationException("Please enter a 9 digit integer.");
+			float salary;
+			try {
+				salary = Float.parseFloat(fields[4]);
+			} catch (NumberFormatException e) {
+				throw new ValidationException("Please enter a number for the salary.");
+			}
+			Employee employee = new Employee(0, fields[1], fields[2], Integer.parseInt(fields[3]), salary);
+			employee.validate();
+			return employee;
+		default:
+			throw new ValidationException("Please start the line with Hardware, Appliance, Customer or Employee.");
+		}
+	}
+
+	private static void checkFieldCount(String[] fields, int count) throws ValidationException {
+		if (fields.length != count)
+			throw new ValidationException(
+					"A " + fields[0] + " line needs " + count + " fields, but this one has " + fields.length + ".");
+	}
+
+	private static float parsePrice(String field) throws ValidationException {
+		try {
+			return Float.parseFloat(field);
+		} catch (NumberFormatException e) {
+			throw new ValidationException("Please enter a price with at most 2 decimal digit accuracy.");
+		}
+	}
+
+	private static int parseQuantity(String field) throws ValidationException {
+		try {
+			return Integer.parseInt(field);
+		} catch (NumberFormatException e) {
+			throw new ValidationException("Please enter a positive integer quantity.");
+		}
+	}
+
+	private static Callable<Batch> parser(Batch batch) {
+		return new Callable<Batch>() {
+			@Override
+			public Batch call() {
+				for (int x = 0; x < batch.count; x++) {
+					try {
+						if (batch.lineNumbers[x] == 1 && batch.lines[x].startsWith("Kind,"))
+							continue;
+						batch.rows[x] = parse(batch.lines[x]);
+					} catch (ValidationException e) {
+						batch.reasons[x] = e.getMessage();
+					}
+				}
+				return batch;
+			}
+		};
+	}
+
+	private static String quote(String field) {
+		return '"' + field.replace("\"", "\"\"") + '"';
+	}
+
+	private static double rowsPerSecond(long rows, long nanos) {
+		return nanos == 0 ? 0 : rows * 1e9 / nanos;
+	}
+
+	private static String[] split(String line) {
+		ArrayList<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int x = 0; x < line.length(); x++) {
+			char c = line.charAt(x);
+			if (quoted) {
+				if (c != '"')
+					field.append(c);
+				else if (x + 1 < line.length() && line.charAt(x + 1) == '"')
+					field.append(line.charAt(++x));
+				else
+					quoted = false;
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	/**
+	 * This method imports a CSV file into the database of the hardware store
+	 * without starting the user interface, which must not be running.
+	 *
+	 * @param args
+	 *            the name of the CSV file, then optionally the name of the
+	 *            reject file, which defaults to the CSV file name followed by
+	 *            ".rejects".
+	 * @throws IOException
+	 *             when a file cannot be read or written.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: java hardware.CsvImporter file.csv [rejects.csv]");
+			System.exit(2);
+		}
+		InventoryService service = new InventoryService(Main.DATABASE_FILENAME, Main.JOURNAL_FILENAME, false, 2);
+		service.load();
+		try {
+			Report report = new CsvImporter(service, Runtime.getRuntime().availableProcessors())
+					.importFile(args[0], args.length > 1 ? args[1] : args[0] + ".rejects");
+			System.out.println(report);
+		} finally {
+			service.close();
+		}
+	}
+}
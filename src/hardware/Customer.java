@@ -1,5 +1,10 @@
 package hardware;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
 /**
  * This class represents a record of a customer that uses a hardware store.
  * 
@@ -8,64 +13,42 @@ package hardware;
  * @since 1.0
  */
 public class Customer extends User {
+	private static final Pattern PHONE_PATTERN = Pattern.compile("\\d{3}[-]{1}\\d{3}[-]{1}\\d{4}");
 	private static final long serialVersionUID = 7763308262657582054L;
-	private final Form form = new Form(new FormLine[] { basicLines[0], basicLines[1],
-			new FormLine("Phone Number", "Please enter a phone number in the format \"XXX-XXX-XXXX\"") {
-				private static final long serialVersionUID = -5844465642452454033L;
-
-				@Override
-				protected boolean verify() {
-					return getInput().matches("\\d{3}[-]{1}\\d{3}[-]{1}\\d{4}");
-				}
-			}, new FormLine("Address", "Please enter an address with at least 1 character.") {
-				private static final long serialVersionUID = 9167400530254009190L;
-
-				@Override
-				protected boolean verify() {
-					return getInput().length() > 0;
-				}
-			} });
 	private String phone, address;
 
 	/**
-	 * This constructor makes a form appear and uses the resulting user input to
-	 * initialize this object's fields.
+	 * This constructor creates a new Customer from its field values.
 	 * 
 	 * @param id
 	 *            the ID for this new user.
-	 * @throws CancelException
-	 *             when the user presses "Cancel."
+	 * @param firstName
+	 *            the customer's first name.
+	 * @param lastName
+	 *            the customer's last name.
+	 * @param phone
+	 *            the customer's phone number, in the format "XXX-XXX-XXXX".
+	 * @param address
+	 *            the customer's address.
 	 */
-	public Customer(int id) throws CancelException {
-		ID = id;
-		String[] result = form.result();
-		firstName = result[0];
-		lastName = result[1];
-		phone = result[2];
-		address = result[3];
+	public Customer(int id, String firstName, String lastName, String phone, String address) {
+		super(id, firstName, lastName);
+		this.phone = phone;
+		this.address = address;
 	}
 
 	/**
-	 * This constructor makes a form appear, then it initializes the textfields
-	 * of the form with initializationVector. Then, it uses the resulting user
-	 * input to initialize this object's fields. This constructor is used when
-	 * editing an existing User.
+	 * This constructor reads a Customer from a stream written by write().
 	 * 
-	 * @param id
-	 *            the ID for this new user.
-	 * @param initializationVector
-	 *            the String[] containing the original User object values.
-	 * @throws CancelException
-	 *             when the user presses "Cancel."
+	 * @param in
+	 *            the stream to read from.
+	 * @throws IOException
+	 *             when the stream cannot be read.
 	 */
-	public Customer(int id, String[] initializationVector) throws CancelException {
-		form.initialize(initializationVector);
-		ID = id;
-		String[] result = form.result();
-		firstName = result[0];
-		lastName = result[1];
-		phone = result[2];
-		address = result[3];
+	Customer(DataInput in) throws IOException {
+		super(in);
+		phone = in.readUTF();
+		address = in.readUTF();
 	}
 
 	/**
@@ -82,4 +65,41 @@ public class Customer extends User {
 		value[4] = address;
 		return value;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * This method adds the rules for the phone number and address to those of
+	 * User.validate().
+	 * 
+	 * @see hardware.User#validate()
+	 */
+	@Override
+	void validate() throws ValidationException {
+		super.validate();
+		if (phone == null || !isValidPhone(phone))
+			throw new ValidationException("Please enter a phone number in the format \"XXX-XXX-XXXX\"");
+		if (address == null || address.length() == 0)
+			throw new ValidationException("Please enter an address with at least 1 character.");
+	}
+
+	/**
+	 * This method adds the phone number and address to the fields written by
+	 * User.write().
+	 * 
+	 * @see hardware.User#write(java.io.DataOutput)
+	 */
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		out.writeUTF(phone);
+		out.writeUTF(address);
+	}
+
+	/**
+	 * @param phone
+	 *            the phone number to be tested.
+	 * @return true, if the phone number is in the format "XXX-XXX-XXXX".
+	 */
+	public static boolean isValidPhone(String phone) {
+		return PHONE_PATTERN.matcher(phone).matches();
+	}
+}
@@ -1,6 +1,8 @@
 package hardware;
 
-import java.util.logging.Logger;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * This class represents employees working at a hardware store.
@@ -10,74 +12,42 @@ import java.util.logging.Logger;
  * @since 1.0
  */
 public class Employee extends User {
-	private static final Logger LOGGER = Logger.getGlobal();
 	private static final long serialVersionUID = -3139314890369541999L;
-	private final Form form = new Form(
-			new FormLine[] { basicLines[0], basicLines[1], new FormLine("SSN", "Please enter a 9 digit integer.") {
-				private static final long serialVersionUID = 4905308045461775352L;
-
-				@Override
-				protected boolean verify() {
-					return getInput().matches("\\d{9}");
-				}
-			}, new FormLine("Salary", "Please enter a number for the salary.") {
-				private static final long serialVersionUID = -7256671107552664565L;
-
-				@Override
-				protected boolean verify() {
-					try {
-						Float.parseFloat(getInput());
-					} catch (Exception e) {
-						LOGGER.warning("User has not entered a float when float was expected.");
-						return false;
-					}
-					return true;
-				}
-			} });
 	private float salary;
 	private int ssn;
 
 	/**
-	 * This constructor creates a new Employee object using id and also by
-	 * showing a form and using the resulting user input to initialize its
-	 * fields.
+	 * This constructor creates a new Employee from its field values.
 	 * 
 	 * @param id
 	 *            the user ID for this new Employee object.
-	 * @throws CancelException
-	 *             when the user presses "Cancel" in the form.
+	 * @param firstName
+	 *            the employee's first name.
+	 * @param lastName
+	 *            the employee's last name.
+	 * @param ssn
+	 *            the employee's 9 digit social security number.
+	 * @param salary
+	 *            the employee's salary.
 	 */
-	public Employee(int id) throws CancelException {
-		ID = id;
-		String[] result = form.result();
-		firstName = result[0];
-		lastName = result[1];
-		ssn = Integer.parseInt(result[2]);
-		salary = Float.parseFloat(result[3]);
+	public Employee(int id, String firstName, String lastName, int ssn, float salary) {
+		super(id, firstName, lastName);
+		this.ssn = ssn;
+		this.salary = salary;
 	}
 
 	/**
-	 * This constructor creates a new Employee object using id and also by
-	 * showing a form and using the resulting user input to initialize its
-	 * fields. This particular constructor also initializes the form's textfield
-	 * values using initializationVector.
+	 * This constructor reads an Employee from a stream written by write().
 	 * 
-	 * @param id
-	 *            the user ID for this new Employee object.
-	 * @param initializationVector
-	 *            the vector containing the fields for the existing Employee
-	 *            object to be updated.
-	 * @throws CancelException
-	 *             when the user presses "Cancel" in the form.
+	 * @param in
+	 *            the stream to read from.
+	 * @throws IOException
+	 *             when the stream cannot be read.
 	 */
-	public Employee(int id, String[] initializationVector) throws CancelException {
-		form.initialize(initializationVector);
-		ID = id;
-		String[] result = form.result();
-		firstName = result[0];
-		lastName = result[1];
-		ssn = Integer.parseInt(result[2]);
-		salary = Float.parseFloat(result[3]);
+	Employee(DataInput in) throws IOException {
+		super(in);
+		ssn = in.readInt();
+		salary = in.readFloat();
 	}
 
 	/**
@@ -95,6 +65,31 @@ public class Employee extends User {
 		return value;
 	}
 
+	/**
+	 * This method adds the rule for the SSN to those of User.validate().
+	 * 
+	 * @see hardware.User#validate()
+	 */
+	@Override
+	void validate() throws ValidationException {
+		super.validate();
+		if (ssn < 0 || ssn > 999999999)
+			throw new ValidationException("Please enter a 9 digit integer.");
+	}
+
+	/**
+	 * This method adds the SSN and salary to the fields written by
+	 * User.write().
+	 * 
+	 * @see hardware.User#write(java.io.DataOutput)
+	 */
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		out.writeInt(ssn);
+		out.writeFloat(salary);
+	}
+
 	private String padSSN() {
 		String sssn = ssn + "";
 		int zerosToAdd = 9 - sssn.length();
@@ -0,0 +1,92 @@
+package hardware;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class serializes changes to the same item or user, while changes to
+ * different ones go ahead side by side. A lock exists only while some thread
+ * holds or waits for it, so there is no limit to the number of entities.
+ * <p>
+ * The locks are kept in a concurrent map, so finding one takes no lock shared
+ * by all entities. Each counts the threads which hold or wait for it, and is
+ * retired by the last of them to leave, after which a thread which still
+ * finds it in the map puts a new one in its place.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class EntityLocks {
+	private static class EntityLock {
+		/**
+		 * The number of threads which hold or wait for the lock, or RETIRED.
+		 */
+		final AtomicInteger holders = new AtomicInteger();
+		final ReentrantLock lock = new ReentrantLock();
+	}
+
+	private static final int RETIRED = -1;
+	private final ConcurrentHashMap<Long, EntityLock> locks = new ConcurrentHashMap<Long, EntityLock>();
+
+	/**
+	 * This method waits until no other thread holds the entity, then holds it
+	 * for the calling thread. Every call must be followed by a call to unlock()
+	 * in a finally block.
+	 *
+	 * @param entity
+	 *            the entity, from itemEntity() or userEntity().
+	 */
+	public void lock(long entity) {
+		while (true) {
+			EntityLock entityLock = locks.get(entity);
+			if (entityLock == null) {
+				EntityLock created = new EntityLock();
+				entityLock = locks.putIfAbsent(entity, created);
+				if (entityLock == null)
+					entityLock = created;
+			}
+			int holders = entityLock.holders.get();
+			if (holders == RETIRED) {
+				locks.remove(entity, entityLock);
+				continue;
+			}
+			if (entityLock.holders.compareAndSet(holders, holders + 1)) {
+				entityLock.lock.lock();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * This method lets other threads hold the entity again.
+	 *
+	 * @param entity
+	 *            the entity passed to lock().
+	 */
+	public void unlock(long entity) {
+		EntityLock entityLock = locks.get(entity);
+		entityLock.lock.unlock();
+		if (entityLock.holders.decrementAndGet() == 0 && entityLock.holders.compareAndSet(0, RETIRED))
+			locks.remove(entity, entityLock);
+	}
+
+	/**
+	 * @param key
+	 *            the key of an Item, as packed by ItemIDCodec.
+	 * @return the entity to be locked for changes to that Item.
+	 */
+	public static long itemEntity(int key) {
+		return key;
+	}
+
+	/**
+	 * @param id
+	 *            the ID of a User.
+	 * @return the entity to be locked for changes to that User.
+	 */
+	public static long userEntity(int id) {
+		return (1L << 32) | (id & 0xFFFFFFFFL);
+	}
+}
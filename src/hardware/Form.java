@@ -4,6 +4,9 @@ import java.awt.FlowLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 import javax.swing.JButton;
@@ -12,7 +15,8 @@ import javax.swing.JPanel;
 
 /**
  * This class extends JDialog in order to be used as a form for validated user
- * input.
+ * input. The thread waiting for the result is parked until the user presses a
+ * button, instead of spinning.
  * 
  * @author Peter Wesley Hutcheson
  * @version 1.0
@@ -20,10 +24,11 @@ import javax.swing.JPanel;
  */
 public class Form extends JDialog {
 	private static final Logger LOGGER = Logger.getGlobal();
+	private static final LongAdder REJECTED = Metrics.getGlobal().counter("form.rejected");
 	private static final long serialVersionUID = -1599927448056995832L;
-	private boolean cancelled = false;
-	private volatile boolean done = false;
+	private static final LatencyHistogram VERIFY_LATENCY = Metrics.getGlobal().histogram("form.verify");
 	private FormLine[] lines;
+	private final LinkedBlockingQueue<Boolean> presses = new LinkedBlockingQueue<Boolean>();
 
 	/**
 	 * This constructor creates a new Form which contains the FormLine objects
@@ -46,9 +51,7 @@ public class Form extends JDialog {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				LOGGER.info("User pressed OK or Cancel on a form.");
-				if (((JButton) e.getSource()).getText() == "Cancel")
-					cancelled = true;
-				done = true;
+				presses.offer(((JButton) e.getSource()).getText() != "Cancel");
 			}
 		};
 		ok.addActionListener(formListener);
@@ -60,6 +63,14 @@ public class Form extends JDialog {
 		setLocationRelativeTo(null);
 	}
 
+	/**
+	 * This method cancels the form as if the user had pressed "Cancel," so that
+	 * the thread waiting in result() throws a CancelException.
+	 */
+	public void cancel() {
+		presses.offer(false);
+	}
+
 	/**
 	 * This method recursively clears the text fields of all the FormLines, when
 	 * the form is done accepting user input.
@@ -96,15 +107,40 @@ public class Form extends JDialog {
 	 *             when the user presses "Cancel."
 	 */
 	public String[] result() throws CancelException {
+		return result(0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * This method works like result(), but gives up after a timeout.
+	 * 
+	 * @param timeout
+	 *            how long to wait for valid input, 0 to wait forever.
+	 * @param unit
+	 *            the unit of timeout.
+	 * @return a String array represented validated user input.
+	 * @throws CancelException
+	 *             when the user presses "Cancel," the form is cancelled with
+	 *             cancel(), the waiting thread is interrupted or the timeout
+	 *             passes.
+	 */
+	public String[] result(long timeout, TimeUnit unit) throws CancelException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		presses.clear();
 		setVisible(true);
 		do {
 			validate();
 			repaint();
-			done = false;
-			while (!done) {
+			Boolean pressedOK;
+			try {
+				if (timeout > 0)
+					pressedOK = presses.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				else
+					pressedOK = presses.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				pressedOK = false;
 			}
-			if (cancelled) {
-				cancelled = false;
+			if (pressedOK == null || !pressedOK) {
 				clear();
 				setVisible(false);
 				throw new CancelException();
@@ -119,6 +155,23 @@ public class Form extends JDialog {
 		return value;
 	}
 
+	/**
+	 * This method works like result(), but also disposes of the dialog
+	 * afterwards. It is used by the editors, which create a form only for as
+	 * long as the user is editing.
+	 * 
+	 * @return a String array represented validated user input.
+	 * @throws CancelException
+	 *             when the user presses "Cancel."
+	 */
+	public String[] resultOnce() throws CancelException {
+		try {
+			return result();
+		} finally {
+			dispose();
+		}
+	}
+
 	/**
 	 * This is the method which performs the recursive input validation on the
 	 * FormLine objects. It also makes the FormLine objects show if the input is
@@ -127,11 +180,15 @@ public class Form extends JDialog {
 	 * @return true, if every FormLine input is valid, false otherwise.
 	 */
 	public boolean verify() {
+		long start = System.nanoTime();
 		boolean value = true;
 		for (FormLine line : lines) {
 			boolean isVerified = line.showVerify();
 			value &= isVerified;
 		}
+		VERIFY_LATENCY.record(System.nanoTime() - start);
+		if (!value)
+			REJECTED.increment();
 		return value;
 	}
 }
\ No newline at end of file
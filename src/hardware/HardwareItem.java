@@ -1,5 +1,9 @@
 package hardware;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * This class represents small hardware objects for sale at a hardware store.
  * 
@@ -12,31 +16,48 @@ public class HardwareItem extends Item {
 			"Other" };
 	private static final long serialVersionUID = -2581325354044554553L;
 	private byte category;
-	private final Form form = new Form(new FormLine[] { basicLines[0], basicLines[1], basicLines[2], basicLines[3],
-			new FormLine("Category", "Please enter a category from " + CATEGORIES[0] + ", " + CATEGORIES[1] + ", "
-					+ CATEGORIES[2] + ", or " + CATEGORIES[3]) {
-				private static final long serialVersionUID = -8803145486470982669L;
 
-				@Override
-				protected boolean verify() {
-					return whatCategory(getInput()) != -1;
-				}
-			} });
+	/**
+	 * This constructor creates a new HardwareItem from its field values.
+	 * 
+	 * @param key
+	 *            the ID of this HardwareItem, as packed by ItemIDCodec.
+	 * @param name
+	 *            the name of this HardwareItem.
+	 * @param quantity
+	 *            the quantity of this HardwareItem in stock.
+	 * @param price
+	 *            the price of this HardwareItem.
+	 * @param category
+	 *            the category of this HardwareItem, as returned by
+	 *            whatCategory().
+	 */
+	public HardwareItem(int key, String name, int quantity, float price, byte category) {
+		super(key, name, quantity, price);
+		this.category = category;
+	}
+
+	/**
+	 * This constructor reads a HardwareItem from a stream written by write().
+	 * 
+	 * @param in
+	 *            the stream to read from.
+	 * @throws IOException
+	 *             when the stream cannot be read.
+	 */
+	HardwareItem(DataInput in) throws IOException {
+		super(in);
+		category = in.readByte();
+	}
 
 	/**
-	 * This constructor shows a form and uses the resulting user input to
-	 * initialize its fields.
+	 * This method adds the category to the fields searched by name.
 	 * 
-	 * @throws CancelException
-	 *             when the user presses "Cancel" on the form.
+	 * @see hardware.Item#getSearchFields()
 	 */
-	public HardwareItem() throws CancelException {
-		String[] result = form.result();
-		ID = result[0].toUpperCase();
-		name = result[1];
-		quantity = Integer.parseInt(result[2]);
-		price = Float.parseFloat(result[3]);
-		category = whatCategory(result[4]);
+	@Override
+	public String[] getSearchFields() {
+		return new String[] { name, CATEGORIES[category] };
 	}
 
 	/**
@@ -53,6 +74,38 @@ public class HardwareItem extends Item {
 		return value;
 	}
 
+	/**
+	 * This method adds the rule for the category to those of Item.validate().
+	 * 
+	 * @see hardware.Item#validate()
+	 */
+	@Override
+	void validate() throws ValidationException {
+		super.validate();
+		if (category < 0 || category >= CATEGORIES.length)
+			throw new ValidationException("Please enter a category from " + CATEGORIES[0] + ", " + CATEGORIES[1]
+					+ ", " + CATEGORIES[2] + ", or " + CATEGORIES[3]);
+	}
+
+	/**
+	 * This method adds the category to the fields written by Item.write().
+	 * 
+	 * @see hardware.Item#write(java.io.DataOutput)
+	 */
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		out.writeByte(category);
+	}
+
+	/**
+	 * @return the names of the hardware categories, in the order of their
+	 *         bytes.
+	 */
+	public static String[] getCategories() {
+		return CATEGORIES.clone();
+	}
+
 	/**
 	 * This method finds which hardware category a String corresponds to.
 	 * 
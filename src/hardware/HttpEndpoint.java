@@ -0,0 +1,395 @@
+package hardware;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class serves the hardware store over HTTP on the loopback interface, so
+ * that scanners and scripts on the shop floor can use the same
+ * InventoryService as the window. Requests and responses are JSON:
+ *
+ * <pre>
+ * GET  /items/{id}           the Item with that ID
+ * GET  /items?q=text&amp;limit=n  the items which name or other fields contain text
+ * POST /items/{id}/stock     {"quantity":n} adds stock to the Item
+ * POST /transactions         {"item":id,"quantity":n,"customer":id,"employee":id}
+ *                            posts a sale, or an array of them as one batch
+ * GET  /metrics              every metric of the store, as Metrics.toJson()
+ * </pre>
+ *
+ * A change which breaks a rule of the forms is answered with status 422 and
+ * {"error":message}. Connections are kept alive between requests, and requests
+ * are handled on a fixed pool of threads, each endpoint recording its latency
+ * in the global Metrics, as "http." followed by the endpoint. A path which is
+ * not exactly one of the above is answered with status 404.
+ * <p>
+ * The JDK server leaves Nagle's algorithm on unless the JVM-wide
+ * sun.net.httpserver.nodelay property is set before its first server is
+ * created, so whatever starts the process should call useNoDelay() first.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class HttpEndpoint {
+	private static final int DEFAULT_SEARCH_LIMIT = 100;
+	private static final Logger LOGGER = Logger.getGlobal();
+	private static final int MAX_BODY_BYTES = 16 << 20;
+	private final ExecutorService executor;
+	private final LinkedHashMap<String, LatencyHistogram> latencies = new LinkedHashMap<String, LatencyHistogram>();
+	private final HttpServer server;
+	private final InventoryService service;
+
+	/**
+	 * This constructor binds the server to a port of the loopback interface.
+	 * It does not accept requests until start() is called.
+	 *
+	 * @param service
+	 *            the InventoryService to be served.
+	 * @param port
+	 *            the port to listen on, or 0 for any free port.
+	 * @param threads
+	 *            the number of requests which may be handled at once.
+	 * @throws IOException
+	 *             when the port cannot be bound.
+	 */
+	public HttpEndpoint(InventoryService service, int port, int threads) throws IOException {
+		this.service = service;
+		for (String endpoint : new String[] { "GET /items/{id}", "GET /items?q", "POST /items/{id}/stock",
+				"POST /transactions", "GET /metrics" }) {
+			latencies.put(endpoint, Metrics.getGlobal().histogram("http." + endpoint));
+		}
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "HTTP " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext("/items", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleItems(exchange);
+			}
+		});
+		server.createContext("/transactions", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleTransactions(exchange);
+			}
+		});
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				long start = System.nanoTime();
+				readBody(exchange);
+				if (!isAt(exchange, "/metrics"))
+					return;
+				if (!"GET".equals(exchange.getRequestMethod()))
+					respond(exchange, 405, error("Use GET."));
+				else
+					respond(exchange, 200, Metrics.getGlobal().toJson());
+				latencies.get("GET /metrics").record(System.nanoTime() - start);
+			}
+		});
+	}
+
+	/**
+	 * @return the port the server listens on.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * This method starts accepting requests.
+	 */
+	public void start() {
+		server.start();
+		LOGGER.info("Serving the hardware store on http://localhost:" + getPort() + "/");
+	}
+
+	/**
+	 * This method stops accepting requests, lets the requests in progress
+	 * finish for up to a second, and logs the latency of each endpoint.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+			LOGGER.info(entry.getKey() + ": " + entry.getValue());
+		}
+	}
+
+	private void handleItems(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		String endpoint = null;
+		try {
+			byte[] body = readBody(exchange);
+			String method = exchange.getRequestMethod(), path = exchange.getRequestURI().getPath();
+			String[] parts = path.substring(1).split("/");
+			if (!parts[0].equals("items")) {
+				respond(exchange, 404, error("There is nothing at " + path + "."));
+			} else if (parts.length == 1 && path.equals("/items")) {
+				endpoint = "GET /items?q";
+				if (!"GET".equals(method)) {
+					respond(exchange, 405, error("Use GET."));
+					return;
+				}
+				Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+				String text = query.get("q");
+				if (text == null) {
+					respond(exchange, 400, error("Please give the text to search for as q."));
+					return;
+				}
+				int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_SEARCH_LIMIT;
+				if (limit < 1)
+					throw new IllegalArgumentException("The limit must be positive.");
+				StringBuilder json = new StringBuilder("[");
+				// The search is streamed from the Inventory, so that it stops
+				// at the limit, once the items are loaded like any other.
+				service.await(InventoryService.Stage.Items);
+				service.getInventory().search(text, new TrigramIndex.Results() {
+					private int found = 0;
+
+					@Override
+					public boolean found(Item item) {
+						if (found++ > 0)
+							json.append(',');
+						writeItem(item, json);
+						return found < limit;
+					}
+				});
+				respond(exchange, 200, json.append(']').toString());
+			} else if (parts.length == 2) {
+				endpoint = "GET /items/{id}";
+				if (!"GET".equals(method)) {
+					respond(exchange, 405, error("Use GET."));
+					return;
+				}
+				Item item = service.getItem(parts[1]);
+				if (item == null)
+					respond(exchange, 404, error("There is no item with ID " + parts[1] + "."));
+				else
+					respond(exchange, 200, writeItem(item, new StringBuilder()).toString());
+			} else if (parts.length == 3 && parts[2].equals("stock")) {
+				endpoint = "POST /items/{id}/stock";
+				if (!"POST".equals(method)) {
+					respond(exchange, 405, error("Use POST."));
+					return;
+				}
+				Map<?, ?> request = jsonObject(Json.parse(new String(body, StandardCharsets.UTF_8)));
+				Item item = service.addQuantity(parts[1], intField(request, "quantity"));
+				respond(exchange, 200, writeItem(item, new StringBuilder()).toString());
+			} else {
+				respond(exchange, 404, error("There is nothing at " + path + "."));
+			}
+		} catch (ValidationException e) {
+			respond(exchange, 422, error(e.getMessage()));
+		} catch (IllegalArgumentException | ClassCastException e) {
+			respond(exchange, 400, error("Malformed request: " + e.getMessage()));
+		} catch (RuntimeException e) {
+			LOGGER.warning("Problem handling " + exchange.getRequestURI() + ": " + e);
+			respond(exchange, 500, error("Internal error."));
+		} finally {
+			if (endpoint != null)
+				latencies.get(endpoint).record(System.nanoTime() - start);
+		}
+	}
+
+	private void handleTransactions(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		try {
+			byte[] body = readBody(exchange);
+			if (!isAt(exchange, "/transactions"))
+				return;
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				respond(exchange, 405, error("Use POST."));
+				return;
+			}
+			Object request = Json.parse(new String(body, StandardCharsets.UTF_8));
+			if (request instanceof List) {
+				ArrayList<Transaction> batch = new ArrayList<Transaction>();
+				for (Object line : (List<?>) request) {
+					batch.add(transaction(jsonObject(line)));
+				}
+				ValidationException[] errors = service.postTransactions(batch);
+				StringBuilder json = new StringBuilder("[");
+				for (int x = 0; x < errors.length; x++) {
+					json.append(x > 0 ? "," : "").append(errors[x] == null ? "{\"posted\":true}" : error(errors[x]
+							.getMessage()));
+				}
+				respond(exchange, 200, json.append(']').toString());
+			} else {
+				service.postTransaction(transaction(jsonObject(request)));
+				respond(exchange, 201, "{\"posted\":true}");
+			}
+		} catch (ValidationException e) {
+			respond(exchange, 422, error(e.getMessage()));
+		} catch (IllegalArgumentException | ClassCastException e) {
+			respond(exchange, 400, error("Malformed request: " + e.getMessage()));
+		} catch (RuntimeException e) {
+			LOGGER.warning("Problem handling " + exchange.getRequestURI() + ": " + e);
+			respond(exchange, 500, error("Internal error."));
+		} finally {
+			latencies.get("POST /transactions").record(System.nanoTime() - start);
+		}
+	}
+
+	private static String error(String message) {
+		return "{\"error\":" + Json.quote(message) + "}";
+	}
+
+	private static int intField(Map<?, ?> object, String name) {
+		Object value = object.get(name);
+		if (!(value instanceof Long) || (Long) value != ((Long) value).intValue())
+			throw new IllegalArgumentException("Expected an integer " + name + ".");
+		return ((Long) value).intValue();
+	}
+
+	/**
+	 * The server hands a context every path which starts with its own, so
+	 * that /metrics also gets /metricsX and /metrics/x.
+	 *
+	 * @return true, if the request is for exactly the path, or false after
+	 *         answering it with status 404.
+	 */
+	private static boolean isAt(HttpExchange exchange, String path) throws IOException {
+		if (exchange.getRequestURI().getPath().equals(path))
+			return true;
+		respond(exchange, 404, error("There is nothing at " + exchange.getRequestURI().getPath() + "."));
+		return false;
+	}
+
+	/**
+	 * @return the value, if it is a JSON object.
+	 * @throws IllegalArgumentException
+	 *             when it is anything else, null included.
+	 */
+	private static Map<?, ?> jsonObject(Object value) {
+		if (!(value instanceof Map))
+			throw new IllegalArgumentException("Expected an object.");
+		return (Map<?, ?>) value;
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) {
+		LinkedHashMap<String, String> query = new LinkedHashMap<String, String>();
+		if (rawQuery == null)
+			return query;
+		for (String pair : rawQuery.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0)
+				query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+		}
+		return query;
+	}
+
+	/**
+	 * This method reads the whole request body, which must be done for the
+	 * connection to be kept alive.
+	 */
+	private static byte[] readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+			if (body.length > MAX_BODY_BYTES)
+				throw new IllegalArgumentException("The body is larger than " + MAX_BODY_BYTES + " bytes.");
+			return body;
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static Transaction transaction(Map<?, ?> line) {
+		Object id = line.get("item"), time = line.get("time");
+		if (!(id instanceof String))
+			throw new IllegalArgumentException("Expected a string item.");
+		return new Transaction(time instanceof Long ? new Date((Long) time) : new Date(),
+				ItemIDCodec.encode((String) id), intField(line, "quantity"), intField(line, "customer"),
+				intField(line, "employee"));
+	}
+
+	private static StringBuilder writeItem(Item item, StringBuilder json) {
+		return json.append("{\"id\":").append(Json.quote(item.getID())).append(",\"name\":")
+				.append(Json.quote(item.getName())).append(",\"quantity\":").append(item.getQuantity())
+				.append(",\"price\":").append(item.getPrice()).append(",\"details\":")
+				.append(Json.quote(item.toStringArray()[4])).append('}');
+	}
+
+	/**
+	 * This method sets the JVM-wide sun.net.httpserver.nodelay property, unless
+	 * it is already set, so that the HTTP servers created afterwards turn
+	 * Nagle's algorithm off instead of holding back every small response until
+	 * the client's delayed ACK. The JDK reads the property only once, so it is
+	 * called at startup, before any HttpEndpoint is created.
+	 */
+	public static void useNoDelay() {
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	/**
+	 * This method serves the database of the hardware store over HTTP without
+	 * starting the user interface, which must not be running, until the
+	 * process is stopped.
+	 *
+	 * @param args
+	 *            the port to listen on, which defaults to 8080, then the number
+	 *            of threads, which defaults to 16.
+	 * @throws IOException
+	 *             when the database cannot be read or the port cannot be
+	 *             bound.
+	 */
+	public static void main(String[] args) throws IOException {
+		useNoDelay();
+		InventoryService service = new InventoryService(Main.DATABASE_FILENAME, Main.JOURNAL_FILENAME, false, 2);
+		service.load();
+		HttpEndpoint endpoint = new HttpEndpoint(service, args.length > 0 ? Integer.parseInt(args[0]) : 8080,
+				args.length > 1 ? Integer.parseInt(args[1]) : 16);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				endpoint.stop();
+				service.close();
+			}
+		});
+		endpoint.start();
+	}
+}
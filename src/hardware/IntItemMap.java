@@ -0,0 +1,151 @@
+package hardware;
+
+/**
+ * This class is an open-addressing hash table from int Item keys to Item
+ * objects. It uses linear probing and backward-shift deletion, so it needs no
+ * boxing and no tombstones.
+ * <p>
+ * The map is not synchronized. Still, get() never fails or loops forever when
+ * it races with a writer, though it may then give a wrong answer, so that it
+ * can be read under an optimistic lock which is validated afterwards.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class IntItemMap {
+	private static final int EMPTY = -1;
+	private int[] keys;
+	private int mask;
+	private int size;
+	private Item[] values;
+
+	/**
+	 * This constructor creates an empty map.
+	 */
+	public IntItemMap() {
+		allocate(16);
+	}
+
+	/**
+	 * @param key
+	 *            the key of the Item.
+	 * @return true if an Item is stored under key.
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * @param key
+	 *            the key of the Item.
+	 * @return the Item stored under key, or null if there is none.
+	 */
+	public Item get(int key) {
+		int[] keys = this.keys;
+		Item[] values = this.values;
+		if (key < 0 || keys.length != values.length)
+			return null;
+		int mask = keys.length - 1;
+		for (int slot = slot(key, mask), probes = 0; probes < keys.length; slot = (slot + 1) & mask, probes++) {
+			int k = keys[slot];
+			if (k == key)
+				return values[slot];
+			if (k == EMPTY)
+				return null;
+		}
+		return null;
+	}
+
+	/**
+	 * This method stores an Item under key, replacing any Item already stored
+	 * under it.
+	 *
+	 * @param key
+	 *            the non-negative key of the Item.
+	 * @param item
+	 *            the Item to be stored.
+	 * @return the replaced Item, or null if there was none.
+	 */
+	public Item put(int key, Item item) {
+		if ((size + 1) * 4 > keys.length * 3)
+			resize(keys.length * 2);
+		int slot = slot(key, mask);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				Item old = values[slot];
+				values[slot] = item;
+				return old;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = item;
+		size++;
+		return null;
+	}
+
+	/**
+	 * This method removes the Item stored under key.
+	 *
+	 * @param key
+	 *            the key of the Item.
+	 * @return the removed Item, or null if there was none.
+	 */
+	public Item remove(int key) {
+		if (key < 0)
+			return null;
+		int slot = slot(key, mask);
+		while (keys[slot] != key) {
+			if (keys[slot] == EMPTY)
+				return null;
+			slot = (slot + 1) & mask;
+		}
+		Item old = values[slot];
+		int gap = slot;
+		for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+			int home = slot(keys[next], mask);
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+		}
+		keys[gap] = EMPTY;
+		values[gap] = null;
+		size--;
+		return old;
+	}
+
+	/**
+	 * @return the number of stored items.
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new Item[capacity];
+		mask = capacity - 1;
+		for (int x = 0; x < capacity; x++) {
+			keys[x] = EMPTY;
+		}
+	}
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Item[] oldValues = values;
+		allocate(capacity);
+		size = 0;
+		for (int x = 0; x < oldKeys.length; x++) {
+			if (oldKeys[x] != EMPTY)
+				put(oldKeys[x], oldValues[x]);
+		}
+	}
+
+	private static int slot(int key, int mask) {
+		int hash = key * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+}
@@ -0,0 +1,523 @@
+package hardware;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This class owns the items and users of the hardware store and keeps them
+ * indexed by their IDs, so that lookups take constant time no matter how large
+ * the catalogue is, and in ID order in balanced trees, so that they can be
+ * listed in order without being sorted. Every change is reported to the
+ * registered listeners, so that views can follow the store one row at a time.
+ * <p>
+ * The Inventory may be used from any number of threads. Changes are made one at
+ * a time and each is reported to the listeners before the next one starts,
+ * except for the stock taken and given back by reserve(), release() and
+ * compareAndSetQuantity(), which lock nothing and report itemChanged() on
+ * many threads at once, so listeners must be thread-safe. Reads do not lock:
+ * the lists are frozen snapshots of persistent trees, the users are kept in a
+ * concurrent map, and items are looked up under an optimistic lock which only
+ * waits while a writer is changing the key map.
+ * Stock is sold through reserve(), which takes it with compare-and-set
+ * instead of a lock, so sales of different items never wait for each other
+ * and the quantity of an Item never goes below zero.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class Inventory {
+	/**
+	 * This interface receives every change made to an Inventory, on the thread
+	 * which made the change. itemChanged() may be called by several threads at
+	 * once.
+	 */
+	public interface Listener {
+		/**
+		 * @param item
+		 *            the Item which was added.
+		 */
+		void itemAdded(Item item);
+
+		/**
+		 * @param item
+		 *            the Item which quantity or other fields changed.
+		 */
+		void itemChanged(Item item);
+
+		/**
+		 * @param item
+		 *            the Item which was removed.
+		 */
+		void itemRemoved(Item item);
+
+		/**
+		 * @param user
+		 *            the User which was added.
+		 */
+		void userAdded(User user);
+
+		/**
+		 * @param user
+		 *            the User which replaced the User with the same ID.
+		 */
+		void userReplaced(User user);
+	}
+
+	/**
+	 * This class is stock which reserve() has taken from an Item, until it is
+	 * either committed as sold or released back to the Item.
+	 */
+	public static final class Reservation {
+		private static final int PENDING = 0, COMMITTED = 1, RELEASED = 2;
+		private final Item item;
+		private final int quantity;
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+
+		private Reservation(Item item, int quantity) {
+			this.item = item;
+			this.quantity = quantity;
+		}
+
+		/**
+		 * @return the Item which stock was reserved.
+		 */
+		public Item getItem() {
+			return item;
+		}
+
+		/**
+		 * @return the quantity which was reserved.
+		 */
+		public int getQuantity() {
+			return quantity;
+		}
+	}
+
+	private static final LatencyHistogram SEARCH_LATENCY = Metrics.getGlobal().histogram("search.query");
+	private final RankedTree<Item> items = new RankedTree<Item>();
+	private final IntItemMap itemsByKey = new IntItemMap();
+	private final StampedLock itemsByKeyLock = new StampedLock();
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	private final LongAdder reservationRetries = new LongAdder(), reservations = new LongAdder(),
+			stockouts = new LongAdder();
+	private final ConcurrentHashMap<Integer, LongAdder> retriesByKey = new ConcurrentHashMap<Integer, LongAdder>();
+	private final TrigramIndex searchIndex = new TrigramIndex(this);
+	private final RankedTree<User> users = new RankedTree<User>();
+	private final ConcurrentHashMap<Integer, User> usersByID = new ConcurrentHashMap<Integer, User>();
+
+	/**
+	 * This constructor creates an empty Inventory, which keeps its search
+	 * index up to date as its first listener.
+	 */
+	public Inventory() {
+		listeners.add(searchIndex);
+	}
+
+	/**
+	 * This method adds an Item to the inventory, unless an Item with the same
+	 * ID is already stored.
+	 *
+	 * @param item
+	 *            the Item to be added.
+	 * @return true if the Item was added, false if its ID is already taken.
+	 */
+	public synchronized boolean addItem(Item item) {
+		if (itemsByKey.containsKey(item.key))
+			return false;
+		long stamp = itemsByKeyLock.writeLock();
+		try {
+			itemsByKey.put(item.key, item);
+		} finally {
+			itemsByKeyLock.unlockWrite(stamp);
+		}
+		items.insert(item);
+		for (Listener l : listeners) {
+			l.itemAdded(item);
+		}
+		return true;
+	}
+
+	/**
+	 * This method registers a Listener to be told about every later change.
+	 *
+	 * @param listener
+	 *            the Listener to be registered.
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * This method adds the items of a loaded snapshot at once, which is much
+	 * faster than adding them one at a time: the tree of items is built in one
+	 * pass, and the search index appends posting lists which were built
+	 * beforehand, possibly on other threads. The other listeners are told
+	 * about each Item. When the Inventory already has items, or the loaded
+	 * items are not in ascending key order, they are added one at a time.
+	 *
+	 * @param loaded
+	 *            the items to be added, in ascending key order.
+	 * @param index
+	 *            the search index of the same items, in the same order.
+	 */
+	synchronized void addLoadedItems(List<Item> loaded, List<TrigramIndex.Segment> index) {
+		boolean ascending = itemsByKey.size() == 0;
+		for (int x = 1; x < loaded.size() && ascending; x++) {
+			ascending = loaded.get(x - 1).key < loaded.get(x).key;
+		}
+		if (!ascending) {
+			for (Item item : loaded) {
+				addItem(item);
+			}
+			return;
+		}
+		long stamp = itemsByKeyLock.writeLock();
+		try {
+			for (Item item : loaded) {
+				itemsByKey.put(item.key, item);
+			}
+		} finally {
+			itemsByKeyLock.unlockWrite(stamp);
+		}
+		items.appendAll(loaded);
+		searchIndex.addSegments(index);
+		for (Listener l : listeners) {
+			if (l == searchIndex)
+				continue;
+			for (Item item : loaded) {
+				l.itemAdded(item);
+			}
+		}
+	}
+
+	/**
+	 * This method changes the stock of an Item.
+	 *
+	 * @param key
+	 *            the key of the Item, as packed by ItemIDCodec.
+	 * @param quantity
+	 *            the quantity to be added, negative when stock is sold.
+	 * @return the Item, or null if there is none with the given key.
+	 */
+	public synchronized Item addQuantity(int key, int quantity) {
+		Item item = itemsByKey.get(key);
+		if (item == null)
+			return null;
+		item.addQuantity(quantity);
+		for (Listener l : listeners) {
+			l.itemChanged(item);
+		}
+		return item;
+	}
+
+	/**
+	 * This method adds a User to the inventory, unless a User with the same ID
+	 * is already stored.
+	 *
+	 * @param user
+	 *            the User to be added.
+	 * @return true if the User was added, false if its ID is already taken.
+	 */
+	public synchronized boolean addUser(User user) {
+		if (usersByID.containsKey(user.ID))
+			return false;
+		usersByID.put(user.ID, user);
+		users.insert(user);
+		for (Listener l : listeners) {
+			l.userAdded(user);
+		}
+		return true;
+	}
+
+	/**
+	 * This method marks reserved stock as sold, so that it can no longer be
+	 * released.
+	 *
+	 * @param reservation
+	 *            the Reservation returned by reserve().
+	 * @return true, if the Reservation was pending and is now committed.
+	 */
+	public boolean commit(Reservation reservation) {
+		return reservation.state.compareAndSet(Reservation.PENDING, Reservation.COMMITTED);
+	}
+
+	/**
+	 * This method sets the stock of an Item with compare-and-set, without
+	 * locking, if it is still the quantity which was read.
+	 *
+	 * @param item
+	 *            the Item, as returned by getItem().
+	 * @param expected
+	 *            the quantity which was read.
+	 * @param quantity
+	 *            the new quantity.
+	 * @return true, if the quantity was still expected and has been set.
+	 */
+	boolean compareAndSetQuantity(Item item, int expected, int quantity) {
+		if (!item.compareAndSetQuantity(expected, quantity))
+			return false;
+		if (expected != quantity) {
+			for (Listener l : listeners) {
+				l.itemChanged(item);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param key
+	 *            the key of the Item, as packed by ItemIDCodec.
+	 * @return the Item with the given key, or null if there is none.
+	 */
+	public Item getItem(int key) {
+		long stamp = itemsByKeyLock.tryOptimisticRead();
+		Item item = itemsByKey.get(key);
+		if (itemsByKeyLock.validate(stamp))
+			return item;
+		stamp = itemsByKeyLock.readLock();
+		try {
+			return itemsByKey.get(key);
+		} finally {
+			itemsByKeyLock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * @param id
+	 *            the ID of the Item, in any case.
+	 * @return the Item with the given ID, or null if there is none.
+	 */
+	public Item getItem(String id) {
+		return getItem(ItemIDCodec.encode(id));
+	}
+
+	/**
+	 * @return the items stored now in ID order, as a list which is not
+	 *         affected by later changes and must not be modified.
+	 */
+	public List<Item> getItems() {
+		return items.snapshot();
+	}
+
+	/**
+	 * @return the number of reservations which lost a compare-and-set race and
+	 *         had to read the stock again, over all items.
+	 */
+	public long getReservationRetries() {
+		return reservationRetries.sum();
+	}
+
+	/**
+	 * @param key
+	 *            the key of the Item, as packed by ItemIDCodec.
+	 * @return the number of reservations of that Item which lost a
+	 *         compare-and-set race, which is high for hot items.
+	 */
+	public long getReservationRetries(int key) {
+		LongAdder retries = retriesByKey.get(key);
+		return retries == null ? 0 : retries.sum();
+	}
+
+	/**
+	 * @return the number of reservations made.
+	 */
+	public long getReservations() {
+		return reservations.sum();
+	}
+
+	/**
+	 * @return the number of reservations refused for lack of stock.
+	 */
+	public long getStockouts() {
+		return stockouts.sum();
+	}
+
+	/**
+	 * @param id
+	 *            the ID of the User.
+	 * @return the User with the given ID, or null if there is none.
+	 */
+	public User getUser(int id) {
+		return usersByID.get(id);
+	}
+
+	/**
+	 * @return the users stored now in ID order, as a list which is not
+	 *         affected by later changes and must not be modified.
+	 */
+	public List<User> getUsers() {
+		return users.snapshot();
+	}
+
+	/**
+	 * @param id
+	 *            the ID of the Item, in any case.
+	 * @return true if an Item with the given ID is stored.
+	 */
+	public boolean hasItem(String id) {
+		return getItem(id) != null;
+	}
+
+	/**
+	 * @param id
+	 *            the ID of the User.
+	 * @return true if a User with the given ID is stored.
+	 */
+	public boolean hasUser(int id) {
+		return usersByID.containsKey(id);
+	}
+
+	/**
+	 * This method gives reserved stock back to its Item, unless it has already
+	 * been committed or released.
+	 *
+	 * @param reservation
+	 *            the Reservation returned by reserve().
+	 * @return true, if the Reservation was pending and its stock is back.
+	 */
+	public boolean release(Reservation reservation) {
+		if (!reservation.state.compareAndSet(Reservation.PENDING, Reservation.RELEASED))
+			return false;
+		reservation.item.addQuantity(reservation.quantity);
+		for (Listener l : listeners) {
+			l.itemChanged(reservation.item);
+		}
+		return true;
+	}
+
+	/**
+	 * This method removes the Item with the given ID from the inventory.
+	 *
+	 * @param id
+	 *            the ID of the Item, in any case.
+	 * @return the removed Item, or null if there was none.
+	 */
+	public Item removeItem(String id) {
+		return removeItem(ItemIDCodec.encode(id));
+	}
+
+	/**
+	 * This method removes the Item with the given key from the inventory.
+	 *
+	 * @param key
+	 *            the key of the Item, as packed by ItemIDCodec.
+	 * @return the removed Item, or null if there was none.
+	 */
+	public synchronized Item removeItem(int key) {
+		if (!itemsByKey.containsKey(key))
+			return null;
+		Item removed;
+		long stamp = itemsByKeyLock.writeLock();
+		try {
+			removed = itemsByKey.remove(key);
+		} finally {
+			itemsByKeyLock.unlockWrite(stamp);
+		}
+		items.delete(removed);
+		for (Listener l : listeners) {
+			l.itemRemoved(removed);
+		}
+		return removed;
+	}
+
+	/**
+	 * This method takes stock from an Item with compare-and-set, without
+	 * locking, so that concurrent sales can never take more than is in stock.
+	 * The stock stays taken until the Reservation is committed as sold or
+	 * released.
+	 *
+	 * @param key
+	 *            the key of the Item, as packed by ItemIDCodec.
+	 * @param quantity
+	 *            the positive quantity to be taken.
+	 * @return the Reservation, or null if there is no such Item or not enough
+	 *         of it in stock.
+	 */
+	public Reservation reserve(int key, int quantity) {
+		Item item = getItem(key);
+		if (item == null || quantity <= 0)
+			return null;
+		int retries = 0;
+		try {
+			while (true) {
+				int stock = item.quantity;
+				if (stock < quantity) {
+					stockouts.increment();
+					return null;
+				}
+				if (item.compareAndSetQuantity(stock, stock - quantity))
+					break;
+				retries++;
+			}
+		} finally {
+			if (retries > 0) {
+				reservationRetries.add(retries);
+				LongAdder keyRetries = retriesByKey.get(key);
+				if (keyRetries == null) {
+					retriesByKey.putIfAbsent(key, new LongAdder());
+					keyRetries = retriesByKey.get(key);
+				}
+				keyRetries.add(retries);
+			}
+		}
+		reservations.increment();
+		for (Listener l : listeners) {
+			l.itemChanged(item);
+		}
+		return new Reservation(item, quantity);
+	}
+
+	/**
+	 * This method finds the items which name or other searchable fields
+	 * contain the query, ignoring case, through the trigram search index.
+	 *
+	 * @param query
+	 *            the text to be found.
+	 * @return the matching items, in ID order.
+	 */
+	public ArrayList<Item> search(String query) {
+		long start = System.nanoTime();
+		ArrayList<Item> found = searchIndex.search(query);
+		SEARCH_LATENCY.record(System.nanoTime() - start);
+		return found;
+	}
+
+	/**
+	 * This method passes the items which name or other searchable fields
+	 * contain the query, ignoring case, to results as soon as each is found.
+	 *
+	 * @param query
+	 *            the text to be found.
+	 * @param results
+	 *            the receiver of the matching items, in ID order, which may
+	 *            stop the search early.
+	 */
+	public void search(String query, TrigramIndex.Results results) {
+		long start = System.nanoTime();
+		searchIndex.search(query, results);
+		SEARCH_LATENCY.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * This method replaces the stored User which has the same ID as the User
+	 * passed to it, when a User is updated.
+	 *
+	 * @param user
+	 *            the updated User.
+	 * @return the User which was replaced, or null if there was none.
+	 */
+	public synchronized User replaceUser(User user) {
+		User old = usersByID.put(user.ID, user);
+		users.put(user);
+		for (Listener l : listeners) {
+			l.userReplaced(user);
+		}
+		return old;
+	}
+}
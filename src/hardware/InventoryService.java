@@ -0,0 +1,972 @@
+package hardware;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import hardware.legacy.LegacyDatabase;
+
+/**
+ * This class is the headless core of the hardware store: it loads the database,
+ * replays the journal, and makes every change to the items, users and
+ * transactions, checked against the same rules as the forms. It uses no Swing,
+ * so it can be driven by the user interface, by scanners and scripts, and by
+ * benchmarks alike, from any number of threads.
+ * <p>
+ * The store is loaded by load() in stages, items first, so that a window can
+ * show the items while the users and the transactions behind them in the file
+ * are still being read. Every other method waits only for the Stage it needs:
+ * reading items waits for the items, reading users for the users, and every
+ * change for the whole store, journal included.
+ * <p>
+ * Each change holds the item or user it changes, so that changes to the same
+ * entity are applied and journaled in the same order, and holds off saving
+ * until its journal record is written, so that a change is always either in
+ * the saved database or in the journal replayed on top of it. Sales are the
+ * exception: they take stock with compare-and-set and hold nothing but the
+ * saving off, so that sales of one Item never wait for each other. Their
+ * records only subtract from the stock, so they may be journaled in any order
+ * among themselves and the quantities added meanwhile. The record of a new
+ * Item holds its whole stock instead, so the Item is journaled before it is
+ * added, and no sale of it can be journaled ahead of it. Deleting an Item
+ * waits for every sale in progress, so that none is journaled after the
+ * deletion.
+ * <p>
+ * Changes wait for a save only while it takes a snapshot of the store, which
+ * copies little, then go on while the snapshot is written. Only the segments
+ * of the database file which have changed since it was last saved are
+ * encoded again, the others being copied from it, and the journal keeps the
+ * records appended since the snapshot was taken. startAutosave() saves this
+ * way in the background, whenever the journal is not empty.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class InventoryService {
+	/**
+	 * This enumeration names the stages in which the store is loaded, in
+	 * order. Each stage includes the ones before it.
+	 */
+	public enum Stage {
+		/**
+		 * The items of the database file are loaded, not yet changed by the
+		 * journal.
+		 */
+		Items,
+		/**
+		 * The users of the database file are loaded.
+		 */
+		Users,
+		/**
+		 * The transactions of the database file are loaded.
+		 */
+		Transactions,
+		/**
+		 * The journal has been replayed on top of the database file, so the
+		 * store is up to date and may be changed.
+		 */
+		Journal
+	}
+
+	private static final LatencyHistogram AUTOSAVE_LATENCY = Metrics.getGlobal().histogram("store.autosave");
+	private static final int CHECKPOINT_INTERVAL = 1000;
+	private static final LatencyHistogram JOURNAL_REPLAY_LATENCY = Metrics.getGlobal().histogram("store.load.journal");
+	/**
+	 * The name of the database file which earlier versions wrote with Java
+	 * serialization, next to the snapshot file.
+	 */
+	private static final String LEGACY_DATABASE_FILENAME = "database.srl";
+	private static final Logger LOGGER = Logger.getGlobal();
+	private static final LatencyHistogram POST_BATCH_LATENCY = Metrics.getGlobal().histogram("transactions.postBatch");
+	private static final LatencyHistogram POST_LATENCY = Metrics.getGlobal().histogram("transactions.post");
+	private static final LongAdder POSTED = Metrics.getGlobal().counter("transactions.posted");
+	private static final LongAdder REJECTED = Metrics.getGlobal().counter("transactions.rejected");
+	private static final LongAdder SAVE_BYTES_COPIED = Metrics.getGlobal().counter("store.save.bytesCopied");
+	private static final LongAdder SAVE_BYTES_WRITTEN = Metrics.getGlobal().counter("store.save.bytesWritten");
+	private static final LatencyHistogram SAVE_LATENCY = Metrics.getGlobal().histogram("store.save");
+	private static final LatencyHistogram SNAPSHOT_LOAD_LATENCY = Metrics.getGlobal().histogram("store.load.snapshot");
+	private static final String STOCK_RULE = "Please enter a positive integer quantity less than or equal to the "
+			+ "remaining stock.";
+	private ScheduledExecutorService autosave;
+	private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+	private final String databaseFilename;
+	private final EntityLocks entityLocks = new EntityLocks();
+	private final boolean fsync;
+	private final long groupCommitMillis;
+	private final Inventory inventory = new Inventory();
+	private Journal journal;
+	private SnapshotLayout layout = new SnapshotLayout();
+	private final String journalFilename;
+	private final EnumMap<Stage, ArrayList<Runnable>> loadActions = new EnumMap<Stage, ArrayList<Runnable>>(
+			Stage.class);
+	private volatile boolean loadFailed = false;
+	private volatile int loadProgress = 0;
+	private final EnumMap<Stage, CountDownLatch> loadedStages = new EnumMap<Stage, CountDownLatch>(Stage.class);
+	private final AtomicInteger nextUserID = new AtomicInteger(1);
+	private final ReentrantLock saveLock = new ReentrantLock();
+	private final TransactionLog transactions;
+
+	/**
+	 * This constructor creates an empty store, which is filled by load(). The
+	 * history of its transactions is kept in a memory-mapped file next to the
+	 * snapshot file, apart from its most recent part.
+	 *
+	 * @param databaseFilename
+	 *            the name of the snapshot file.
+	 * @param journalFilename
+	 *            the name of the journal file.
+	 * @param fsync
+	 *            whether journal records are forced to the disk before a change
+	 *            returns.
+	 * @param groupCommitMillis
+	 *            how long the journal waits to gather records into one write.
+	 */
+	public InventoryService(String databaseFilename, String journalFilename, boolean fsync, long groupCommitMillis) {
+		this.databaseFilename = databaseFilename;
+		this.journalFilename = journalFilename;
+		transactions = new TransactionLog(new File(databaseFilename).getAbsoluteFile().getParentFile());
+		this.fsync = fsync;
+		this.groupCommitMillis = groupCommitMillis;
+		for (Stage stage : Stage.values()) {
+			loadActions.put(stage, new ArrayList<Runnable>());
+			loadedStages.put(stage, new CountDownLatch(1));
+		}
+	}
+
+	/**
+	 * This method adds a new Item.
+	 *
+	 * @param item
+	 *            the Item to be added.
+	 * @throws ValidationException
+	 *             when a field of the Item breaks a rule or its ID is taken.
+	 */
+	public void addItem(Item item) throws ValidationException {
+		await(Stage.Journal);
+		item.validate();
+		beginChange(EntityLocks.itemEntity(item.key));
+		try {
+			if (inventory.getItem(item.key) != null)
+				throw new ValidationException("Item ID " + item.getID() + " is taken.");
+			journal.itemAdded(item);
+			inventory.addItem(item);
+		} finally {
+			endChange(EntityLocks.itemEntity(item.key));
+		}
+		checkpointIfDue();
+	}
+
+	/**
+	 * This method adds a batch of new items, as a bulk import does. Each Item
+	 * is checked and added on its own, as by addItem(), but the journal records
+	 * of the whole batch are written together, so the batch waits for the disk
+	 * only once.
+	 *
+	 * @param items
+	 *            the items to be added.
+	 * @return for each Item, null if it was added, or why it was rejected.
+	 */
+	public ValidationException[] addItems(List<? extends Item> items) {
+		await(Stage.Journal);
+		ValidationException[] errors = new ValidationException[items.size()];
+		long sequence = 0;
+		for (int x = 0; x < errors.length; x++) {
+			Item item = items.get(x);
+			try {
+				item.validate();
+			} catch (ValidationException e) {
+				errors[x] = e;
+				continue;
+			}
+			beginChange(EntityLocks.itemEntity(item.key));
+			try {
+				if (inventory.getItem(item.key) != null) {
+					errors[x] = new ValidationException("Item ID " + item.getID() + " is taken.");
+				} else {
+					sequence = Math.max(sequence, journal.appendItemAdded(item));
+					inventory.addItem(item);
+				}
+			} finally {
+				endChange(EntityLocks.itemEntity(item.key));
+			}
+		}
+		journal.await(sequence);
+		checkpointIfDue();
+		return errors;
+	}
+
+	/**
+	 * This method adds a batch of new users, as a bulk import does. Each valid
+	 * User is given the next new user ID, then added as by addUser(), but the
+	 * journal records of the whole batch are written together.
+	 *
+	 * @param users
+	 *            the users to be added, which IDs are replaced.
+	 * @return for each User, null if it was added, or why it was rejected.
+	 */
+	public ValidationException[] addNewUsers(List<? extends User> users) {
+		await(Stage.Journal);
+		ValidationException[] errors = new ValidationException[users.size()];
+		long sequence = 0;
+		for (int x = 0; x < errors.length; x++) {
+			User user = users.get(x);
+			try {
+				user.validate();
+			} catch (ValidationException e) {
+				errors[x] = e;
+				continue;
+			}
+			user.ID = newUserID();
+			beginChange(EntityLocks.userEntity(user.ID));
+			try {
+				inventory.addUser(user);
+				sequence = Math.max(sequence, journal.appendUserAdded(user));
+			} finally {
+				endChange(EntityLocks.userEntity(user.ID));
+			}
+		}
+		journal.await(sequence);
+		checkpointIfDue();
+		return errors;
+	}
+
+	/**
+	 * This method adds stock to an existing Item.
+	 *
+	 * @param id
+	 *            the ID of the Item, in any case.
+	 * @param quantity
+	 *            the positive quantity to be added.
+	 * @return the Item.
+	 * @throws ValidationException
+	 *             when there is no such Item or the quantity is not positive.
+	 */
+	public Item addQuantity(String id, int quantity) throws ValidationException {
+		await(Stage.Journal);
+		if (quantity <= 0)
+			throw new ValidationException("Please enter a positive integer value.");
+		int key = ItemIDCodec.encode(id);
+		Item item;
+		beginChange(EntityLocks.itemEntity(key));
+		try {
+			item = inventory.addQuantity(key, quantity);
+			if (item == null)
+				throw new ValidationException("Please enter the item ID of an existing item.");
+			journal.quantityAdded(key, quantity);
+		} finally {
+			endChange(EntityLocks.itemEntity(key));
+		}
+		checkpointIfDue();
+		return item;
+	}
+
+	/**
+	 * This method adds a new User, which ID should come from newUserID().
+	 *
+	 * @param user
+	 *            the User to be added.
+	 * @throws ValidationException
+	 *             when a field of the User breaks a rule or its ID is taken.
+	 */
+	public void addUser(User user) throws ValidationException {
+		await(Stage.Journal);
+		user.validate();
+		beginChange(EntityLocks.userEntity(user.ID));
+		try {
+			if (!inventory.addUser(user))
+				throw new ValidationException("User ID " + user.ID + " is taken.");
+			journal.userAdded(user);
+		} finally {
+			endChange(EntityLocks.userEntity(user.ID));
+		}
+		checkpointIfDue();
+	}
+
+	/**
+	 * This method waits until a stage of loading has finished.
+	 *
+	 * @param stage
+	 *            the Stage to wait for.
+	 * @throws IllegalStateException
+	 *             when the store could not be loaded.
+	 */
+	public void await(Stage stage) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				loadedStages.get(stage).await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (loadFailed)
+			throw new IllegalStateException("The store could not be loaded from " + databaseFilename + ".");
+	}
+
+	/**
+	 * This method saves the database and closes the journal, once the store
+	 * has been loaded. The service must not be used afterwards.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (autosave != null)
+				autosave.shutdownNow();
+		}
+		save();
+		journal.close();
+	}
+
+	/**
+	 * This method deletes an existing Item.
+	 *
+	 * @param id
+	 *            the ID of the Item, in any case.
+	 * @return the deleted Item.
+	 * @throws ValidationException
+	 *             when there is no such Item.
+	 */
+	public Item deleteItem(String id) throws ValidationException {
+		await(Stage.Journal);
+		int key = ItemIDCodec.encode(id);
+		Item item;
+		// The write lock waits for the sales in progress, which hold neither
+		// the Item nor anything else but the read lock.
+		entityLocks.lock(EntityLocks.itemEntity(key));
+		checkpointLock.writeLock().lock();
+		try {
+			item = inventory.removeItem(key);
+			if (item == null)
+				throw new ValidationException("Please enter the item ID of an existing item.");
+			journal.itemDeleted(key);
+		} finally {
+			checkpointLock.writeLock().unlock();
+			entityLocks.unlock(EntityLocks.itemEntity(key));
+		}
+		checkpointIfDue();
+		return item;
+	}
+
+	/**
+	 * @return the Inventory of items and users, which should only be changed
+	 *         through this service. It is returned at once, and is filled in
+	 *         while the store is loaded.
+	 */
+	public Inventory getInventory() {
+		return inventory;
+	}
+
+	/**
+	 * @param id
+	 *            the ID of the Item, in any case.
+	 * @return the Item with the given ID, or null if there is none.
+	 */
+	public Item getItem(String id) {
+		await(Stage.Items);
+		return inventory.getItem(id);
+	}
+
+	/**
+	 * @return the items stored now in ID order.
+	 */
+	public List<Item> getItems() {
+		await(Stage.Items);
+		return inventory.getItems();
+	}
+
+	/**
+	 * @return the log of past transactions, which should only be appended to
+	 *         through this service.
+	 */
+	public TransactionLog getTransactions() {
+		await(Stage.Transactions);
+		return transactions;
+	}
+
+	/**
+	 * @return how much of the store has been loaded, from 0 to 100.
+	 */
+	public int getLoadProgress() {
+		return loadProgress;
+	}
+
+	/**
+	 * @param id
+	 *            the ID of the User.
+	 * @return the User with the given ID, or null if there is none.
+	 */
+	public User getUser(int id) {
+		await(Stage.Users);
+		return inventory.getUser(id);
+	}
+
+	/**
+	 * @return the users stored now in ID order.
+	 */
+	public List<User> getUsers() {
+		await(Stage.Users);
+		return inventory.getUsers();
+	}
+
+	/**
+	 * This method reads the database file, if it exists, then replays the
+	 * journal on top of it, finishing each Stage in turn. It is called once,
+	 * usually on a thread of its own.
+	 * <p>
+	 * If there is no database file but a legacy database.srl next to where it
+	 * would be, that is read instead, and the store is saved as a database
+	 * file once the journal is replayed. The legacy file is then renamed to
+	 * database.srl.migrated, so that it is not read again.
+	 *
+	 * @throws IOException
+	 *             when the database, the legacy database or the journal cannot
+	 *             be read, in which case every method waiting for a stage
+	 *             throws an IllegalStateException.
+	 */
+	public void load() throws IOException {
+		boolean loaded = false;
+		long journalSequence = 0;
+		File legacy = null;
+		try {
+			File database = new File(databaseFilename);
+			File legacyDatabase = new File(database.getAbsoluteFile().getParentFile(), LEGACY_DATABASE_FILENAME);
+			long length = database.length() + new File(journalFilename).length();
+			long start = System.nanoTime();
+			if (database.exists()) {
+				if (legacyDatabase.exists())
+					LOGGER.warning(legacyDatabase + " is ignored, since " + databaseFilename + " exists.");
+				Snapshot snapshot = Snapshot.read(databaseFilename, inventory, transactions, new Snapshot.Progress() {
+					@Override
+					public void bytesRead(long read, long fileLength) {
+						loadProgress = (int) (read * 100 / Math.max(1, length));
+					}
+
+					@Override
+					public void itemsRead() {
+						finish(Stage.Items);
+					}
+
+					@Override
+					public void transactionsRead() {
+						finish(Stage.Transactions);
+					}
+
+					@Override
+					public void usersRead() {
+						finish(Stage.Users);
+					}
+				});
+				nextUserID.set(snapshot.nextUserID);
+				journalSequence = snapshot.journalSequence;
+				layout = snapshot.layout;
+				SNAPSHOT_LOAD_LATENCY.record(System.nanoTime() - start);
+			} else if (legacyDatabase.exists()) {
+				legacy = legacyDatabase;
+				LOGGER.info("Migrating " + legacy + " to " + databaseFilename + ".");
+				nextUserID.set(LegacyDatabase.read(legacy.getPath(), inventory, transactions));
+			} else {
+				LOGGER.warning(databaseFilename + " does not exist, starting new instance.");
+			}
+			finish(Stage.Items);
+			finish(Stage.Users);
+			finish(Stage.Transactions);
+			inventory.addListener(layout);
+			start = System.nanoTime();
+			journal = new Journal(journalFilename, fsync, groupCommitMillis, journalSequence, new Journal.Replayer() {
+				@Override
+				public void itemAdded(Item item) {
+					inventory.addItem(item);
+				}
+
+				@Override
+				public void itemDeleted(int key) {
+					inventory.removeItem(key);
+				}
+
+				@Override
+				public void quantityAdded(int key, int quantity) {
+					if (inventory.addQuantity(key, quantity) == null)
+						LOGGER.warning("Journal adds quantity to missing item " + ItemIDCodec.decode(key) + ".");
+				}
+
+				@Override
+				public void transactionPosted(Transaction transaction) {
+					transactions.append(transaction);
+					if (inventory.addQuantity(transaction.getItemKey(), -transaction.getQuantity()) == null)
+						LOGGER.warning("Journal sells missing item " + ItemIDCodec.decode(transaction.getItemKey())
+								+ ".");
+				}
+
+				@Override
+				public void userAdded(User user) {
+					inventory.addUser(user);
+					if (user.ID >= nextUserID.get())
+						nextUserID.set(user.ID + 1);
+				}
+
+				@Override
+				public void userUpdated(User user) {
+					inventory.replaceUser(user);
+				}
+			});
+			JOURNAL_REPLAY_LATENCY.record(System.nanoTime() - start);
+			registerGauges();
+			loadProgress = 100;
+			loaded = true;
+		} finally {
+			if (!loaded) {
+				loadFailed = true;
+				for (CountDownLatch latch : loadedStages.values()) {
+					latch.countDown();
+				}
+			}
+		}
+		finish(Stage.Journal);
+		if (legacy != null) {
+			save();
+			if (new File(databaseFilename).exists()
+					&& legacy.renameTo(new File(legacy.getPath() + ".migrated"))) {
+				LOGGER.info("Migrated " + legacy + " to " + databaseFilename + ".");
+			} else {
+				LOGGER.severe("Problem migrating " + legacy + ", it will be read again on the next start.");
+			}
+		}
+	}
+
+	/**
+	 * @return a new User ID, which is not given out again unless it is
+	 *         returned through returnUserID().
+	 */
+	public int newUserID() {
+		await(Stage.Journal);
+		return nextUserID.getAndIncrement();
+	}
+
+	/**
+	 * This method sells stock of an Item. The stock is reserved first, with
+	 * compare-and-set and without holding the Item, so two sales can never
+	 * take more than is in stock between them.
+	 *
+	 * @param transaction
+	 *            the sale to be posted.
+	 * @throws ValidationException
+	 *             when there is no such Item, not enough of it in stock, or
+	 *             the customer or employee ID is not one of a Customer or an
+	 *             Employee.
+	 * @throws java.io.UncheckedIOException
+	 *             when the journal cannot be written, in which case the stock
+	 *             is given back and the sale is not logged.
+	 */
+	public void postTransaction(Transaction transaction) throws ValidationException {
+		await(Stage.Journal);
+		long start = System.nanoTime();
+		try {
+			checkUsers(transaction);
+			int key = transaction.getItemKey();
+			if (inventory.getItem(key) == null)
+				throw new ValidationException("Please enter a valid item ID.");
+			checkpointLock.readLock().lock();
+			try {
+				Inventory.Reservation reservation = inventory.reserve(key, transaction.getQuantity());
+				if (reservation == null)
+					throw new ValidationException(STOCK_RULE);
+				// The sale is journaled before it is logged, so that a sale
+				// the journal fails to write is neither logged nor sold.
+				try {
+					journal.transactionPosted(transaction);
+					transactions.append(transaction);
+				} catch (RuntimeException e) {
+					inventory.release(reservation);
+					throw e;
+				}
+				inventory.commit(reservation);
+			} finally {
+				checkpointLock.readLock().unlock();
+			}
+		} catch (ValidationException e) {
+			REJECTED.increment();
+			throw e;
+		}
+		POSTED.increment();
+		POST_LATENCY.record(System.nanoTime() - start);
+		checkpointIfDue();
+	}
+
+	/**
+	 * This method posts a batch of sales at once, as when offline registers
+	 * catch up. The sales of each Item in the batch are checked in order
+	 * against the stock it had when they were checked, as if they were posted
+	 * one after another, and its stock is then changed once with
+	 * compare-and-set, checking them again if another sale changed it first.
+	 * The accepted sales are appended to the log together, and they are
+	 * journaled as one record.
+	 *
+	 * @param batch
+	 *            the sales to be posted, in order.
+	 * @return for each sale, null if it was posted, or why it was rejected,
+	 *         for the same reasons as postTransaction().
+	 */
+	public ValidationException[] postTransactions(List<Transaction> batch) {
+		await(Stage.Journal);
+		long start = System.nanoTime();
+		ValidationException[] errors = new ValidationException[batch.size()];
+		int[] keys = new int[errors.length];
+		for (int x = 0; x < keys.length; x++) {
+			keys[x] = batch.get(x).getItemKey();
+		}
+		int[] distinctKeys = distinct(keys);
+		// The indexes of the sales of each Item, in batch order, from
+		// first[item] up to first[item + 1].
+		int[] first = new int[distinctKeys.length + 1], sales = new int[keys.length];
+		for (int key : keys) {
+			first[Arrays.binarySearch(distinctKeys, key) + 1]++;
+		}
+		for (int x = 0; x < distinctKeys.length; x++) {
+			first[x + 1] += first[x];
+		}
+		int[] next = Arrays.copyOf(first, distinctKeys.length);
+		for (int x = 0; x < keys.length; x++) {
+			sales[next[Arrays.binarySearch(distinctKeys, keys[x])]++] = x;
+		}
+		long sequence;
+		checkpointLock.readLock().lock();
+		try {
+			for (int x = 0; x < distinctKeys.length; x++) {
+				Item item = inventory.getItem(distinctKeys[x]);
+				while (true) {
+					int stock = item == null ? 0 : item.getQuantity(), left = stock;
+					for (int y = first[x]; y < first[x + 1]; y++) {
+						Transaction transaction = batch.get(sales[y]);
+						errors[sales[y]] = null;
+						try {
+							checkUsers(transaction);
+							if (item == null)
+								throw new ValidationException("Please enter a valid item ID.");
+							if (transaction.getQuantity() <= 0 || transaction.getQuantity() > left)
+								throw new ValidationException(STOCK_RULE);
+							left -= transaction.getQuantity();
+						} catch (ValidationException e) {
+							errors[sales[y]] = e;
+						}
+					}
+					if (item == null || inventory.compareAndSetQuantity(item, stock, left))
+						break;
+				}
+			}
+			ArrayList<Transaction> posted = new ArrayList<Transaction>(errors.length);
+			for (int x = 0; x < errors.length; x++) {
+				if (errors[x] == null)
+					posted.add(batch.get(x));
+			}
+			transactions.append(posted);
+			sequence = journal.appendTransactionsPosted(posted);
+			POSTED.add(posted.size());
+			REJECTED.add(errors.length - posted.size());
+		} finally {
+			checkpointLock.readLock().unlock();
+		}
+		journal.await(sequence);
+		POST_BATCH_LATENCY.record(System.nanoTime() - start);
+		checkpointIfDue();
+		return errors;
+	}
+
+	/**
+	 * This method gives back a User ID from newUserID() which was not used,
+	 * unless a later ID has been given out since.
+	 *
+	 * @param id
+	 *            the unused User ID.
+	 */
+	public void returnUserID(int id) {
+		await(Stage.Journal);
+		nextUserID.compareAndSet(id + 1, id);
+	}
+
+	/**
+	 * This method writes the database file, then removes from the journal the
+	 * records which are in it. Changes wait only while a snapshot of the store
+	 * is taken, not while it is written. One save runs at a time.
+	 */
+	public void save() {
+		await(Stage.Journal);
+		saveLock.lock();
+		try {
+			long start = System.nanoTime();
+			Snapshot snapshot;
+			long mark;
+			checkpointLock.writeLock().lock();
+			try {
+				mark = journal.mark();
+				snapshot = Snapshot.freeze(inventory, transactions, nextUserID.get(), mark, layout);
+			} finally {
+				checkpointLock.writeLock().unlock();
+			}
+			long written = snapshot.write(databaseFilename);
+			journal.truncate(mark);
+			SAVE_LATENCY.record(System.nanoTime() - start);
+			SAVE_BYTES_WRITTEN.add(written);
+			SAVE_BYTES_COPIED.add(Math.max(0, new File(databaseFilename).length() - written));
+		} catch (IOException e) {
+			LOGGER.warning("Problem opening database file for saving.");
+		} finally {
+			saveLock.unlock();
+		}
+	}
+
+	/**
+	 * @param query
+	 *            the text to be found, ignoring case.
+	 * @return the items which name or other searchable fields contain the
+	 *         query, in ID order.
+	 */
+	public List<Item> search(String query) {
+		await(Stage.Items);
+		return inventory.search(query);
+	}
+
+	/**
+	 * This method starts saving the store in the background every interval,
+	 * whenever the journal is not empty, until the service is closed. It is
+	 * called once.
+	 *
+	 * @param intervalMillis
+	 *            the time between the end of one save and the start of the
+	 *            next, in milliseconds.
+	 */
+	public synchronized void startAutosave(long intervalMillis) {
+		if (autosave != null)
+			return;
+		autosave = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Autosave");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		autosave.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				if (loadFailed || journal == null || journal.recordsSinceCheckpoint() == 0)
+					return;
+				long start = System.nanoTime();
+				save();
+				AUTOSAVE_LATENCY.record(System.nanoTime() - start);
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		Metrics.getGlobal().gauge("store.autosave.intervalMillis", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return intervalMillis;
+			}
+		});
+	}
+
+	/**
+	 * This method replaces an existing User with an updated copy.
+	 *
+	 * @param user
+	 *            the updated User, with the same ID and class as the User it
+	 *            replaces.
+	 * @throws ValidationException
+	 *             when a field of the User breaks a rule, or there is no User
+	 *             of the same class with its ID.
+	 */
+	public void updateUser(User user) throws ValidationException {
+		updateUser(null, user);
+	}
+
+	/**
+	 * This method replaces an existing User with an updated copy, unless it
+	 * has been changed since it was read, as when the copy was edited in a
+	 * form without holding the User.
+	 *
+	 * @param previous
+	 *            the User which was read and edited, or null to replace the
+	 *            User whatever it is.
+	 * @param user
+	 *            the updated User, with the same ID and class as the User it
+	 *            replaces.
+	 * @throws ValidationException
+	 *             when a field of the User breaks a rule, there is no User of
+	 *             the same class with its ID, or it is no longer previous.
+	 */
+	public void updateUser(User previous, User user) throws ValidationException {
+		await(Stage.Journal);
+		user.validate();
+		beginChange(EntityLocks.userEntity(user.ID));
+		try {
+			User old = inventory.getUser(user.ID);
+			if (old == null || old.getClass() != user.getClass())
+				throw new ValidationException("Please choose an existing user ID.");
+			if (previous != null && old != previous)
+				throw new ValidationException("User " + user.ID + " was changed by someone else meanwhile.");
+			inventory.replaceUser(user);
+			journal.userUpdated(user);
+		} finally {
+			endChange(EntityLocks.userEntity(user.ID));
+		}
+		checkpointIfDue();
+	}
+
+	/**
+	 * This method runs an action once a stage of loading has finished: on the
+	 * loading thread, right after the stage, or at once on the calling thread
+	 * if the stage has already finished. The action must not wait for a later
+	 * stage. It is never run if loading fails first.
+	 *
+	 * @param stage
+	 *            the Stage to wait for.
+	 * @param action
+	 *            the action to be run.
+	 */
+	public void whenLoaded(Stage stage, Runnable action) {
+		synchronized (loadActions) {
+			if (loadedStages.get(stage).getCount() > 0) {
+				loadActions.get(stage).add(action);
+				return;
+			}
+		}
+		if (!loadFailed)
+			action.run();
+	}
+
+	private void beginChange(long entity) {
+		entityLocks.lock(entity);
+		checkpointLock.readLock().lock();
+	}
+
+	/**
+	 * This method saves the database once the journal has grown to
+	 * CHECKPOINT_INTERVAL records, or to as many records as the database
+	 * holds, if that is more, so that a bulk import does not save a growing
+	 * database after every batch.
+	 */
+	private void checkpointIfDue() {
+		// A change which finds a save already running goes on without
+		// waiting for it.
+		if (!isCheckpointDue() || !saveLock.tryLock())
+			return;
+		try {
+			if (isCheckpointDue()) {
+				LOGGER.info("Journal has reached " + journal.recordsSinceCheckpoint() + " records, now saving "
+						+ databaseFilename);
+				save();
+			}
+		} finally {
+			saveLock.unlock();
+		}
+	}
+
+	private void checkUsers(Transaction transaction) throws ValidationException {
+		if (!(inventory.getUser(transaction.getCustomerID()) instanceof Customer))
+			throw new ValidationException("Please enter a valid customer ID.");
+		if (!(inventory.getUser(transaction.getEmployeeID()) instanceof Employee))
+			throw new ValidationException("Please enter a valid employee ID.");
+	}
+
+	private void endChange(long entity) {
+		checkpointLock.readLock().unlock();
+		entityLocks.unlock(entity);
+	}
+
+	/**
+	 * This method marks a stage as loaded, unless it already is, and runs the
+	 * actions which were waiting for it.
+	 */
+	private void finish(Stage stage) {
+		ArrayList<Runnable> actions;
+		synchronized (loadActions) {
+			if (loadedStages.get(stage).getCount() == 0)
+				return;
+			loadedStages.get(stage).countDown();
+			actions = loadActions.get(stage);
+			loadActions.put(stage, new ArrayList<Runnable>());
+		}
+		for (Runnable action : actions) {
+			action.run();
+		}
+	}
+
+	private boolean isCheckpointDue() {
+		long records = journal.recordsSinceCheckpoint();
+		return records >= CHECKPOINT_INTERVAL
+				&& records >= inventory.getItems().size() + inventory.getUsers().size() + transactions.size();
+	}
+
+	/**
+	 * This method registers the gauges which read the size of the journal
+	 * and the log, and how often sales of one Item collide, replacing those of
+	 * any earlier InventoryService.
+	 */
+	private void registerGauges() {
+		Metrics metrics = Metrics.getGlobal();
+		metrics.gauge("journal.recordsSinceCheckpoint", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return journal.recordsSinceCheckpoint();
+			}
+		});
+		metrics.gauge("reservations", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return inventory.getReservations();
+			}
+		});
+		metrics.gauge("reservations.retries", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return inventory.getReservationRetries();
+			}
+		});
+		metrics.gauge("reservations.stockouts", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return inventory.getStockouts();
+			}
+		});
+		metrics.gauge("transactions", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return transactions.size();
+			}
+		});
+		metrics.gauge("transactions.mappedBytes", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return transactions.getMappedBytes();
+			}
+		});
+	}
+
+	/**
+	 * @return the values of keys, sorted, without duplicates.
+	 */
+	private static int[] distinct(int[] keys) {
+		int[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		int count = 0;
+		for (int x = 0; x < sorted.length; x++) {
+			if (count == 0 || sorted[x] != sorted[count - 1])
+				sorted[count++] = sorted[x];
+		}
+		return Arrays.copyOf(sorted, count);
+	}
+}
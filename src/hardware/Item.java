@@ -1,73 +1,35 @@
 package hardware;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.text.DecimalFormat;
-import java.util.logging.Logger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * This abstract class represents the information basal to all items in the
- * hardware store.
+ * hardware store. Items are plain data, they are created and edited through
+ * ItemEditor.
  * 
  * @author Peter Wesley Hutcheson
  * @version 1.0
  * @since 1.0
  */
-public abstract class Item implements Serializable, Comparable<Item> {
-	private static final Logger LOGGER = Logger.getGlobal();
-	private static final DecimalFormat PRICE_FORMAT = new DecimalFormat("0.00");
-	private static final long serialVersionUID = -8698502419721443470L;
-	private static final ClassQueryDialog WHICH_CLASS = new ClassQueryDialog("Appliance", "Hardware Item");
-	/**
-	 * This FormLine array initializes with each new Item object and contains
-	 * the FormLine objects required to create each new Item form.
-	 */
-	protected final FormLine[] basicLines = { new FormLine("ID", "Please enter 5 alphanumeric characters.") {
-		private static final long serialVersionUID = -6274479331492230210L;
-
-		@Override
-		public boolean verify() {
-			return getInput().matches("\\A[a-zA-Z0-9]{5}");
-		}
-	}, new FormLine("Name", "Please enter a name with at least 1 character.") {
-		private static final long serialVersionUID = 7216330426632971840L;
-
-		@Override
-		public boolean verify() {
-			return getInput().length() > 0;
-		}
-	}, new FormLine("Quantity", "Please enter a positive integer quantity.") {
-		private static final long serialVersionUID = -4916840030745645284L;
-
+public abstract class Item implements Serializable, Comparable<Item>, Cloneable {
+	private static final ThreadLocal<DecimalFormat> PRICE_FORMAT = new ThreadLocal<DecimalFormat>() {
 		@Override
-		public boolean verify() {
-			int q;
-			try {
-				q = Integer.parseInt(getInput());
-			} catch (Exception e) {
-				LOGGER.warning("User has not entered an int when int was expected.");
-				return false;
-			}
-			return q > 0;
+		protected DecimalFormat initialValue() {
+			return new DecimalFormat("0.00");
 		}
-	}, new FormLine("Price", "Please enter a price with at most 2 decimal digit accuracy.") {
-		private static final long serialVersionUID = -4611442074458503251L;
-
-		@Override
-		public boolean verify() {
-			float q;
-			try {
-				q = Float.parseFloat(getInput());
-			} catch (Exception e) {
-				LOGGER.warning("User has not entered a float when float was expected.");
-				return false;
-			}
-			return q > 0 && (PRICE_FORMAT.format(q).equals(q + "") || PRICE_FORMAT.format(q).equals(q + "0"));
-		}
-	} };
+	};
+	private static final AtomicIntegerFieldUpdater<Item> QUANTITY = AtomicIntegerFieldUpdater.newUpdater(Item.class,
+			"quantity");
+	private static final long serialVersionUID = -8698502419721443470L;
 	/**
-	 * The ID of this Item, 5 alphanumeric characters.
+	 * The ID of this Item, 5 alphanumeric characters packed by ItemIDCodec.
 	 */
-	protected String ID;
+	protected int key;
 	/**
 	 * The name of this Item.
 	 */
@@ -77,9 +39,71 @@ public abstract class Item implements Serializable, Comparable<Item> {
 	 */
 	protected float price;
 	/**
-	 * The quantity of items represented by this Item object.
+	 * The quantity of items represented by this Item object. It is only
+	 * changed atomically, through addQuantity() and compareAndSetQuantity().
+	 */
+	protected volatile int quantity;
+
+	/**
+	 * This constructor initializes the fields basal to all items.
+	 * 
+	 * @param key
+	 *            the ID of this Item, as packed by ItemIDCodec.
+	 * @param name
+	 *            the name of this Item.
+	 * @param quantity
+	 *            the quantity of this Item in stock.
+	 * @param price
+	 *            the price of this Item.
+	 */
+	protected Item(int key, String name, int quantity, float price) {
+		this.key = key;
+		this.name = name;
+		this.quantity = quantity;
+		this.price = price;
+	}
+
+	/**
+	 * This constructor reads the fields basal to all items from a stream
+	 * written by write().
+	 * 
+	 * @param in
+	 *            the stream to read from.
+	 * @throws IOException
+	 *             when the stream cannot be read.
+	 */
+	protected Item(DataInput in) throws IOException {
+		key = in.readInt();
+		name = in.readUTF();
+		quantity = in.readInt();
+		price = in.readFloat();
+	}
+
+	/**
+	 * This method changes the stock atomically, whatever other threads are
+	 * doing to it.
+	 * 
+	 * @param amount
+	 *            the quantity to be added, negative when stock is taken.
+	 * @return the new quantity.
 	 */
-	protected int quantity;
+	int addQuantity(int amount) {
+		return QUANTITY.addAndGet(this, amount);
+	}
+
+	/**
+	 * This method sets the stock only if no other thread has changed it since
+	 * it was read.
+	 * 
+	 * @param expected
+	 *            the quantity which was read.
+	 * @param quantity
+	 *            the new quantity.
+	 * @return true, if the quantity was still expected and has been set.
+	 */
+	boolean compareAndSetQuantity(int expected, int quantity) {
+		return QUANTITY.compareAndSet(this, expected, quantity);
+	}
 
 	/**
 	 * This overwritten method facilitates the sorting of items according to
@@ -89,7 +113,60 @@ public abstract class Item implements Serializable, Comparable<Item> {
 	 */
 	@Override
 	public int compareTo(Item i) {
-		return ID.compareTo(i.ID);
+		return Integer.compare(key, i.key);
+	}
+
+	/**
+	 * This method copies this Item, as when a snapshot is taken while the
+	 * store goes on changing. Only the quantity of an Item changes, so the
+	 * copy shares every other field.
+	 *
+	 * @return a copy of this Item, which quantity does not follow this one.
+	 */
+	Item copy() {
+		try {
+			return (Item) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @return the upper case, 5 character ID of this Item.
+	 */
+	public String getID() {
+		return ItemIDCodec.decode(key);
+	}
+
+	/**
+	 * @return the name of this Item.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the price of this Item.
+	 */
+	public float getPrice() {
+		return price;
+	}
+
+	/**
+	 * @return the quantity of this Item in stock.
+	 */
+	public int getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * This method lists the fields which the item search looks in. Subclasses
+	 * add their own fields.
+	 * 
+	 * @return the searchable fields of this Item.
+	 */
+	public String[] getSearchFields() {
+		return new String[] { name };
 	}
 
 	/**
@@ -110,24 +187,71 @@ public abstract class Item implements Serializable, Comparable<Item> {
 	 * @return the String Array representation of this object.
 	 */
 	public String[] toStringArray() {
-		return new String[] { ID, name, quantity + "", getFormattedPrice(), null };
+		return new String[] { getID(), name, quantity + "", getFormattedPrice(), null };
+	}
+
+	/**
+	 * This method checks the fields of a new Item against the rules of the
+	 * item forms.
+	 * 
+	 * @throws ValidationException
+	 *             when a field breaks a rule.
+	 */
+	void validate() throws ValidationException {
+		if (key < 0 || key >= ItemIDCodec.KEY_SPACE)
+			throw new ValidationException("Please enter 5 alphanumeric characters.");
+		if (name == null || name.length() == 0)
+			throw new ValidationException("Please enter a name with at least 1 character.");
+		if (quantity <= 0)
+			throw new ValidationException("Please enter a positive integer quantity.");
+		if (!isValidPrice(price))
+			throw new ValidationException("Please enter a price with at most 2 decimal digit accuracy.");
+	}
+
+	/**
+	 * This method writes this Item in the compact binary form read by
+	 * Item.read(), preceded by a flag telling which subclass it is.
+	 * 
+	 * @param out
+	 *            the stream to write to.
+	 * @throws IOException
+	 *             when the stream cannot be written.
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeBoolean(this instanceof Appliance);
+		out.writeInt(key);
+		out.writeUTF(name);
+		out.writeInt(quantity);
+		out.writeFloat(price);
 	}
 
 	private String getFormattedPrice() {
-		return '$' + PRICE_FORMAT.format(price);
+		return '$' + PRICE_FORMAT.get().format(price);
+	}
+
+	/**
+	 * @param price
+	 *            the price to be tested.
+	 * @return true, if the price is positive and has at most 2 decimal digits.
+	 */
+	public static boolean isValidPrice(float price) {
+		String formatted = PRICE_FORMAT.get().format(price);
+		return price > 0 && (formatted.equals(price + "") || formatted.equals(price + "0"));
 	}
 
 	/**
-	 * This method constructs a new Item of a class which is chosen by user
-	 * input from a ClassQueryDialog.
+	 * This method reads an Item of the right subclass from a stream written by
+	 * write().
 	 * 
+	 * @param in
+	 *            the stream to read from.
 	 * @return the resulting Item object.
-	 * @throws CancelException
-	 *             when the user presses "Cancel."
+	 * @throws IOException
+	 *             when the stream cannot be read.
 	 */
-	public static Item newItem() throws CancelException {
-		if (WHICH_CLASS.isClass1())
-			return new Appliance();
-		return new HardwareItem();
+	public static Item read(DataInput in) throws IOException {
+		if (in.readBoolean())
+			return new Appliance(in);
+		return new HardwareItem(in);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+package hardware;
+
+import java.util.logging.Logger;
+
+/**
+ * This class creates new items from user input. Its forms are created only
+ * while the user is filling them in, so that no Swing components are kept in
+ * the Item objects themselves.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class ItemEditor {
+	private static final Logger LOGGER = Logger.getGlobal();
+	private static final ClassQueryDialog WHICH_CLASS = new ClassQueryDialog("Appliance", "Hardware Item");
+
+	private ItemEditor() {
+	}
+
+	/**
+	 * This method constructs a new Item of a class which is chosen by user
+	 * input from a ClassQueryDialog, then filled in by the user in a form.
+	 *
+	 * @return the resulting Item object.
+	 * @throws CancelException
+	 *             when the user presses "Cancel."
+	 */
+	public static Item newItem() throws CancelException {
+		if (WHICH_CLASS.isClass1())
+			return newAppliance();
+		return newHardwareItem();
+	}
+
+	/**
+	 * This method creates the FormLine objects required by the forms of both
+	 * Item subclasses.
+	 *
+	 * @return the ID, name, quantity and price FormLine objects.
+	 */
+	private static FormLine[] basicLines() {
+		return new FormLine[] { new FormLine("ID", "Please enter 5 alphanumeric characters.") {
+			private static final long serialVersionUID = -6274479331492230210L;
+
+			@Override
+			public boolean verify() {
+				return ItemIDCodec.encode(getInput()) != ItemIDCodec.NO_KEY;
+			}
+		}, new FormLine("Name", "Please enter a name with at least 1 character.") {
+			private static final long serialVersionUID = 7216330426632971840L;
+
+			@Override
+			public boolean verify() {
+				return getInput().length() > 0;
+			}
+		}, new FormLine("Quantity", "Please enter a positive integer quantity.") {
+			private static final long serialVersionUID = -4916840030745645284L;
+
+			@Override
+			public boolean verify() {
+				int q;
+				try {
+					q = Integer.parseInt(getInput());
+				} catch (Exception e) {
+					LOGGER.warning("User has not entered an int when int was expected.");
+					return false;
+				}
+				return q > 0;
+			}
+		}, new FormLine("Price", "Please enter a price with at most 2 decimal digit accuracy.") {
+			private static final long serialVersionUID = -4611442074458503251L;
+
+			@Override
+			public boolean verify() {
+				float q;
+				try {
+					q = Float.parseFloat(getInput());
+				} catch (Exception e) {
+					LOGGER.warning("User has not entered a float when float was expected.");
+					return false;
+				}
+				return Item.isValidPrice(q);
+			}
+		} };
+	}
+
+	private static Appliance newAppliance() throws CancelException {
+		String[] types = Appliance.getTypes();
+		FormLine[] basicLines = basicLines();
+		String[] result = new Form(new FormLine[] { basicLines[0], basicLines[1], basicLines[2], basicLines[3],
+				new FormLine("Brand", "Please enter a brand with at least 1 character.") {
+					private static final long serialVersionUID = -8996714202555190890L;
+
+					@Override
+					protected boolean verify() {
+						return getInput().length() > 0;
+					}
+				}, new FormLine("Type", "Please enter the type from " + types[0] + ", " + types[1] + ", " + types[2]
+						+ ", or " + types[3]) {
+					private static final long serialVersionUID = 5499221046297404914L;
+
+					@Override
+					protected boolean verify() {
+						return Appliance.whatType(getInput()) != -1;
+					}
+				} }).resultOnce();
+		return new Appliance(ItemIDCodec.encode(result[0]), result[1], Integer.parseInt(result[2]),
+				Float.parseFloat(result[3]), result[4], Appliance.whatType(result[5]));
+	}
+
+	private static HardwareItem newHardwareItem() throws CancelException {
+		String[] categories = HardwareItem.getCategories();
+		FormLine[] basicLines = basicLines();
+		String[] result = new Form(new FormLine[] { basicLines[0], basicLines[1], basicLines[2], basicLines[3],
+				new FormLine("Category", "Please enter a category from " + categories[0] + ", " + categories[1]
+						+ ", " + categories[2] + ", or " + categories[3]) {
+					private static final long serialVersionUID = -8803145486470982669L;
+
+					@Override
+					protected boolean verify() {
+						return HardwareItem.whatCategory(getInput()) != -1;
+					}
+				} }).resultOnce();
+		return new HardwareItem(ItemIDCodec.encode(result[0]), result[1], Integer.parseInt(result[2]),
+				Float.parseFloat(result[3]), HardwareItem.whatCategory(result[4]));
+	}
+}
@@ -0,0 +1,78 @@
+package hardware;
+
+/**
+ * This class packs the 5 alphanumeric characters of an Item ID into an int key
+ * and back. Digits sort before letters, as they do in ASCII, so comparing two
+ * keys gives the same order as comparing the upper-cased ID Strings.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public final class ItemIDCodec {
+	private static final char[] DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+	/**
+	 * The number of distinct keys, 36 to the power of 5.
+	 */
+	public static final int KEY_SPACE = 60466176;
+	/**
+	 * The length of every Item ID.
+	 */
+	public static final int LENGTH = 5;
+	/**
+	 * The key returned for Strings which are not valid Item IDs.
+	 */
+	public static final int NO_KEY = -1;
+	private static final byte[] VALUES = new byte[128];
+
+	static {
+		for (int x = 0; x < VALUES.length; x++) {
+			VALUES[x] = -1;
+		}
+		for (int x = 0; x < DIGITS.length; x++) {
+			VALUES[DIGITS[x]] = (byte) x;
+			VALUES[Character.toLowerCase(DIGITS[x])] = (byte) x;
+		}
+	}
+
+	private ItemIDCodec() {
+	}
+
+	/**
+	 * This method unpacks an int key into its upper case Item ID.
+	 *
+	 * @param key
+	 *            a key returned by encode().
+	 * @return the 5 character Item ID.
+	 */
+	public static String decode(int key) {
+		char[] value = new char[LENGTH];
+		for (int x = LENGTH - 1; x >= 0; x--) {
+			value[x] = DIGITS[key % 36];
+			key /= 36;
+		}
+		return new String(value);
+	}
+
+	/**
+	 * This method packs an Item ID, in any case, into an int key.
+	 *
+	 * @param id
+	 *            the Item ID to be packed.
+	 * @return the key, between 0 and KEY_SPACE - 1, or NO_KEY if id is not 5
+	 *         alphanumeric characters.
+	 */
+	public static int encode(String id) {
+		if (id == null || id.length() != LENGTH)
+			return NO_KEY;
+		int key = 0;
+		for (int x = 0; x < LENGTH; x++) {
+			char c = id.charAt(x);
+			int value = c < 128 ? VALUES[c] : -1;
+			if (value < 0)
+				return NO_KEY;
+			key = key * 36 + value;
+		}
+		return key;
+	}
+}
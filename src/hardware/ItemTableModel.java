@@ -0,0 +1,162 @@
+package hardware;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class is a live table model of the items of an Inventory, in ID order.
+ * It keeps its own sorted tree of rows on the event dispatch thread and patches
+ * it one row at a time as the Inventory changes, instead of being rebuilt.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class ItemTableModel extends AbstractTableModel implements Inventory.Listener {
+	private static final String[] COLUMNS = { "ID", "Name", "Quantity", "Price", "Other Info" };
+	private static final long serialVersionUID = -4410873036429745082L;
+	/**
+	 * The Inventory which this model follows.
+	 */
+	protected final Inventory inventory;
+	private final RankedTree<Item> rows = new RankedTree<Item>();
+
+	/**
+	 * This constructor creates a model of the items of inventory and registers
+	 * it to follow every later change. It must be called on the event dispatch
+	 * thread.
+	 *
+	 * @param inventory
+	 *            the Inventory to be followed.
+	 */
+	public ItemTableModel(Inventory inventory) {
+		this.inventory = inventory;
+		// Following before reading means that an Item changed meanwhile by
+		// another thread, as while the store loads, is told about twice
+		// rather than never, which insertRow() and the others allow for.
+		inventory.addListener(this);
+		reload();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMNS.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return COLUMNS[column];
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		return rows.get(row).toStringArray()[column];
+	}
+
+	@Override
+	public void itemAdded(Item item) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (accepts(item))
+					insertRow(item);
+			}
+		});
+	}
+
+	@Override
+	public void itemChanged(Item item) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				int index = rows.rank(item);
+				if (index < 0) {
+					if (accepts(item) && inventory.getItem(item.key) == item)
+						insertRow(item);
+				} else if (accepts(item)) {
+					fireTableRowsUpdated(index, index);
+				} else {
+					rows.delete(item);
+					fireTableRowsDeleted(index, index);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void itemRemoved(Item item) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				int index = rows.rank(item);
+				if (index >= 0) {
+					rows.delete(item);
+					fireTableRowsDeleted(index, index);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void userAdded(User user) {
+	}
+
+	@Override
+	public void userReplaced(User user) {
+	}
+
+	/**
+	 * This method removes every row, for when a subclass fills the rows in
+	 * itself. It must be called on the event dispatch thread.
+	 */
+	protected void clearRows() {
+		rows.clear();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * This method inserts a row for item in ID order, unless it is already
+	 * shown. It must be called on the event dispatch thread.
+	 *
+	 * @param item
+	 *            the Item to be shown.
+	 */
+	protected void insertRow(Item item) {
+		int index = rows.rank(item);
+		if (index < 0) {
+			index = -index - 1;
+			rows.insert(item);
+			fireTableRowsInserted(index, index);
+		}
+	}
+
+	/**
+	 * This method decides which items are shown by this model. Subclasses
+	 * override it to filter the items.
+	 *
+	 * @param item
+	 *            the Item to be tested.
+	 * @return true, if the Item should be shown.
+	 */
+	protected boolean accepts(Item item) {
+		return true;
+	}
+
+	/**
+	 * This method rebuilds every row from the Inventory, for when the filter of
+	 * a subclass changes. It must be called on the event dispatch thread.
+	 */
+	protected void reload() {
+		rows.clear();
+		for (Item i : inventory.getItems()) {
+			if (accepts(i))
+				rows.insert(i);
+		}
+		fireTableDataChanged();
+	}
+}
@@ -0,0 +1,765 @@
+package hardware;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * This class is an append-only write-ahead journal of the changes made to the
+ * hardware store since the last time the database file was saved. Records are
+ * written in groups by a background thread, so that many changes share one
+ * disk write and, if enabled, one fsync, and every append returns only once
+ * its record has been written. If a group cannot be written, its appends and
+ * every later one throw an UncheckedIOException instead of returning, since
+ * their records are not on the disk.
+ * <p>
+ * Every record has a sequence number, counted on from one file to the next:
+ * the file starts with a header holding the number of its first record. A
+ * save which runs while the store goes on changing calls mark() when it takes
+ * its snapshot, keeps the number it returns in the snapshot, and calls
+ * truncate() with it once the snapshot is saved, so that the records appended
+ * meanwhile are kept. When the journal is opened, the records which the
+ * snapshot already holds are skipped, in case the store stopped between
+ * saving the snapshot and truncating the journal.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class Journal {
+	/**
+	 * This interface receives the records of a journal when it is replayed on
+	 * top of the last saved database.
+	 */
+	public interface Replayer {
+		/**
+		 * @param item
+		 *            the Item which was added.
+		 */
+		void itemAdded(Item item);
+
+		/**
+		 * @param key
+		 *            the key of the Item which was deleted.
+		 */
+		void itemDeleted(int key);
+
+		/**
+		 * @param key
+		 *            the key of the Item which quantity was added to.
+		 * @param quantity
+		 *            the quantity which was added.
+		 */
+		void quantityAdded(int key, int quantity);
+
+		/**
+		 * @param transaction
+		 *            the Transaction which was posted.
+		 */
+		void transactionPosted(Transaction transaction);
+
+		/**
+		 * @param user
+		 *            the User which was added.
+		 */
+		void userAdded(User user);
+
+		/**
+		 * @param user
+		 *            the User which replaced the User with the same ID.
+		 */
+		void userUpdated(User user);
+	}
+
+	/**
+	 * This class is what replay() found in a journal file.
+	 */
+	private static class Contents {
+		/**
+		 * The sequence number of the first record of the file.
+		 */
+		long firstSequence = 1;
+		/**
+		 * Whether the file starts with a header, which files written before
+		 * records were numbered do not.
+		 */
+		boolean header;
+		/**
+		 * The position of the first record which was replayed.
+		 */
+		long keptPosition;
+		/**
+		 * The number of records replayed and skipped.
+		 */
+		long replayed, skipped;
+		/**
+		 * The length of the complete records, with the header.
+		 */
+		long validLength;
+	}
+
+	private static class Record extends DataOutputStream {
+		Record(byte type) throws IOException {
+			super(new ByteArrayOutputStream());
+			writeByte(type);
+			writeInt(0);
+		}
+
+		byte[] toByteArray() {
+			return ((ByteArrayOutputStream) out).toByteArray();
+		}
+	}
+
+	private static final int HEADER_LENGTH = 12;
+	private static final byte ITEM_ADDED = 1, QUANTITY_ADDED = 2, ITEM_DELETED = 3, USER_ADDED = 4,
+			USER_UPDATED = 5, TRANSACTION_POSTED = 6, TRANSACTIONS_POSTED = 7;
+	private static final Logger LOGGER = Logger.getGlobal();
+	/**
+	 * The magic number at the start of the header, which cannot be mistaken for
+	 * the type of a record.
+	 */
+	private static final int MAGIC = 0x484A4E4C;
+	/**
+	 * The longest record which is appended or replayed. A longer length read
+	 * back can only be torn or damaged.
+	 */
+	private static final int MAX_RECORD_LENGTH = 1 << 28;
+	private long appended;
+	private FileChannel channel;
+	private boolean closed = false;
+	private IOException failure;
+	private final String filename;
+	private final boolean fsync;
+	private final long groupCommitNanos;
+	private long length;
+	private final ReentrantLock lock = new ReentrantLock();
+	private long markedLength = 0, markedRecords = 0, markedSequence = -1;
+	private ArrayList<byte[]> pending = new ArrayList<byte[]>();
+	private final Condition pendingChanged = lock.newCondition();
+	private long recordsSinceCheckpoint = 0;
+	private long written;
+	private final Condition writtenChanged = lock.newCondition();
+
+	/**
+	 * This constructor opens the journal file and replays every record in it,
+	 * like the constructor which is given the sequence number of a snapshot,
+	 * for a store which has none.
+	 *
+	 * @param filename
+	 *            the name of the journal file, which is created if it does not
+	 *            exist.
+	 * @param fsync
+	 *            true, if every group of records should be forced to the disk
+	 *            before the appends which wrote it return.
+	 * @param groupCommitMillis
+	 *            how long the writer waits for more records before writing a
+	 *            group, 0 to write as soon as a record arrives.
+	 * @param replayer
+	 *            the Replayer which applies the replayed records.
+	 * @throws IOException
+	 *             when the journal file cannot be opened.
+	 */
+	public Journal(String filename, boolean fsync, long groupCommitMillis, Replayer replayer) throws IOException {
+		this(filename, fsync, groupCommitMillis, 0, replayer);
+	}
+
+	/**
+	 * This constructor opens the journal file, replays every complete record in
+	 * it which is not already in the snapshot, cuts off any torn record a crash
+	 * may have left at its end, and starts the background writer. A file
+	 * without a header, or with records which were skipped, is rewritten with
+	 * only the replayed records first.
+	 *
+	 * @param filename
+	 *            the name of the journal file, which is created if it does not
+	 *            exist.
+	 * @param fsync
+	 *            true, if every group of records should be forced to the disk
+	 *            before the appends which wrote it return.
+	 * @param groupCommitMillis
+	 *            how long the writer waits for more records before writing a
+	 *            group, 0 to write as soon as a record arrives.
+	 * @param snapshotSequence
+	 *            the sequence number returned by mark() when the snapshot the
+	 *            store was loaded from was taken, or 0.
+	 * @param replayer
+	 *            the Replayer which applies the replayed records.
+	 * @throws IOException
+	 *             when the journal file cannot be opened.
+	 */
+	public Journal(String filename, boolean fsync, long groupCommitMillis, long snapshotSequence, Replayer replayer)
+			throws IOException {
+		this.filename = filename;
+		this.fsync = fsync;
+		groupCommitNanos = TimeUnit.MILLISECONDS.toNanos(groupCommitMillis);
+		Contents contents = new Contents();
+		if (new File(filename).exists())
+			replay(filename, snapshotSequence, replayer, contents);
+		appended = Math.max(snapshotSequence, contents.firstSequence - 1 + contents.skipped + contents.replayed);
+		written = appended;
+		recordsSinceCheckpoint = contents.replayed;
+		channel = new RandomAccessFile(filename, "rw").getChannel();
+		if (contents.header && contents.skipped == 0) {
+			channel.truncate(contents.validLength);
+			length = contents.validLength;
+			channel.position(length);
+		} else {
+			rewrite(appended - contents.replayed, contents.keptPosition, contents.validLength);
+		}
+		Thread writer = new Thread("Journal writer") {
+			@Override
+			public void run() {
+				writeGroups();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * This method appends an item added record without waiting for it to be
+	 * written, so that a batch of changes can share one wait through await().
+	 * Records are written in the order they are appended.
+	 *
+	 * @param item
+	 *            the Item which was added.
+	 * @return the sequence number of the record, or 0 if it could not be
+	 *         appended.
+	 */
+	public long appendItemAdded(Item item) {
+		try {
+			Record out = new Record(ITEM_ADDED);
+			item.write(out);
+			return append(out);
+		} catch (IOException e) {
+			LOGGER.warning("Problem encoding journal record.");
+			return 0;
+		}
+	}
+
+	/**
+	 * This method appends a batch of posted transactions as one record, without
+	 * waiting for it to be written, like appendItemAdded(). Since the record
+	 * has one checksum, a replay applies either the whole batch or none of it.
+	 *
+	 * @param batch
+	 *            the transactions which were posted, in order.
+	 * @return the sequence number of the record, or 0 if it could not be
+	 *         appended or the batch is empty.
+	 */
+	public long appendTransactionsPosted(List<Transaction> batch) {
+		if (batch.isEmpty())
+			return 0;
+		try {
+			Record out = new Record(TRANSACTIONS_POSTED);
+			out.writeInt(batch.size());
+			for (Transaction transaction : batch) {
+				transaction.write(out);
+			}
+			return append(out);
+		} catch (IOException e) {
+			LOGGER.warning("Problem encoding journal record.");
+			return 0;
+		}
+	}
+
+	/**
+	 * This method appends a user added record without waiting for it to be
+	 * written, like appendItemAdded().
+	 *
+	 * @param user
+	 *            the User which was added.
+	 * @return the sequence number of the record, or 0 if it could not be
+	 *         appended.
+	 */
+	public long appendUserAdded(User user) {
+		try {
+			Record out = new Record(USER_ADDED);
+			user.write(out);
+			return append(out);
+		} catch (IOException e) {
+			LOGGER.warning("Problem encoding journal record.");
+			return 0;
+		}
+	}
+
+	/**
+	 * This method waits until a record appended without waiting, and every
+	 * record appended before it, has been written.
+	 *
+	 * @param sequence
+	 *            the number returned when the record was appended.
+	 */
+	public void await(long sequence) {
+		lock.lock();
+		try {
+			awaitWritten(sequence);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * This method waits for every pending record to be written, stops the
+	 * background writer and closes the journal file.
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			awaitAllWritten();
+			closed = true;
+			pendingChanged.signalAll();
+			channel.close();
+		} catch (IOException e) {
+			LOGGER.warning("Problem closing journal file.");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param item
+	 *            the Item which was added.
+	 */
+	public void itemAdded(Item item) {
+		await(appendItemAdded(item));
+	}
+
+	/**
+	 * @param key
+	 *            the key of the Item which was deleted.
+	 */
+	public void itemDeleted(int key) {
+		try {
+			Record out = new Record(ITEM_DELETED);
+			out.writeInt(key);
+			await(append(out));
+		} catch (IOException e) {
+			LOGGER.warning("Problem encoding journal record.");
+		}
+	}
+
+	/**
+	 * @param key
+	 *            the key of the Item which quantity was added to.
+	 * @param quantity
+	 *            the quantity which was added.
+	 */
+	public void quantityAdded(int key, int quantity) {
+		try {
+			Record out = new Record(QUANTITY_ADDED);
+			out.writeInt(key);
+			out.writeInt(quantity);
+			await(append(out));
+		} catch (IOException e) {
+			LOGGER.warning("Problem encoding journal record.");
+		}
+	}
+
+	/**
+	 * This method marks the end of the journal, once every record appended so
+	 * far has been written. It is called while the store does not change, when
+	 * a snapshot of it is taken to be saved.
+	 *
+	 * @return the sequence number of the last record appended, to be kept in
+	 *         the snapshot and given to truncate() once the snapshot is saved.
+	 */
+	public long mark() {
+		lock.lock();
+		try {
+			awaitAllWritten();
+			markedSequence = appended;
+			markedLength = length;
+			markedRecords = recordsSinceCheckpoint;
+			return appended;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of records appended since the journal was opened or
+	 *         last truncated.
+	 */
+	public long recordsSinceCheckpoint() {
+		lock.lock();
+		try {
+			return recordsSinceCheckpoint;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param transaction
+	 *            the Transaction which was posted.
+	 */
+	public void transactionPosted(Transaction transaction) {
+		try {
+			Record out = new Record(TRANSACTION_POSTED);
+			transaction.write(out);
+			await(append(out));
+		} catch (IOException e) {
+			LOGGER.warning("Problem encoding journal record.");
+		}
+	}
+
+	/**
+	 * This method empties the journal, once every record appended so far has
+	 * been written. It is called after the database file has been saved, when
+	 * the saved file contains every journaled change.
+	 */
+	public void truncate() {
+		lock.lock();
+		try {
+			awaitAllWritten();
+			markedSequence = appended;
+			markedLength = length;
+			markedRecords = recordsSinceCheckpoint;
+		} finally {
+			lock.unlock();
+		}
+		truncate(markedSequence);
+	}
+
+	/**
+	 * This method removes the records up to mark, which are in a saved
+	 * snapshot, and keeps those appended since. When there are none, the
+	 * journal is cut back to its header; otherwise the kept records are copied
+	 * to a new file which is renamed over the journal, so that a crash leaves
+	 * either the old journal or the new one. A journal which failed to write a
+	 * record is whole again once every record appended so far is in the
+	 * snapshot.
+	 *
+	 * @param mark
+	 *            the value returned by mark() when the snapshot was taken.
+	 */
+	public void truncate(long mark) {
+		lock.lock();
+		try {
+			if (mark != markedSequence)
+				throw new IllegalArgumentException("The journal was not marked at " + mark + ".");
+			awaitAllWritten();
+			if (mark == appended && failure == null) {
+				// The header is written only once the records are gone, so
+				// that a crash in between never numbers them anew.
+				channel.truncate(HEADER_LENGTH);
+				channel.write(header(mark + 1), 0);
+				if (fsync)
+					channel.force(true);
+				length = HEADER_LENGTH;
+				channel.position(length);
+				recordsSinceCheckpoint = 0;
+			} else if (mark == appended) {
+				// A new file is written, since the old one may be what failed.
+				rewrite(mark, 0, 0);
+				recordsSinceCheckpoint = 0;
+				LOGGER.info("The journal is whole again, since every record is in the saved snapshot.");
+				failure = null;
+				pending.clear();
+				written = appended;
+			} else {
+				rewrite(mark, markedLength, length);
+				recordsSinceCheckpoint -= markedRecords;
+			}
+		} catch (IOException e) {
+			LOGGER.warning("Problem truncating journal file.");
+			try {
+				if (!channel.isOpen())
+					reopen();
+			} catch (IOException f) {
+				LOGGER.severe("Problem reopening journal file.");
+			}
+		} finally {
+			markedSequence = -1;
+			markedRecords = 0;
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param user
+	 *            the User which was added.
+	 */
+	public void userAdded(User user) {
+		await(appendUserAdded(user));
+	}
+
+	/**
+	 * @param user
+	 *            the User which replaced the User with the same ID.
+	 */
+	public void userUpdated(User user) {
+		try {
+			Record out = new Record(USER_UPDATED);
+			user.write(out);
+			await(append(out));
+		} catch (IOException e) {
+			LOGGER.warning("Problem encoding journal record.");
+		}
+	}
+
+	private long append(Record out) throws IOException {
+		byte[] bytes = out.toByteArray();
+		if (bytes.length - 5 > MAX_RECORD_LENGTH)
+			throw new IOException("Journal record of " + (bytes.length - 5) + " bytes is too long.");
+		ByteBuffer.wrap(bytes).putInt(1, bytes.length - 5);
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length);
+		byte[] record = ByteBuffer.allocate(bytes.length + 4).put(bytes).putInt((int) crc.getValue()).array();
+		lock.lock();
+		try {
+			if (closed)
+				throw new IOException("Journal is closed.");
+			pending.add(record);
+			recordsSinceCheckpoint++;
+			pendingChanged.signal();
+			return ++appended;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * This method waits, holding the lock, until no record is pending or being
+	 * written, so that the file may be changed. After a failure, the records
+	 * which are still pending are never written.
+	 */
+	private void awaitAllWritten() {
+		boolean interrupted = false;
+		while (written < appended && !closed && failure == null) {
+			try {
+				writtenChanged.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void awaitWritten(long sequence) {
+		boolean interrupted = false;
+		while (written < sequence && !closed && failure == null) {
+			try {
+				writtenChanged.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (written < sequence && failure != null)
+			throw new UncheckedIOException("Journal record " + sequence + " could not be written.", failure);
+	}
+
+	private void reopen() throws IOException {
+		channel = new RandomAccessFile(filename, "rw").getChannel();
+		channel.position(length);
+	}
+
+	/**
+	 * This method replaces the journal file by a new one holding a header and
+	 * the bytes of the current file from one position to another, which are
+	 * the records which follow the one numbered sequence. It is called while
+	 * no record is being written.
+	 */
+	private void rewrite(long sequence, long from, long to) throws IOException {
+		String temporaryFilename = filename + ".tmp";
+		try (FileChannel kept = new RandomAccessFile(temporaryFilename, "rw").getChannel()) {
+			kept.truncate(0);
+			kept.write(header(sequence + 1));
+			for (long position = from; position < to;) {
+				position += channel.transferTo(position, to - position, kept);
+			}
+			if (fsync)
+				kept.force(true);
+		}
+		channel.close();
+		Files.move(Paths.get(temporaryFilename), Paths.get(filename), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		length = HEADER_LENGTH + to - from;
+		reopen();
+	}
+
+	private void writeGroups() {
+		while (true) {
+			ArrayList<byte[]> group;
+			FileChannel out;
+			boolean failed;
+			lock.lock();
+			try {
+				while (pending.isEmpty() && !closed) {
+					pendingChanged.awaitUninterruptibly();
+				}
+				if (closed)
+					return;
+				long deadline = System.nanoTime() + groupCommitNanos;
+				for (long left = groupCommitNanos; left > 0; left = deadline - System.nanoTime()) {
+					try {
+						pendingChanged.awaitNanos(left);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+				group = pending;
+				pending = new ArrayList<byte[]>();
+				out = channel;
+				failed = failure != null;
+			} finally {
+				lock.unlock();
+			}
+			// After a failure nothing more is written, since a record missing
+			// from the middle of the journal would be replayed around.
+			if (failed)
+				continue;
+			int groupLength = 0;
+			for (byte[] record : group) {
+				groupLength += record.length;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(groupLength);
+			for (byte[] record : group) {
+				buffer.put(record);
+			}
+			buffer.flip();
+			IOException error = null;
+			try {
+				while (buffer.hasRemaining()) {
+					out.write(buffer);
+				}
+				if (fsync)
+					out.force(false);
+			} catch (IOException e) {
+				LOGGER.severe("Problem writing journal file, changes are no longer journaled: " + e);
+				error = e;
+			}
+			lock.lock();
+			try {
+				if (error == null) {
+					written += group.size();
+					length += groupLength;
+				} else {
+					failure = error;
+				}
+				writtenChanged.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * @return the header of a file which first record has the given sequence
+	 *         number.
+	 */
+	private static ByteBuffer header(long firstSequence) {
+		return ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putLong(firstSequence).flip();
+	}
+
+	/**
+	 * This method applies every complete record of the file which follows the
+	 * one numbered snapshotSequence, and stops at the first torn or damaged
+	 * one.
+	 */
+	private static void replay(String filename, long snapshotSequence, Replayer replayer, Contents contents)
+			throws IOException {
+		long fileLength = new File(filename).length(), position = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+			in.mark(HEADER_LENGTH);
+			try {
+				if (in.readInt() == MAGIC) {
+					contents.firstSequence = in.readLong();
+					contents.header = true;
+					position = HEADER_LENGTH;
+				} else {
+					in.reset();
+				}
+			} catch (EOFException e) {
+				return;
+			}
+			contents.keptPosition = position;
+			contents.validLength = position;
+			while (true) {
+				byte type;
+				byte[] payload;
+				int checksum;
+				try {
+					type = in.readByte();
+					int length = in.readInt();
+					// A length which runs past the end of the file is torn,
+					// and is not trusted with an allocation.
+					if (length < 0 || length > MAX_RECORD_LENGTH || position + 9 + length > fileLength)
+						break;
+					payload = new byte[length];
+					in.readFully(payload);
+					checksum = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				CRC32 crc = new CRC32();
+				crc.update(ByteBuffer.allocate(5).put(type).putInt(payload.length).array());
+				crc.update(payload);
+				if ((int) crc.getValue() != checksum)
+					break;
+				position += 9 + payload.length;
+				contents.validLength = position;
+				if (contents.firstSequence + contents.skipped + contents.replayed <= snapshotSequence) {
+					contents.skipped++;
+					contents.keptPosition = position;
+					continue;
+				}
+				DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+				switch (type) {
+				case ITEM_ADDED:
+					replayer.itemAdded(Item.read(record));
+					break;
+				case QUANTITY_ADDED:
+					replayer.quantityAdded(record.readInt(), record.readInt());
+					break;
+				case ITEM_DELETED:
+					replayer.itemDeleted(record.readInt());
+					break;
+				case USER_ADDED:
+					replayer.userAdded(User.read(record));
+					break;
+				case USER_UPDATED:
+					replayer.userUpdated(User.read(record));
+					break;
+				case TRANSACTION_POSTED:
+					replayer.transactionPosted(new Transaction(record));
+					break;
+				case TRANSACTIONS_POSTED:
+					for (int x = record.readInt(); x > 0; x--) {
+						replayer.transactionPosted(new Transaction(record));
+					}
+					break;
+				default:
+					LOGGER.warning("Unknown journal record type " + type + ", ignoring it.");
+				}
+				contents.replayed++;
+			}
+		}
+		LOGGER.info("Replayed " + contents.replayed + " journal records, skipped " + contents.skipped
+				+ " already in the snapshot.");
+	}
+}
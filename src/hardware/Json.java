@@ -0,0 +1,192 @@
+package hardware;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * This class reads and writes the small JSON documents exchanged by
+ * HttpEndpoint. Objects are read into LinkedHashMaps, arrays into ArrayLists,
+ * integers into Longs and other numbers into Doubles.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class Json {
+	private int position;
+	private final String text;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	private void expect(char c) {
+		skipSpace();
+		if (position >= text.length() || text.charAt(position) != c)
+			throw error("Expected '" + c + "'");
+		position++;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + position + " of the JSON document.");
+	}
+
+	private boolean next(char c) {
+		skipSpace();
+		if (position < text.length() && text.charAt(position) == c) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private Object readValue() {
+		skipSpace();
+		if (position >= text.length())
+			throw error("Expected a value");
+		char c = text.charAt(position);
+		if (c == '{') {
+			position++;
+			LinkedHashMap<String, Object> object = new LinkedHashMap<String, Object>();
+			if (next('}'))
+				return object;
+			do {
+				skipSpace();
+				String name = readString();
+				expect(':');
+				object.put(name, readValue());
+			} while (next(','));
+			expect('}');
+			return object;
+		}
+		if (c == '[') {
+			position++;
+			ArrayList<Object> array = new ArrayList<Object>();
+			if (next(']'))
+				return array;
+			do {
+				array.add(readValue());
+			} while (next(','));
+			expect(']');
+			return array;
+		}
+		if (c == '"')
+			return readString();
+		if (text.startsWith("true", position)) {
+			position += 4;
+			return Boolean.TRUE;
+		}
+		if (text.startsWith("false", position)) {
+			position += 5;
+			return Boolean.FALSE;
+		}
+		if (text.startsWith("null", position)) {
+			position += 4;
+			return null;
+		}
+		int start = position;
+		while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+			position++;
+		}
+		String number = text.substring(start, position);
+		try {
+			if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0)
+				return Long.parseLong(number);
+			return Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			position = start;
+			throw error("Expected a value");
+		}
+	}
+
+	private String readString() {
+		if (position >= text.length() || text.charAt(position) != '"')
+			throw error("Expected a string");
+		StringBuilder string = new StringBuilder();
+		for (position++; position < text.length(); position++) {
+			char c = text.charAt(position);
+			if (c == '"') {
+				position++;
+				return string.toString();
+			}
+			if (c != '\\') {
+				string.append(c);
+				continue;
+			}
+			if (++position >= text.length())
+				break;
+			c = text.charAt(position);
+			switch (c) {
+			case 'b':
+				string.append('\b');
+				break;
+			case 'f':
+				string.append('\f');
+				break;
+			case 'n':
+				string.append('\n');
+				break;
+			case 'r':
+				string.append('\r');
+				break;
+			case 't':
+				string.append('\t');
+				break;
+			case 'u':
+				if (position + 5 > text.length())
+					throw error("Expected 4 hexadecimal digits");
+				try {
+					string.append((char) Integer.parseInt(text.substring(position + 1, position + 5), 16));
+				} catch (NumberFormatException e) {
+					throw error("Expected 4 hexadecimal digits");
+				}
+				position += 4;
+				break;
+			default:
+				string.append(c);
+			}
+		}
+		throw error("Unterminated string");
+	}
+
+	private void skipSpace() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+	}
+
+	/**
+	 * @param text
+	 *            a JSON document.
+	 * @return the value the document holds.
+	 * @throws IllegalArgumentException
+	 *             when the text is not a single JSON value.
+	 */
+	public static Object parse(String text) {
+		Json json = new Json(text);
+		Object value = json.readValue();
+		json.skipSpace();
+		if (json.position < text.length())
+			throw json.error("Unexpected text");
+		return value;
+	}
+
+	/**
+	 * @param string
+	 *            the String to be written.
+	 * @return the String as a JSON string, quoted and escaped.
+	 */
+	public static String quote(String string) {
+		StringBuilder quoted = new StringBuilder(string.length() + 2).append('"');
+		for (int x = 0; x < string.length(); x++) {
+			char c = string.charAt(x);
+			if (c == '"' || c == '\\')
+				quoted.append('\\').append(c);
+			else if (c < ' ')
+				quoted.append(String.format("\\u%04x", (int) c));
+			else
+				quoted.append(c);
+		}
+		return quoted.append('"').toString();
+	}
+}
@@ -0,0 +1,120 @@
+package hardware;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a histogram of durations with log-linear buckets: each power of
+ * two is split into 16 buckets, so any percentile is within about 6% of the
+ * true value, from a nanosecond up to hours, in a fixed 8KB. Recording is lock
+ * free, so it can be done from any number of threads.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+	private final LongAdder total = new LongAdder();
+
+	/**
+	 * @return the number of durations recorded.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int x = 0; x < counts.length(); x++) {
+			count += counts.get(x);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the largest duration recorded, in nanoseconds, rounded up to its
+	 *         bucket, or 0 if none was recorded.
+	 */
+	public long getMax() {
+		for (int x = counts.length() - 1; x >= 0; x--) {
+			if (counts.get(x) > 0)
+				return upperBound(x);
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the mean of the recorded durations, in nanoseconds, or 0 if none
+	 *         was recorded.
+	 */
+	public long getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : total.sum() / count;
+	}
+
+	/**
+	 * @param percentile
+	 *            the percentile, from 0 to 100.
+	 * @return the duration, in nanoseconds, which that percentile of the
+	 *         recorded durations did not exceed, rounded up to its bucket, or 0
+	 *         if none was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long[] snapshot = new long[counts.length()];
+		long count = 0;
+		for (int x = 0; x < snapshot.length; x++) {
+			snapshot[x] = counts.get(x);
+			count += snapshot[x];
+		}
+		if (count == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		for (int x = 0; x < snapshot.length; x++) {
+			rank -= snapshot[x];
+			if (rank <= 0)
+				return upperBound(x);
+		}
+		return upperBound(snapshot.length - 1);
+	}
+
+	/**
+	 * @param nanos
+	 *            the duration to be recorded, in nanoseconds.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts.incrementAndGet(bucket(nanos));
+		total.add(nanos);
+	}
+
+	/**
+	 * This method summarizes the histogram in milliseconds, for logging.
+	 *
+	 * @return the count, mean, median, 99th percentile and maximum.
+	 */
+	@Override
+	public String toString() {
+		return String.format("n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms", getCount(), millis(getMean()),
+				millis(getPercentile(50)), millis(getPercentile(99)), millis(getMax()));
+	}
+
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+		return (exponent + 1) * SUB_BUCKETS + (int) (nanos >>> exponent) - SUB_BUCKETS;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS - 1;
+		long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((mantissa + 1) << exponent) - 1;
+	}
+}
@@ -10,26 +10,26 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.logging.FileHandler;
+import java.io.IOException;
+import java.util.EnumMap;
 import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
 
 import javax.swing.JButton;
 import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableModel;
 
 /**
  * This class creates the GUI, saves the files, and starts threads associated
@@ -40,51 +40,63 @@ import javax.swing.JTextField;
  * @version 1.0
  * @since 1.0
  */
-public class Main implements Serializable {
+public class Main {
 
 	enum TableType {
-		Items, Search, Transactions, Users
+		Diagnostics, Items, Search, Transactions, Users
 	}
 
-	private static JScrollPane centerScrollPane;
-	private static final String DATABASE_FILENAME = "database.srl";
+	static final String DATABASE_FILENAME = "database.hwdb";
+	static final String JOURNAL_FILENAME = "database.jnl";
+	private static final long AUTOSAVE_MILLIS = 60000;
+	private static final int DIAGNOSTICS_REFRESH_MILLIS = 1000;
+	private static final int HTTP_THREADS = 16;
+	private static final int LOAD_PROGRESS_MILLIS = 100;
+	private static final int OPERATION_QUEUE_CAPACITY = 16;
+	private static final int OPERATION_THREADS = 8;
+	private static final int SEARCH_DELAY_MILLIS = 200;
 
+	private static final int LOG_CAPACITY = 8192;
+	private static final String LOG_FILENAME = "hardware.log";
+	private static final int LOG_FILES = 5;
+	private static final long LOG_LIMIT_BYTES = 10 << 20;
 	private static final Logger LOGGER = Logger.getGlobal();
+	private static final String METRICS_FILENAME = "metrics.txt";
 	private static JFrame mainWindow;
 	private static JTextField searchTermField;
-	private static final long serialVersionUID = -8400643378888310221L;
-	private static Thread userInputThread;
-	private ArrayList<Item> items = new ArrayList<Item>();
-	private int nextUserID = 1;
-	private ArrayList<Transaction> transactions = new ArrayList<Transaction>();
-	private ArrayList<User> users = new ArrayList<User>();
+	private static JTable table;
+	private final Inventory inventory;
+	private final OperationExecutor operations = new OperationExecutor(OPERATION_THREADS, OPERATION_QUEUE_CAPACITY);
+	private final DefaultTableModel loadingTableModel = new DefaultTableModel(new Object[] { "Loading..." }, 0);
+	private final EnumMap<TableType, LatencyHistogram> refreshLatencies = new EnumMap<TableType, LatencyHistogram>(
+			TableType.class);
+	private SearchTableModel searchTableModel;
+	private final InventoryService service;
+	private TableType shownTableType = TableType.Items;
+	private final EnumMap<TableType, AbstractTableModel> tableModels = new EnumMap<TableType, AbstractTableModel>(
+			TableType.class);
 
-	private Main() {
-		run();
+	private Main(InventoryService service) {
+		this.service = service;
+		inventory = service.getInventory();
+		for (TableType type : TableType.values()) {
+			refreshLatencies.put(type, Metrics.getGlobal().histogram("table.refresh." + type));
+		}
 	}
 
-	private void run() {
-		FileHandler fileHandler = null;
-		try {
-			fileHandler = new FileHandler("hardware.log");
-		} catch (Exception e) {
-			LOGGER.warning("Problem opening log file.");
-		}
-		fileHandler.setFormatter(new SimpleFormatter());
-		LOGGER.addHandler(fileHandler);
-		Form addQuantityForm = new Form(new FormLine[] {
+	/**
+	 * This method creates the form which asks for an Item and a quantity to
+	 * add to it. Like the editors, it creates a new form for each operation,
+	 * since several operations may show their forms at once.
+	 */
+	private Form newAddQuantityForm() {
+		return new Form(new FormLine[] {
 				new FormLine("Item ID", "Please enter the item ID of the item you would like to add quantity to.") {
 					private static final long serialVersionUID = -2975724386976863186L;
 
 					@Override
 					protected boolean verify() {
-						Item matchedItem = null;
-						for (Item i : items) {
-							if (i.ID.equals(getInput().toUpperCase())) {
-								matchedItem = i;
-							}
-						}
-						return matchedItem != null;
+						return inventory.hasItem(getInput());
 					}
 				}, new FormLine("Quantity", "Please enter a positive integer value.") {
 					private static final long serialVersionUID = -8849318554130149662L;
@@ -98,37 +110,51 @@ public class Main implements Serializable {
 							return false;
 						}
 					}
-				} }), deleteItemForm = new Form(new FormLine[] { new FormLine("Item ID",
-						"Please enter an item ID for the item you wish to delete. (Use the table)") {
+				} });
+	}
+
+	private Form newDeleteItemForm() {
+		return new Form(new FormLine[] { new FormLine("Item ID",
+				"Please enter an item ID for the item you wish to delete. (Use the table)") {
+			private static final long serialVersionUID = 2507906576056436247L;
+
+			@Override
+			protected boolean verify() {
+				return inventory.hasItem(getInput());
+			}
+		} });
+	}
 
-					private static final long serialVersionUID = 2507906576056436247L;
+	private Form newSelectUserForm() {
+		return new Form(new FormLine[] {
+				new FormLine("User ID", "Please choose an existing user ID. (Use the table.)") {
+					private static final long serialVersionUID = -6298858757408858894L;
 
 					@Override
 					protected boolean verify() {
-						for (Item i : items) {
-							if (i.ID.equals(getInput().toUpperCase()))
-								return true;
+						try {
+							return inventory.hasUser(Integer.parseInt(getInput()));
+						} catch (Exception e) {
+							LOGGER.warning("User has not entered an int when int was expected.");
 						}
 						return false;
 					}
-				} }), selectUserForm = new Form(new FormLine[] {
-						new FormLine("User ID", "Please choose an existing user ID. (Use the table.)") {
-							private static final long serialVersionUID = -6298858757408858894L;
+				} });
+	}
 
-							@Override
-							protected boolean verify() {
-								try {
-									for (User u : users) {
-										if (u.ID == Integer.parseInt(getInput())) {
-											return true;
-										}
-									}
-								} catch (Exception e) {
-									LOGGER.warning("User has not entered an int when int was expected.");
-								}
-								return false;
-							}
-						} });
+	private void run() {
+		try {
+			int capacity = Integer.getInteger("hardware.log.capacity", LOG_CAPACITY);
+			String policy = System.getProperty("hardware.log.policy", "DROP");
+			long limit = Long.getLong("hardware.log.limitBytes", LOG_LIMIT_BYTES);
+			int files = Integer.getInteger("hardware.log.files", LOG_FILES);
+			// The handler is closed, writing what is still queued, by the
+			// LogManager when the JVM exits.
+			LOGGER.addHandler(new AsyncLogHandler(LOG_FILENAME, capacity, AsyncLogHandler.OverflowPolicy.valueOf(
+					policy), limit, files));
+		} catch (IOException | IllegalArgumentException e) {
+			LOGGER.warning("Problem opening log file: " + e.getMessage());
+		}
 		mainWindow = new JFrame("Hardware Store");
 		mainWindow.setLayout(new BorderLayout());
 		mainWindow.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -141,8 +167,10 @@ public class Main implements Serializable {
 			@Override
 			public void windowClosed(WindowEvent arg0) {
 				LOGGER.info("User has closed the window. ");
+				operations.shutdown();
 				LOGGER.info("Now saving " + DATABASE_FILENAME);
-				save();
+				service.close();
+				dumpMetrics();
 				System.exit(0);
 			}
 
@@ -166,7 +194,18 @@ public class Main implements Serializable {
 			public void windowOpened(WindowEvent arg0) {
 			}
 		});
-		updateTable(TableType.Items);
+		MetricsTableModel diagnosticsTableModel = new MetricsTableModel(Metrics.getGlobal());
+		tableModels.put(TableType.Diagnostics, diagnosticsTableModel);
+		new Timer(DIAGNOSTICS_REFRESH_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				if (table.getModel() == diagnosticsTableModel)
+					diagnosticsTableModel.refresh();
+			}
+		}).start();
+		table = new JTable(loadingTableModel);
+		table.setEnabled(false);
+		mainWindow.add(new JScrollPane(table), CENTER);
 		JPanel topPanel = new JPanel();
 		topPanel.setLayout(new FlowLayout());
 		JLabel dropdownLabel = new JLabel("Table Type: ");
@@ -176,6 +215,7 @@ public class Main implements Serializable {
 		dropdown.addItem(TableType.Users);
 		dropdown.addItem(TableType.Transactions);
 		dropdown.addItem(TableType.Search);
+		dropdown.addItem(TableType.Diagnostics);
 		dropdown.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
@@ -187,17 +227,55 @@ public class Main implements Serializable {
 		JLabel searchLabel = new JLabel("Item Search Term: ");
 		topPanel.add(searchLabel);
 		searchTermField = new JTextField(20);
+		searchTermField.setEnabled(false);
 		topPanel.add(searchTermField);
+		ActionListener searchListener = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				searchTableModel.setQuery(searchTermField.getText());
+				if (dropdown.getSelectedItem() != TableType.Search)
+					dropdown.setSelectedItem(TableType.Search);
+			}
+		};
+		Timer searchTimer = new Timer(SEARCH_DELAY_MILLIS, searchListener);
+		searchTimer.setRepeats(false);
+		searchTermField.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void changedUpdate(DocumentEvent arg0) {
+			}
+
+			@Override
+			public void insertUpdate(DocumentEvent arg0) {
+				searchTimer.restart();
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent arg0) {
+				searchTimer.restart();
+			}
+		});
 		JButton searchSubmit = new JButton("Go");
 		searchSubmit.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
 				LOGGER.info("User has clicked search submit button, updating table.");
-				dropdown.setSelectedIndex(3);
-				updateTable((TableType) dropdown.getSelectedItem());
+				searchTimer.stop();
+				searchListener.actionPerformed(arg0);
 			}
 		});
+		searchSubmit.setEnabled(false);
 		topPanel.add(searchSubmit);
+		JProgressBar loadProgress = new JProgressBar(0, 100);
+		loadProgress.setStringPainted(true);
+		topPanel.add(loadProgress);
+		Timer loadTimer = new Timer(LOAD_PROGRESS_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				loadProgress.setValue(service.getLoadProgress());
+				loadProgress.setString("Loading " + service.getLoadProgress() + "%");
+			}
+		});
+		loadTimer.start();
 		mainWindow.add(topPanel, NORTH);
 		JPanel bottomPanel = new JPanel();
 		bottomPanel.setLayout(new FlowLayout());
@@ -208,43 +286,41 @@ public class Main implements Serializable {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				LOGGER.info("User has clicked a button to add something to the database.");
-				if (userInputThread == null || !userInputThread.isAlive()) {
-					userInputThread = new Thread() {
-						public void run() {
-							LOGGER.info("Thread started.");
-							String type = ((JButton) e.getSource()).getText();
-							boolean choseUser = false;
-							try {
-								switch (type) {
-								case "Item":
-									LOGGER.info("User has chosen to create a new item.");
-									items.add(Item.newItem());
-									dropdown.setSelectedIndex(0);
-									break;
-								case "User":
-									LOGGER.info("User has chosen to create a new user.");
-									choseUser = true;
-									users.add(User.newUser(nextUserID++));
-									dropdown.setSelectedIndex(1);
-									break;
-								case "Transaction":
-									LOGGER.info("User has chosen to create a new transaction.");
-									transactions.add(new Transaction(items, users));
-									dropdown.setSelectedIndex(2);
-								default:
-								}
-								updateTable((TableType) dropdown.getSelectedItem());
-							} catch (CancelException exc) {
-								if (choseUser)
-									nextUserID--;
+				String type = ((JButton) e.getSource()).getText();
+				operations.submit("Add " + type, new Runnable() {
+					@Override
+					public void run() {
+						int newUserID = -1;
+						service.await(InventoryService.Stage.Journal);
+						try {
+							switch (type) {
+							case "Item":
+								LOGGER.info("User has chosen to create a new item.");
+								service.addItem(ItemEditor.newItem());
+								dropdown.setSelectedIndex(0);
+								break;
+							case "User":
+								LOGGER.info("User has chosen to create a new user.");
+								newUserID = service.newUserID();
+								service.addUser(UserEditor.newUser(newUserID));
+								dropdown.setSelectedIndex(1);
+								break;
+							case "Transaction":
+								LOGGER.info("User has chosen to create a new transaction.");
+								service.postTransaction(TransactionEditor.newTransaction(inventory));
+								dropdown.setSelectedIndex(2);
+							default:
 							}
-							LOGGER.info("Thread ended.");
+						} catch (CancelException exc) {
+							if (newUserID >= 0)
+								service.returnUserID(newUserID);
+						} catch (ValidationException exc) {
+							if (newUserID >= 0)
+								service.returnUserID(newUserID);
+							LOGGER.warning(exc.getMessage() + " The new " + type + " is discarded.");
 						}
-					};
-					userInputThread.start();
-				} else {
-					LOGGER.warning("Thread is already running!");
-				}
+					}
+				});
 			}
 		};
 		addItem.addActionListener(addButtonListener);
@@ -260,66 +336,34 @@ public class Main implements Serializable {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				LOGGER.info("User has chosen to change an existing item.");
-				if (userInputThread == null || !userInputThread.isAlive()) {
-					userInputThread = new Thread() {
-						@Override
-						public void run() {
-							LOGGER.info("Thread started.");
-							try {
-								String[] result;
-								Item matchedItem = null;
-								if (e.getSource() == addQuantity) {
-									LOGGER.info("User has chosen to add a quantity to an item.");
-									result = addQuantityForm.result();
-									for (Item i : items) {
-										if (i.ID.equals(result[0].toUpperCase())) {
-											matchedItem = i;
-										}
-									}
-									matchedItem.quantity += Integer.parseInt(result[1]);
-									dropdown.setSelectedIndex(0);
-								} else if (e.getSource() == deleteItem) {
-									LOGGER.info("User has chosen to delete an item.");
-									String idToDelete = deleteItemForm.result()[0];
-									Item itemToDelete = null;
-									for (Item i : items) {
-										if (i.ID.equals(idToDelete.toUpperCase()))
-											itemToDelete = i;
-									}
-									items.remove(itemToDelete);
-									dropdown.setSelectedIndex(0);
-								} else if (e.getSource() == updateUser) {
-									LOGGER.info("User has chosen to update a user.");
-									User selectedUser = null;
-									String theID = selectUserForm.result()[0];
-									for (User cur : users) {
-										if (cur.ID == Integer.parseInt(theID))
-											selectedUser = cur;
-									}
-									String[] selectedUserStringArray = selectedUser.toStringArray();
-									String[] initializationVector = new String[selectedUserStringArray.length - 1];
-									for (int x = 1; x < selectedUserStringArray.length; x++) {
-										initializationVector[x - 1] = (selectedUserStringArray[x]);
-									}
-									users.remove(selectedUser);
-									if (selectedUser instanceof Employee) {
-										users.add(new Employee(selectedUser.ID, initializationVector));
-									} else {
-										users.add(new Customer(selectedUser.ID, initializationVector));
-									}
-									dropdown.setSelectedIndex(1);
-									users.sort(null);
-								}
-								updateTable((TableType) dropdown.getSelectedItem());
-							} catch (CancelException e) {
+				operations.submit(((JButton) e.getSource()).getText(), new Runnable() {
+					@Override
+					public void run() {
+						service.await(InventoryService.Stage.Journal);
+						try {
+							if (e.getSource() == addQuantity) {
+								LOGGER.info("User has chosen to add a quantity to an item.");
+								String[] result = newAddQuantityForm().resultOnce();
+								service.addQuantity(result[0], Integer.parseInt(result[1]));
+								dropdown.setSelectedIndex(0);
+							} else if (e.getSource() == deleteItem) {
+								LOGGER.info("User has chosen to delete an item.");
+								service.deleteItem(newDeleteItemForm().resultOnce()[0]);
+								dropdown.setSelectedIndex(0);
+							} else if (e.getSource() == updateUser) {
+								LOGGER.info("User has chosen to update a user.");
+								User user = service.getUser(Integer.parseInt(newSelectUserForm().resultOnce()[0]));
+								// Nothing is held while the form is open; the update
+								// is refused if the User was changed meanwhile.
+								service.updateUser(user, UserEditor.edit(user));
+								dropdown.setSelectedIndex(1);
 							}
-							LOGGER.info("Thread ended.");
+						} catch (CancelException exc) {
+						} catch (ValidationException exc) {
+							LOGGER.warning(exc.getMessage() + " The change is discarded.");
 						}
-					};
-					userInputThread.start();
-				} else {
-					LOGGER.warning("Thread is already running!");
-				}
+					}
+				});
 			}
 		};
 		addQuantity.addActionListener(specialFormActionListener);
@@ -328,97 +372,171 @@ public class Main implements Serializable {
 		bottomPanel.add(addQuantity);
 		bottomPanel.add(deleteItem);
 		bottomPanel.add(updateUser);
+		JButton importFile = new JButton("Import CSV");
+		importFile.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				LOGGER.info("User has chosen to import a CSV file.");
+				JFileChooser chooser = new JFileChooser();
+				if (chooser.showOpenDialog(mainWindow) != JFileChooser.APPROVE_OPTION)
+					return;
+				String filename = chooser.getSelectedFile().getPath();
+				operations.submit("Import " + filename, new Runnable() {
+					@Override
+					public void run() {
+						try {
+							new CsvImporter(service, Runtime.getRuntime().availableProcessors()).importFile(filename,
+									filename + ".rejects");
+						} catch (IOException exc) {
+							LOGGER.warning("Problem importing " + filename + ": " + exc.getMessage());
+						}
+						dropdown.setSelectedIndex(0);
+					}
+				});
+			}
+		});
+		bottomPanel.add(importFile);
+		JButton dumpMetrics = new JButton("Dump Metrics");
+		dumpMetrics.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				LOGGER.info("User has chosen to dump the metrics.");
+				dumpMetrics();
+			}
+		});
+		bottomPanel.add(dumpMetrics);
 		mainWindow.add(bottomPanel, SOUTH);
 		mainWindow.pack();
 		mainWindow.setLocationRelativeTo(null);
 		mainWindow.setVisible(true);
+		// Each table is shown once the part of the store it needs is loaded,
+		// and only then follows the changes, so that loading does not queue
+		// an event per row.
+		service.whenLoaded(InventoryService.Stage.Items, new Runnable() {
+			@Override
+			public void run() {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						searchTableModel = new SearchTableModel(inventory);
+						showModel(TableType.Search, searchTableModel);
+						showModel(TableType.Items, new ItemTableModel(inventory));
+						searchTermField.setEnabled(true);
+						searchSubmit.setEnabled(true);
+					}
+				});
+			}
+		});
+		service.whenLoaded(InventoryService.Stage.Users, new Runnable() {
+			@Override
+			public void run() {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						showModel(TableType.Users, new UserTableModel(inventory));
+					}
+				});
+			}
+		});
+		service.whenLoaded(InventoryService.Stage.Transactions, new Runnable() {
+			@Override
+			public void run() {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						showModel(TableType.Transactions, new TransactionTableModel(service.getTransactions()));
+					}
+				});
+			}
+		});
+		service.whenLoaded(InventoryService.Stage.Journal, new Runnable() {
+			@Override
+			public void run() {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						loadTimer.stop();
+						loadProgress.setVisible(false);
+						LOGGER.info("The store has been loaded.");
+					}
+				});
+			}
+		});
 	}
 
-	private void save() {
-		try {
-			ObjectOutputStream databaseOutStream = new ObjectOutputStream(
-					new BufferedOutputStream(new FileOutputStream(DATABASE_FILENAME)));
-			databaseOutStream.writeObject(this);
-			databaseOutStream.close();
-		} catch (Exception e) {
-			LOGGER.warning("Problem opening database file for saving.");
-		}
+	/**
+	 * This method makes model the model of its table type, and shows it if
+	 * that type is selected. It must be called on the event dispatch thread.
+	 */
+	private void showModel(TableType type, AbstractTableModel model) {
+		tableModels.put(type, model);
+		if (shownTableType == type)
+			table.setModel(model);
 	}
 
 	private void updateTable(TableType type) {
-		if (centerScrollPane != null)
-			mainWindow.remove(centerScrollPane);
-		Object[][] tableData;
-		JTable nextTable = null;
-		switch (type) {
-		case Items:
-			items.sort(null);
-			tableData = new Object[items.size()][5];
-			for (int x = 0; x < items.size(); x++) {
-				tableData[x] = items.get(x).toStringArray();
-			}
-			nextTable = new JTable(tableData, new String[] { "ID", "Name", "Quantity", "Price", "Other Info" });
-			break;
-		case Users:
-			tableData = new Object[users.size()][5];
-			for (int x = 0; x < users.size(); x++) {
-				User u = users.get(x);
-				if (u instanceof Employee) {
-					String[] s = u.toStringArray();
-					s[4] = "$" + s[4];
-					tableData[x] = s;
-				} else {
-					tableData[x] = u.toStringArray();
-				}
-			}
-			nextTable = new JTable(tableData,
-					new String[] { "ID", "First Name", "Last Name", "Phone #/SSN", "Address/Salary" });
-			break;
-		case Transactions:
-			tableData = new Object[transactions.size()][5];
-			for (int x = 0; x < transactions.size(); x++) {
-				tableData[x] = transactions.get(x).toStringArray();
-			}
-			nextTable = new JTable(tableData,
-					new String[] { "Item ID", "Sale Date", "Quantity", "Customer ID", "Employee ID" });
-			break;
-		case Search:
-			ArrayList<Item> searchResults = new ArrayList<Item>();
-			for (Item i : items) {
-				if (i.toString().toUpperCase().contains(searchTermField.getText().toUpperCase())) {
-					searchResults.add(i);
-				}
-			}
-			tableData = new Object[searchResults.size()][5];
-			for (int x = 0; x < searchResults.size(); x++) {
-				tableData[x] = searchResults.get(x).toStringArray();
+		long requested = System.nanoTime();
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				shownTableType = type;
+				table.setModel(tableModels.containsKey(type) ? tableModels.get(type) : loadingTableModel);
+				// The repaint asked for by setModel() is queued ahead of this, so
+				// the time is recorded once the new rows have been painted.
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						refreshLatencies.get(type).record(System.nanoTime() - requested);
+					}
+				});
 			}
-			nextTable = new JTable(tableData, new String[] { "ID", "Name", "Quantity", "Price", "Other Info" });
-		default:
+		});
+	}
+
+	private static void dumpMetrics() {
+		try {
+			Metrics.getGlobal().write(METRICS_FILENAME);
+			LOGGER.info("Metrics written to " + METRICS_FILENAME + ".");
+		} catch (IOException e) {
+			LOGGER.warning("Problem writing " + METRICS_FILENAME + ": " + e.getMessage());
 		}
-		nextTable.setEnabled(false);
-		centerScrollPane = new JScrollPane(nextTable);
-		mainWindow.add(centerScrollPane, CENTER);
-		mainWindow.validate();
-		mainWindow.pack();
 	}
 
 	/**
-	 * This method reads in a Main object from the database file and runs it, or
-	 * if none exists, creates a new Main object and runs that instead.
+	 * This method shows a Main object at once, then loads the InventoryService
+	 * from the database and journal files behind it.
 	 * 
 	 * @param args
 	 *            the arguments passed from the JVM, which are ignored.
 	 */
 	public static void main(String[] args) {
+		boolean fsync = Boolean.getBoolean("hardware.journal.fsync");
+		long groupCommitMillis = Long.getLong("hardware.journal.groupCommitMillis", 2);
+		InventoryService service = new InventoryService(DATABASE_FILENAME, JOURNAL_FILENAME, fsync,
+				groupCommitMillis);
+		Main main = new Main(service);
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				main.run();
+			}
+		});
 		try {
-			ObjectInputStream databaseInStream = new ObjectInputStream(
-					new BufferedInputStream(new FileInputStream(DATABASE_FILENAME)));
-			((Main) databaseInStream.readObject()).run();
-			databaseInStream.close();
-		} catch (Exception e) {
-			LOGGER.warning(DATABASE_FILENAME + " does not exist, starting new instance.");
-			new Main();
+			service.load();
+		} catch (IOException e) {
+			LOGGER.severe("Problem reading " + DATABASE_FILENAME + " or " + JOURNAL_FILENAME + ", refusing to run: "
+					+ e.getMessage());
+			System.exit(1);
+		}
+		service.startAutosave(Long.getLong("hardware.autosave.intervalMillis", AUTOSAVE_MILLIS));
+		Integer httpPort = Integer.getInteger("hardware.http.port");
+		if (httpPort != null) {
+			HttpEndpoint.useNoDelay();
+			try {
+				new HttpEndpoint(service, httpPort, HTTP_THREADS).start();
+			} catch (IOException e) {
+				LOGGER.warning("Problem serving on port " + httpPort + ", running without HTTP: " + e.getMessage());
+			}
 		}
 	}
-}
\ No newline at end of file
+}
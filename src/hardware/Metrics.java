@@ -0,0 +1,182 @@
+package hardware;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a registry of named measurements, kept in memory so that
+ * where the time goes can be seen while the store runs: counters of events,
+ * gauges which read a current value such as a queue depth, and latency
+ * histograms. Metrics are created the first time their name is asked for,
+ * and are shared by every caller which asks for the same name, so the hot
+ * paths hold on to theirs in a field and only record into it. Recording never
+ * locks.
+ * <p>
+ * Names are dotted, with the area first, such as "store.save" or
+ * "table.refresh.Items", so that related metrics are listed together.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class Metrics {
+	/**
+	 * This interface reads the current value of a gauge when the metrics are
+	 * shown or written.
+	 */
+	public interface Gauge {
+		/**
+		 * @return the current value.
+		 */
+		long getValue();
+	}
+
+	/**
+	 * The columns of the rows returned by rows().
+	 */
+	static final String[] COLUMNS = { "Metric", "Kind", "Count / Value", "Mean ms", "p50 ms", "p99 ms", "Max ms" };
+	private static final Metrics GLOBAL = new Metrics();
+	private final ConcurrentSkipListMap<String, LongAdder> counters = new ConcurrentSkipListMap<String, LongAdder>();
+	private final ConcurrentSkipListMap<String, Gauge> gauges = new ConcurrentSkipListMap<String, Gauge>();
+	private final ConcurrentSkipListMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<String,
+			LatencyHistogram>();
+
+	/**
+	 * @param name
+	 *            the name of the counter.
+	 * @return the counter with that name, which is created at 0 if there is
+	 *         none yet.
+	 */
+	public LongAdder counter(String name) {
+		LongAdder counter = counters.get(name);
+		if (counter == null) {
+			counter = new LongAdder();
+			LongAdder existing = counters.putIfAbsent(name, counter);
+			if (existing != null)
+				counter = existing;
+		}
+		return counter;
+	}
+
+	/**
+	 * This method registers a gauge, replacing any gauge of the same name, as
+	 * when the object it reads has been replaced.
+	 *
+	 * @param name
+	 *            the name of the gauge.
+	 * @param gauge
+	 *            the reader of its value.
+	 */
+	public void gauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * @param name
+	 *            the name of the histogram.
+	 * @return the latency histogram with that name, which is created empty if
+	 *         there is none yet.
+	 */
+	public LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			LatencyHistogram existing = histograms.putIfAbsent(name, histogram);
+			if (existing != null)
+				histogram = existing;
+		}
+		return histogram;
+	}
+
+	/**
+	 * This method reads every metric, for showing them in a table. Each row
+	 * has the columns named by COLUMNS; the latency columns are blank for
+	 * counters and gauges.
+	 *
+	 * @return one row per metric, counters first, then gauges, then
+	 *         histograms, each in order of name.
+	 */
+	public List<String[]> rows() {
+		ArrayList<String[]> rows = new ArrayList<String[]>();
+		for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+			rows.add(new String[] { entry.getKey(), "counter", Long.toString(entry.getValue().sum()), "", "", "",
+					"" });
+		}
+		for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+			rows.add(new String[] { entry.getKey(), "gauge", Long.toString(entry.getValue().getValue()), "", "", "",
+					"" });
+		}
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			rows.add(new String[] { entry.getKey(), "histogram", Long.toString(histogram.getCount()),
+					millis(histogram.getMean()), millis(histogram.getPercentile(50)),
+					millis(histogram.getPercentile(99)), millis(histogram.getMax()) });
+		}
+		return rows;
+	}
+
+	/**
+	 * @return every metric as a JSON object, which maps the name of each
+	 *         counter and gauge to its value, and the name of each histogram
+	 *         to an object of its count and latencies in milliseconds.
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder("{");
+		for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+			json.append(json.length() > 1 ? "," : "").append(Json.quote(entry.getKey())).append(':')
+					.append(entry.getValue().sum());
+		}
+		for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+			json.append(json.length() > 1 ? "," : "").append(Json.quote(entry.getKey())).append(':')
+					.append(entry.getValue().getValue());
+		}
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			json.append(json.length() > 1 ? "," : "").append(Json.quote(entry.getKey()))
+					.append(":{\"count\":").append(histogram.getCount()).append(",\"meanMillis\":")
+					.append(millis(histogram.getMean())).append(",\"p50Millis\":")
+					.append(millis(histogram.getPercentile(50))).append(",\"p99Millis\":")
+					.append(millis(histogram.getPercentile(99))).append(",\"maxMillis\":")
+					.append(millis(histogram.getMax())).append('}');
+		}
+		return json.append('}').toString();
+	}
+
+	/**
+	 * This method writes every metric to a text file as an aligned table,
+	 * headed by the time it was written.
+	 *
+	 * @param filename
+	 *            the name of the file, which is replaced.
+	 * @throws IOException
+	 *             when the file cannot be written.
+	 */
+	public void write(String filename) throws IOException {
+		try (PrintWriter out = new PrintWriter(filename, "UTF-8")) {
+			out.println("Metrics at " + new Date());
+			String format = "%-40s %-9s %14s %10s %10s %10s %10s%n";
+			out.printf(format, (Object[]) COLUMNS);
+			for (String[] row : rows()) {
+				out.printf(format, (Object[]) row);
+			}
+		}
+	}
+
+	/**
+	 * @return the registry shared by the whole store.
+	 */
+	public static Metrics getGlobal() {
+		return GLOBAL;
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+}
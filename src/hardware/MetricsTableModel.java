@@ -0,0 +1,68 @@
+package hardware;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class is a table model of the metrics of a Metrics registry, one row
+ * per metric. It shows the values read by the last call to refresh(), so that
+ * every cell of one repaint comes from the same moment.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class MetricsTableModel extends AbstractTableModel {
+	private static final long serialVersionUID = 4162383722981472315L;
+	private final Metrics metrics;
+	private List<String[]> rows = new ArrayList<String[]>();
+
+	/**
+	 * This constructor creates a model of metrics and reads them once.
+	 *
+	 * @param metrics
+	 *            the registry to be shown.
+	 */
+	public MetricsTableModel(Metrics metrics) {
+		this.metrics = metrics;
+		refresh();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return Metrics.COLUMNS.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return Metrics.COLUMNS[column];
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		return rows.get(row)[column];
+	}
+
+	/**
+	 * This method reads the metrics again and tells the table. It must be
+	 * called on the event dispatch thread.
+	 */
+	public void refresh() {
+		List<String[]> read = metrics.rows();
+		if (read.size() == rows.size()) {
+			rows = read;
+			if (!rows.isEmpty())
+				fireTableRowsUpdated(0, rows.size() - 1);
+		} else {
+			rows = read;
+			fireTableDataChanged();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package hardware;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * This class runs the operations started from the user interface, such as
+ * filling in a form and applying it through the InventoryService, on a bounded
+ * pool of threads, so that several can be in progress at once. The depth of
+ * the queue and the time each operation spends waiting and running are
+ * recorded in the global Metrics, as "operations.*".
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class OperationExecutor {
+	private static final Logger LOGGER = Logger.getGlobal();
+	private final ThreadPoolExecutor pool;
+	private final LatencyHistogram queueLatency, runLatency;
+	private final LongAdder refused;
+
+	/**
+	 * This constructor starts a pool of daemon threads.
+	 *
+	 * @param threads
+	 *            the number of operations which may run at once.
+	 * @param queueCapacity
+	 *            the number of operations which may wait for a thread, beyond
+	 *            which new operations are refused.
+	 */
+	public OperationExecutor(int threads, int queueCapacity) {
+		pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "Operation " + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		Metrics metrics = Metrics.getGlobal();
+		queueLatency = metrics.histogram("operations.queueLatency");
+		runLatency = metrics.histogram("operations.runLatency");
+		refused = metrics.counter("operations.refused");
+		metrics.gauge("operations.active", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getActiveCount();
+			}
+		});
+		metrics.gauge("operations.queued", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getQueueDepth();
+			}
+		});
+	}
+
+	/**
+	 * @return the number of operations which are running now.
+	 */
+	public int getActiveCount() {
+		return pool.getActiveCount();
+	}
+
+	/**
+	 * @return the times which operations waited for a thread.
+	 */
+	public LatencyHistogram getQueueLatency() {
+		return queueLatency;
+	}
+
+	/**
+	 * @return the number of operations waiting for a thread.
+	 */
+	public int getQueueDepth() {
+		return pool.getQueue().size();
+	}
+
+	/**
+	 * @return the times which operations took to run, once they had a thread.
+	 */
+	public LatencyHistogram getRunLatency() {
+		return runLatency;
+	}
+
+	/**
+	 * This method stops the pool, letting the running operations finish, and
+	 * logs how long operations took.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+		LOGGER.info("Operations queued " + queueLatency + ", ran " + runLatency + ".");
+	}
+
+	/**
+	 * This method queues an operation to be run on a thread of the pool.
+	 *
+	 * @param name
+	 *            the name of the operation, for logging.
+	 * @param operation
+	 *            the operation to be run.
+	 * @return true, if the operation was queued, false if the queue is full.
+	 */
+	public boolean submit(String name, Runnable operation) {
+		long submitted = System.nanoTime();
+		try {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					long started = System.nanoTime();
+					queueLatency.record(started - submitted);
+					try {
+						operation.run();
+					} catch (RuntimeException e) {
+						LOGGER.warning("Operation " + name + " failed: " + e);
+					} finally {
+						runLatency.record(System.nanoTime() - started);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refused.increment();
+			LOGGER.warning("Refusing operation " + name + ", " + getQueueDepth() + " operations are queued.");
+			return false;
+		}
+		LOGGER.info("Queued operation " + name + ", " + getQueueDepth() + " operations are queued and "
+				+ getActiveCount() + " are running.");
+		return true;
+	}
+}
@@ -0,0 +1,304 @@
+package hardware;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class is a sorted set kept as a treap, a binary search tree balanced by
+ * random priorities, which nodes also count the size of their subtree. Adding,
+ * removing and finding an element, and reading the element at an index, all
+ * take O(log n) time, and iteration is in order, so the set can be shown as a
+ * list without ever being sorted.
+ * <p>
+ * Nodes are never changed once they are in the tree: a change copies the path
+ * down to the changed node and then publishes the new root at once. So any
+ * number of threads may read the tree without locking while one thread at a
+ * time changes it, and snapshot() is an O(1) frozen copy. Each read method
+ * reads the root once, so it sees a single version of the tree.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ * @param <E>
+ *            the type of the elements, which are ordered by compareTo().
+ */
+public class RankedTree<E extends Comparable<? super E>> extends AbstractList<E> {
+	private static class Node<E> {
+		final Node<E> left, right;
+		final int priority;
+		final int size;
+		final E value;
+
+		Node(E value, int priority, Node<E> left, Node<E> right) {
+			this.value = value;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+			size = size(left) + size(right) + 1;
+		}
+	}
+
+	private volatile Node<E> root;
+	private int seed = 0x2545F491;
+
+	/**
+	 * This constructor creates an empty tree.
+	 */
+	public RankedTree() {
+	}
+
+	private RankedTree(Node<E> root) {
+		this.root = root;
+	}
+
+	/**
+	 * This method adds many elements at once, in O(n) time, as when a saved
+	 * store is loaded. The new elements are built into a balanced subtree,
+	 * which priorities fall in a band for each level, highest at its root, so
+	 * that later changes keep the tree balanced as if they had been inserted
+	 * one at a time.
+	 *
+	 * @param values
+	 *            the elements to be added, in strictly ascending order, each
+	 *            greater than every element already stored.
+	 * @throws IllegalArgumentException
+	 *             when values are not in that order.
+	 */
+	public void appendAll(List<? extends E> values) {
+		if (values.isEmpty())
+			return;
+		Node<E> top = root, last = top;
+		while (last != null && last.right != null) {
+			last = last.right;
+		}
+		for (int x = 0; x < values.size(); x++) {
+			E previous = x > 0 ? values.get(x - 1) : last == null ? null : last.value;
+			if (previous != null && previous.compareTo(values.get(x)) >= 0)
+				throw new IllegalArgumentException("The elements to be appended are not in ascending order.");
+		}
+		int levels = 32 - Integer.numberOfLeadingZeros(values.size());
+		root = merge(top, build(values, 0, values.size(), 0, (1L << 32) / levels));
+	}
+
+	@Override
+	public void clear() {
+		root = null;
+	}
+
+	/**
+	 * This method removes the element equal to value.
+	 *
+	 * @param value
+	 *            the element to be removed.
+	 * @return the element which was removed, or null if there was none.
+	 */
+	public E delete(E value) {
+		Node<E> top = root, n = find(top, value);
+		if (n == null)
+			return null;
+		root = delete(top, value);
+		return n.value;
+	}
+
+	@Override
+	public E get(int index) {
+		Node<E> n = root;
+		if (index < 0 || index >= size(n))
+			throw new IndexOutOfBoundsException("Index " + index + " of " + size(n));
+		while (true) {
+			int leftSize = size(n.left);
+			if (index < leftSize) {
+				n = n.left;
+			} else if (index == leftSize) {
+				return n.value;
+			} else {
+				index -= leftSize + 1;
+				n = n.right;
+			}
+		}
+	}
+
+	/**
+	 * This method adds value, unless an equal element is already stored.
+	 *
+	 * @param value
+	 *            the element to be added.
+	 * @return true, if value was added.
+	 */
+	public boolean insert(E value) {
+		Node<E> top = root;
+		if (find(top, value) != null)
+			return false;
+		root = insert(top, value, nextPriority());
+		return true;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			private final ArrayDeque<Node<E>> path = new ArrayDeque<Node<E>>();
+
+			{
+				descend(root);
+			}
+
+			@Override
+			public boolean hasNext() {
+				return !path.isEmpty();
+			}
+
+			@Override
+			public E next() {
+				if (path.isEmpty())
+					throw new NoSuchElementException();
+				Node<E> n = path.pop();
+				descend(n.right);
+				return n.value;
+			}
+
+			private void descend(Node<E> n) {
+				for (; n != null; n = n.left) {
+					path.push(n);
+				}
+			}
+		};
+	}
+
+	/**
+	 * This method adds value, or replaces the element equal to it.
+	 *
+	 * @param value
+	 *            the element to be stored.
+	 * @return the element which was replaced, or null if there was none.
+	 */
+	public E put(E value) {
+		Node<E> top = root, n = find(top, value);
+		if (n == null) {
+			root = insert(top, value, nextPriority());
+			return null;
+		}
+		root = replace(top, value);
+		return n.value;
+	}
+
+	/**
+	 * This method finds the index of value, in the same way as
+	 * Collections.binarySearch().
+	 *
+	 * @param value
+	 *            the element to be found.
+	 * @return the index of the element equal to value, or (-(insertion
+	 *         point) - 1) if there is none.
+	 */
+	public int rank(E value) {
+		Node<E> n = root;
+		int index = 0;
+		while (n != null) {
+			int c = value.compareTo(n.value);
+			if (c < 0) {
+				n = n.left;
+			} else if (c == 0) {
+				return index + size(n.left);
+			} else {
+				index += size(n.left) + 1;
+				n = n.right;
+			}
+		}
+		return -index - 1;
+	}
+
+	@Override
+	public int size() {
+		return size(root);
+	}
+
+	/**
+	 * @return a tree holding the elements of this tree as they are now, which
+	 *         is not affected by later changes to this tree.
+	 */
+	public RankedTree<E> snapshot() {
+		return new RankedTree<E>(root);
+	}
+
+	/**
+	 * This method builds a balanced subtree of values[from, to), which root is
+	 * at the given depth, and which priorities fall in a band of the given
+	 * width below the band of its parent.
+	 */
+	private Node<E> build(List<? extends E> values, int from, int to, int depth, long band) {
+		if (from >= to)
+			return null;
+		int middle = (from + to) >>> 1;
+		Node<E> left = build(values, from, middle, depth + 1, band), right = build(values, middle + 1, to,
+				depth + 1, band);
+		long priority = Integer.MAX_VALUE - (depth + 1) * band + 1 + (nextPriority() & 0xFFFFFFFFL) % band;
+		return new Node<E>(values.get(middle), (int) priority, left, right);
+	}
+
+	private int nextPriority() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed;
+	}
+
+	private static <E extends Comparable<? super E>> Node<E> find(Node<E> n, E value) {
+		while (n != null) {
+			int c = value.compareTo(n.value);
+			if (c == 0)
+				return n;
+			n = c < 0 ? n.left : n.right;
+		}
+		return null;
+	}
+
+	private static <E extends Comparable<? super E>> Node<E> delete(Node<E> n, E value) {
+		int c = value.compareTo(n.value);
+		if (c == 0)
+			return merge(n.left, n.right);
+		if (c < 0)
+			return new Node<E>(n.value, n.priority, delete(n.left, value), n.right);
+		return new Node<E>(n.value, n.priority, n.left, delete(n.right, value));
+	}
+
+	private static <E extends Comparable<? super E>> Node<E> insert(Node<E> n, E value, int priority) {
+		if (n == null)
+			return new Node<E>(value, priority, null, null);
+		if (value.compareTo(n.value) < 0) {
+			Node<E> l = insert(n.left, value, priority);
+			if (l.priority > n.priority)
+				return new Node<E>(l.value, l.priority, l.left, new Node<E>(n.value, n.priority, l.right, n.right));
+			return new Node<E>(n.value, n.priority, l, n.right);
+		}
+		Node<E> r = insert(n.right, value, priority);
+		if (r.priority > n.priority)
+			return new Node<E>(r.value, r.priority, new Node<E>(n.value, n.priority, n.left, r.left), r.right);
+		return new Node<E>(n.value, n.priority, n.left, r);
+	}
+
+	private static <E> Node<E> merge(Node<E> a, Node<E> b) {
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		if (a.priority > b.priority)
+			return new Node<E>(a.value, a.priority, a.left, merge(a.right, b));
+		return new Node<E>(b.value, b.priority, merge(a, b.left), b.right);
+	}
+
+	private static <E extends Comparable<? super E>> Node<E> replace(Node<E> n, E value) {
+		int c = value.compareTo(n.value);
+		if (c == 0)
+			return new Node<E>(value, n.priority, n.left, n.right);
+		if (c < 0)
+			return new Node<E>(n.value, n.priority, replace(n.left, value), n.right);
+		return new Node<E>(n.value, n.priority, n.left, replace(n.right, value));
+	}
+
+	private static int size(Node<?> n) {
+		return n == null ? 0 : n.size;
+	}
+}
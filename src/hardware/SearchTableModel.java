@@ -0,0 +1,90 @@
+package hardware;
+
+import java.util.List;
+
+import javax.swing.SwingWorker;
+
+/**
+ * This class is a live table model of the items of an Inventory which name or
+ * other searchable fields contain a search term, ignoring case. Each search
+ * runs off the event dispatch thread through the search index of the
+ * Inventory, and its rows are added as they are found. A newer search cancels
+ * the one still running.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class SearchTableModel extends ItemTableModel {
+	private class SearchWorker extends SwingWorker<Void, Item> {
+		private final String searchTerm;
+
+		SearchWorker(String searchTerm) {
+			this.searchTerm = searchTerm;
+		}
+
+		@Override
+		protected Void doInBackground() {
+			inventory.search(searchTerm, new TrigramIndex.Results() {
+				@Override
+				public boolean found(Item item) {
+					if (isCancelled())
+						return false;
+					publish(item);
+					return true;
+				}
+			});
+			return null;
+		}
+
+		@Override
+		protected void process(List<Item> found) {
+			if (worker != this)
+				return;
+			for (Item i : found) {
+				if (inventory.getItem(i.key) == i && accepts(i))
+					insertRow(i);
+			}
+		}
+	}
+
+	private static final long serialVersionUID = 2131514590106424938L;
+	private String query;
+	private SearchWorker worker;
+
+	/**
+	 * This constructor creates a model which shows every item until a search
+	 * term is set. It must be called on the event dispatch thread.
+	 *
+	 * @param inventory
+	 *            the Inventory to be searched.
+	 */
+	public SearchTableModel(Inventory inventory) {
+		super(inventory);
+	}
+
+	/**
+	 * This method changes the search term, cancels the search still running
+	 * for the previous term and starts a new one in the background. It must be
+	 * called on the event dispatch thread.
+	 *
+	 * @param searchTerm
+	 *            the text to be found in the searchable fields of items.
+	 */
+	public void setQuery(String searchTerm) {
+		String upperTerm = searchTerm.toUpperCase();
+		if (upperTerm.equals(query))
+			return;
+		if (worker != null)
+			worker.cancel(false);
+		query = upperTerm;
+		clearRows();
+		worker = new SearchWorker(upperTerm);
+		worker.execute();
+	}
+
+	@Override
+	protected boolean accepts(Item item) {
+		return query == null || TrigramIndex.matches(TrigramIndex.upperCase(item.getSearchFields()), query);
+	}
+}
@@ -0,0 +1,771 @@
+package hardware;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * This class is a snapshot of the domain data of the hardware store, which is
+ * saved in a compact, versioned binary file instead of with default Java
+ * serialization. The file starts with a magic number and a version, followed by
+ * sections which each carry their own length and CRC32 checksum, so that a
+ * damaged file is detected instead of loaded, and sections unknown to an older
+ * version can be skipped.
+ * <p>
+ * The items, users and transactions are each written as a run of sections,
+ * called segments, of at most SEGMENT_RECORDS records, so that a large store
+ * is read by decoding its segments in parallel on a fork-join pool, then
+ * adding them to the store in the order they were written. A file written
+ * with one section of each kind is read the same way, in fewer pieces.
+ * <p>
+ * A snapshot taken by freeze() is saved incrementally: its SnapshotLayout
+ * knows where each segment of the last saved file lies and which have changed
+ * since, and every unchanged segment is copied from that file as it is.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class Snapshot {
+	/**
+	 * This interface is told how far a snapshot has been read, so that the
+	 * items can be used before the users and transactions behind them in the
+	 * file have been read.
+	 */
+	public interface Progress {
+		/**
+		 * This method is called after each segment has been added.
+		 *
+		 * @param read
+		 *            the number of bytes of the file read so far.
+		 * @param length
+		 *            the length of the file.
+		 */
+		void bytesRead(long read, long length);
+
+		/**
+		 * This method is called once every Item has been read.
+		 */
+		void itemsRead();
+
+		/**
+		 * This method is called once every transaction has been read.
+		 */
+		void transactionsRead();
+
+		/**
+		 * This method is called once every User has been read.
+		 */
+		void usersRead();
+	}
+
+	private static class SectionBuffer extends DataOutputStream {
+		SectionBuffer() {
+			super(new ByteArrayOutputStream(1 << 16));
+		}
+
+		byte[] toByteArray() {
+			return ((ByteArrayOutputStream) out).toByteArray();
+		}
+	}
+
+	/**
+	 * This class is a decoded segment, waiting to be added to the store.
+	 */
+	private static class Segment {
+		int[] customerIDs, employeeIDs, itemKeys, quantities;
+		long end;
+		TrigramIndex.Segment index;
+		ArrayList<Item> items;
+		long journalSequence;
+		int nextUserID;
+		long[] times;
+		int transactionCount;
+		int type;
+		ArrayList<User> users;
+	}
+
+	/**
+	 * This class reads one segment of a file and decodes it, on any thread.
+	 */
+	private static class SegmentReader implements Callable<Segment> {
+		private final FileChannel channel;
+		private final String filename;
+		private final int length;
+		private final long position;
+		private final int type;
+
+		/**
+		 * @param position
+		 *            the position of the bytes of the segment, after its type
+		 *            and length.
+		 */
+		SegmentReader(FileChannel channel, String filename, int type, long position, int length) {
+			this.channel = channel;
+			this.filename = filename;
+			this.type = type;
+			this.position = position;
+			this.length = length;
+		}
+
+		@Override
+		public Segment call() throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(length + 4);
+			readFully(channel, buffer, position, filename);
+			CRC32 crc = new CRC32();
+			crc.update(buffer.array(), 0, length);
+			if ((int) crc.getValue() != buffer.getInt(length))
+				throw new IOException(filename + " is damaged, a section checksum does not match.");
+			buffer.flip().limit(length);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array(), 0, length));
+			Segment segment = new Segment();
+			segment.type = type;
+			segment.end = position + length + 4;
+			switch (type) {
+			case META:
+				segment.nextUserID = in.readInt();
+				// Files of version 1 end the section here.
+				if (length >= 12)
+					segment.journalSequence = in.readLong();
+				break;
+			case ITEMS:
+				int count = in.readInt();
+				segment.items = new ArrayList<Item>(count);
+				for (int x = 0; x < count; x++) {
+					segment.items.add(Item.read(in));
+				}
+				segment.index = new TrigramIndex.Segment(segment.items);
+				break;
+			case USERS:
+				count = in.readInt();
+				segment.users = new ArrayList<User>(count);
+				for (int x = 0; x < count; x++) {
+					segment.users.add(User.read(in));
+				}
+				break;
+			case TRANSACTIONS:
+				// A transaction is written as a long and four ints, in the
+				// byte order of DataOutput, which ByteBuffer also uses.
+				count = buffer.getInt();
+				if (count < 0 || count > (length - 4) / 24)
+					throw new IOException(filename + " is damaged, a section has too many transactions.");
+				segment.transactionCount = count;
+				segment.times = new long[count];
+				segment.itemKeys = new int[count];
+				segment.quantities = new int[count];
+				segment.customerIDs = new int[count];
+				segment.employeeIDs = new int[count];
+				for (int x = 0; x < count; x++) {
+					segment.times[x] = buffer.getLong();
+					segment.itemKeys[x] = buffer.getInt();
+					segment.quantities[x] = buffer.getInt();
+					segment.customerIDs[x] = buffer.getInt();
+					segment.employeeIDs[x] = buffer.getInt();
+				}
+				break;
+			}
+			return segment;
+		}
+	}
+
+	/**
+	 * This class writes the segments of a file, encoding each one or copying
+	 * it from the previous file, and keeps count of where each one lies.
+	 */
+	private static class SegmentWriter {
+		private long encoded = 0;
+		private final FileChannel file;
+		private final DataOutputStream out;
+		private long position = 8;
+		private final FileChannel previous;
+
+		SegmentWriter(FileOutputStream file, FileChannel previous) {
+			this.file = file.getChannel();
+			this.previous = previous;
+			out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+		}
+
+		/**
+		 * This method copies a segment of the previous file as it is, after
+		 * the bytes written so far.
+		 */
+		SnapshotLayout.Segment copy(SnapshotLayout.Segment segment) throws IOException {
+			out.flush();
+			for (long copied = 0; copied < segment.length;) {
+				long count = previous.transferTo(segment.position + copied, segment.length - copied, file);
+				if (count <= 0)
+					throw new EOFException("The previous snapshot file ends in the middle of a section.");
+				copied += count;
+			}
+			SnapshotLayout.Segment copy = new SnapshotLayout.Segment(segment.first, segment.count, position,
+					segment.length);
+			position += segment.length;
+			return copy;
+		}
+
+		SnapshotLayout.Segment end(byte type, int first, int count, SectionBuffer section) throws IOException {
+			byte[] bytes = section.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			out.writeByte(type);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			out.writeInt((int) crc.getValue());
+			SnapshotLayout.Segment segment = new SnapshotLayout.Segment(first, count, position, bytes.length + 9);
+			position += bytes.length + 9;
+			encoded += bytes.length + 9;
+			return segment;
+		}
+	}
+
+	private static final Logger LOGGER = Logger.getGlobal();
+	private static final int MAGIC = 0x48574442;
+	private static final byte META = 1, ITEMS = 2, USERS = 3, TRANSACTIONS = 4;
+	/**
+	 * The largest number of records written in one segment.
+	 */
+	public static final int SEGMENT_RECORDS = 1 << 16;
+	private static final int VERSION = 2;
+	/**
+	 * The items and users of the hardware store.
+	 */
+	public final Inventory inventory;
+	private final SnapshotLayout.Frozen frozen;
+	private final List<List<Item>> itemRuns;
+	/**
+	 * The sequence number of the last journal record which the snapshot holds,
+	 * so that replaying the journal skips it and every record before it.
+	 */
+	public final long journalSequence;
+	/**
+	 * The layout of the file, when the snapshot has been read from one or
+	 * will be saved incrementally, otherwise null.
+	 */
+	public final SnapshotLayout layout;
+	/**
+	 * The ID which will be given to the next new User.
+	 */
+	public final int nextUserID;
+	private final int transactionCount;
+	/**
+	 * The past transactions of the hardware store.
+	 */
+	public final TransactionLog transactions;
+	private final List<List<User>> userRuns;
+
+	/**
+	 * This constructor creates a snapshot of the given data, which is not copied.
+	 *
+	 * @param inventory
+	 *            the items and users of the hardware store.
+	 * @param transactions
+	 *            the past transactions of the hardware store.
+	 * @param nextUserID
+	 *            the ID which will be given to the next new User.
+	 */
+	public Snapshot(Inventory inventory, TransactionLog transactions, int nextUserID) {
+		this(inventory, transactions, nextUserID, 0);
+	}
+
+	/**
+	 * This constructor creates a snapshot of the given data, which is not
+	 * copied, holding the journal up to a record.
+	 *
+	 * @param inventory
+	 *            the items and users of the hardware store.
+	 * @param transactions
+	 *            the past transactions of the hardware store.
+	 * @param nextUserID
+	 *            the ID which will be given to the next new User.
+	 * @param journalSequence
+	 *            the sequence number of the last journal record which the data
+	 *            holds, or 0.
+	 */
+	public Snapshot(Inventory inventory, TransactionLog transactions, int nextUserID, long journalSequence) {
+		this(inventory, transactions, nextUserID, journalSequence, null, null, null, null, -1);
+	}
+
+	private Snapshot(Inventory inventory, TransactionLog transactions, int nextUserID, long journalSequence,
+			SnapshotLayout layout, SnapshotLayout.Frozen frozen, List<List<Item>> itemRuns,
+			List<List<User>> userRuns, int transactionCount) {
+		this.inventory = inventory;
+		this.transactions = transactions;
+		this.nextUserID = nextUserID;
+		this.journalSequence = journalSequence;
+		this.layout = layout;
+		this.frozen = frozen;
+		this.itemRuns = itemRuns;
+		this.userRuns = userRuns;
+		this.transactionCount = transactionCount;
+	}
+
+	/**
+	 * This method writes this snapshot to a temporary file, then renames it
+	 * over filename, so that a crash while saving leaves the old file intact.
+	 * A snapshot taken by freeze() copies each unchanged segment from the last
+	 * saved file instead of encoding it again, then updates its layout.
+	 *
+	 * @param filename
+	 *            the name of the snapshot file.
+	 * @return the number of bytes which were encoded, not counting the
+	 *         segments which were copied.
+	 * @throws IOException
+	 *             when the file cannot be written.
+	 */
+	public long write(String filename) throws IOException {
+		String temporaryFilename = filename + ".tmp";
+		List<SnapshotLayout.Segment> previousItems = Collections.emptyList(), previousUsers = previousItems,
+				previousTransactions = previousItems;
+		if (frozen != null) {
+			previousItems = frozen.items;
+			previousUsers = frozen.users;
+			previousTransactions = frozen.transactions;
+		}
+		ArrayList<SnapshotLayout.Segment> itemSegments = new ArrayList<SnapshotLayout.Segment>(),
+				userSegments = new ArrayList<SnapshotLayout.Segment>(),
+				transactionSegments = new ArrayList<SnapshotLayout.Segment>();
+		SegmentWriter writer;
+		try {
+			try (FileOutputStream file = new FileOutputStream(temporaryFilename);
+					FileChannel previous = frozen == null || frozen.filename == null ? null
+							: FileChannel.open(Paths.get(frozen.filename), StandardOpenOption.READ)) {
+				writer = new SegmentWriter(file, previous);
+				writer.out.writeInt(MAGIC);
+				writer.out.writeInt(VERSION);
+				SectionBuffer section = new SectionBuffer();
+				section.writeInt(nextUserID);
+				section.writeLong(journalSequence);
+				writer.end(META, 0, 1, section);
+				List<List<Item>> items = itemRuns != null ? itemRuns : Collections.singletonList(inventory.getItems());
+				for (int x = 0; x < items.size(); x++) {
+					List<Item> run = items.get(x);
+					if (run == null) {
+						itemSegments.add(writer.copy(previousItems.get(x)));
+						continue;
+					}
+					Iterator<Item> i = run.iterator();
+					for (int left = run.size(); left > 0; left -= SEGMENT_RECORDS) {
+						section = new SectionBuffer();
+						section.writeInt(Math.min(left, SEGMENT_RECORDS));
+						Item first = i.next();
+						first.write(section);
+						for (int y = 1; y < Math.min(left, SEGMENT_RECORDS); y++) {
+							i.next().write(section);
+						}
+						// The first segment of a run keeps the start of the
+						// range it covered, so that keys before it stay in it.
+						int firstKey = left == run.size() && x < previousItems.size() ? previousItems.get(x).first
+								: first.key;
+						itemSegments.add(writer.end(ITEMS, firstKey, Math.min(left, SEGMENT_RECORDS), section));
+					}
+				}
+				List<List<User>> users = userRuns != null ? userRuns : Collections.singletonList(inventory.getUsers());
+				for (int x = 0; x < users.size(); x++) {
+					List<User> run = users.get(x);
+					if (run == null) {
+						userSegments.add(writer.copy(previousUsers.get(x)));
+						continue;
+					}
+					Iterator<User> u = run.iterator();
+					for (int left = run.size(); left > 0; left -= SEGMENT_RECORDS) {
+						section = new SectionBuffer();
+						section.writeInt(Math.min(left, SEGMENT_RECORDS));
+						User first = u.next();
+						first.write(section);
+						for (int y = 1; y < Math.min(left, SEGMENT_RECORDS); y++) {
+							u.next().write(section);
+						}
+						int firstID = left == run.size() && x < previousUsers.size() ? previousUsers.get(x).first
+								: first.ID;
+						userSegments.add(writer.end(USERS, firstID, Math.min(left, SEGMENT_RECORDS), section));
+					}
+				}
+				int size = transactionCount >= 0 ? transactionCount : transactions.size();
+				TransactionLog.Cursor cursor = transactions.cursor();
+				for (int from = 0, x = 0; from < size; from += SEGMENT_RECORDS, x++) {
+					int to = Math.min(size, from + SEGMENT_RECORDS);
+					if (x < previousTransactions.size() && previousTransactions.get(x).first == from
+							&& previousTransactions.get(x).count == to - from) {
+						transactionSegments.add(writer.copy(previousTransactions.get(x)));
+						continue;
+					}
+					section = new SectionBuffer();
+					section.writeInt(to - from);
+					cursor.seek(from);
+					do {
+						section.writeLong(cursor.getTime());
+						section.writeInt(cursor.getItemKey());
+						section.writeInt(cursor.getQuantity());
+						section.writeInt(cursor.getCustomerID());
+						section.writeInt(cursor.getEmployeeID());
+					} while (cursor.next() && cursor.getIndex() < to);
+					transactionSegments.add(writer.end(TRANSACTIONS, from, to - from, section));
+				}
+				writer.out.flush();
+			}
+			Files.move(Paths.get(temporaryFilename), Paths.get(filename), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			if (layout != null)
+				layout.failed(frozen);
+			throw e;
+		}
+		if (layout != null)
+			layout.saved(filename, itemSegments, userSegments, transactionSegments);
+		return writer.encoded;
+	}
+
+	/**
+	 * This method takes a consistent copy of the store, to be written by
+	 * write() while the store goes on changing. It must be called while the
+	 * store does not change, and takes little time: the trees of items and
+	 * users are frozen, which copies nothing, and the number of transactions
+	 * is kept, since they are only appended. Only the items of the segments
+	 * which have changed since the file of layout was saved are copied, since
+	 * only those are encoded again, and their quantities may change meanwhile.
+	 *
+	 * @param inventory
+	 *            the items and users of the hardware store.
+	 * @param transactions
+	 *            the past transactions of the hardware store.
+	 * @param nextUserID
+	 *            the ID which will be given to the next new User.
+	 * @param journalSequence
+	 *            the value returned by Journal.mark() at the same time.
+	 * @param layout
+	 *            the layout of the last saved file, which follows inventory
+	 *            and will describe the file written by write().
+	 * @return the snapshot.
+	 */
+	public static Snapshot freeze(Inventory inventory, TransactionLog transactions, int nextUserID,
+			long journalSequence, SnapshotLayout layout) {
+		SnapshotLayout.Frozen frozen = layout.freeze();
+		if (frozen.filename != null && !new File(frozen.filename).isFile()) {
+			List<SnapshotLayout.Segment> none = Collections.emptyList();
+			frozen = new SnapshotLayout.Frozen(null, none, none, none, frozen.changedItems, frozen.changedUsers);
+		}
+		List<Item> items = inventory.getItems();
+		ArrayList<List<Item>> itemRuns = new ArrayList<List<Item>>();
+		for (int x = 0; x < Math.max(1, frozen.items.size()); x++) {
+			if (!frozen.items.isEmpty() && !frozen.changedItems.get(x)) {
+				itemRuns.add(null);
+				continue;
+			}
+			List<Item> run = items;
+			if (!frozen.items.isEmpty())
+				run = items.subList(lowerBoundOfItems(items, low(frozen.items, x)),
+						lowerBoundOfItems(items, high(frozen.items, x)));
+			ArrayList<Item> copies = new ArrayList<Item>(run.size());
+			for (Item i : run) {
+				copies.add(i.copy());
+			}
+			itemRuns.add(copies);
+		}
+		List<User> users = inventory.getUsers();
+		ArrayList<List<User>> userRuns = new ArrayList<List<User>>();
+		for (int x = 0; x < Math.max(1, frozen.users.size()); x++) {
+			if (frozen.users.isEmpty())
+				userRuns.add(users);
+			else if (!frozen.changedUsers.get(x))
+				userRuns.add(null);
+			else
+				userRuns.add(users.subList(lowerBoundOfUsers(users, low(frozen.users, x)),
+						lowerBoundOfUsers(users, high(frozen.users, x))));
+		}
+		return new Snapshot(inventory, transactions, nextUserID, journalSequence, layout, frozen, itemRuns, userRuns,
+				transactions.size());
+	}
+
+	/**
+	 * This method reads a snapshot from a file written by write(), decoding it
+	 * on as many threads as there are processors.
+	 *
+	 * @param filename
+	 *            the name of the snapshot file.
+	 * @return the snapshot read from the file.
+	 * @throws IOException
+	 *             when the file cannot be read, has an unsupported version or
+	 *             fails a checksum.
+	 */
+	public static Snapshot read(String filename) throws IOException {
+		return read(filename, new Inventory(), new TransactionLog(), null);
+	}
+
+	/**
+	 * This method reads a snapshot from a file written by write() into an
+	 * empty Inventory and TransactionLog, decoding it on as many threads as
+	 * there are processors.
+	 *
+	 * @param filename
+	 *            the name of the snapshot file.
+	 * @param inventory
+	 *            the empty Inventory to add the items and users to.
+	 * @param transactions
+	 *            the empty TransactionLog to append the transactions to.
+	 * @param progress
+	 *            the Progress to be told how far the file has been read, or
+	 *            null.
+	 * @return the snapshot read from the file, holding inventory and
+	 *         transactions.
+	 * @throws IOException
+	 *             when the file cannot be read, has an unsupported version or
+	 *             fails a checksum.
+	 */
+	public static Snapshot read(String filename, Inventory inventory, TransactionLog transactions,
+			Progress progress) throws IOException {
+		return read(filename, inventory, transactions, progress, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * This method reads a snapshot from a file written by write() into an
+	 * empty Inventory and TransactionLog, which may be used by other threads
+	 * while they are filled. Each segment is read and decoded as a task of a
+	 * fork-join pool, then the segments are added on the calling thread in the
+	 * order they were written: items, then users, then transactions. The pool
+	 * decodes at most as many segments ahead as it has threads, so that only
+	 * a few decoded segments are held at once.
+	 *
+	 * @param filename
+	 *            the name of the snapshot file.
+	 * @param inventory
+	 *            the empty Inventory to add the items and users to.
+	 * @param transactions
+	 *            the empty TransactionLog to append the transactions to.
+	 * @param progress
+	 *            the Progress to be told how far the file has been read, or
+	 *            null.
+	 * @param threads
+	 *            the number of threads of the pool, or 1 to decode the
+	 *            segments one at a time on the calling thread.
+	 * @return the snapshot read from the file, holding inventory and
+	 *         transactions.
+	 * @throws IOException
+	 *             when the file cannot be read, has an unsupported version or
+	 *             fails a checksum.
+	 */
+	public static Snapshot read(String filename, Inventory inventory, TransactionLog transactions,
+			Progress progress, int threads) throws IOException {
+		int nextUserID = 1;
+		long journalSequence = 0;
+		ArrayList<SnapshotLayout.Segment> itemSegments = new ArrayList<SnapshotLayout.Segment>(),
+				userSegments = new ArrayList<SnapshotLayout.Segment>(),
+				transactionSegments = new ArrayList<SnapshotLayout.Segment>();
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			long length = channel.size(), position = 8;
+			ByteBuffer header = ByteBuffer.allocate(8);
+			readFully(channel, header, 0, filename);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException(filename + " is not a snapshot file.");
+			int version = header.getInt(4);
+			if (version > VERSION)
+				throw new IOException(filename + " has version " + version + ", newer than " + VERSION + ".");
+			// Only the type and length before each segment are read here, to
+			// find where the next one starts; its checksum comes after it.
+			ArrayList<SegmentReader> readers = new ArrayList<SegmentReader>();
+			header = ByteBuffer.allocate(5);
+			while (position < length) {
+				header.clear();
+				readFully(channel, header, position, filename);
+				int type = header.get(0), sectionLength = header.getInt(1);
+				if (sectionLength < 0 || position + 5 + sectionLength + 4 > length)
+					throw new IOException(filename + " is damaged, a section runs past its end.");
+				readers.add(new SegmentReader(channel, filename, type, position + 5, sectionLength));
+				position += 5 + sectionLength + 4;
+			}
+			ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+			try {
+				// Only as many segments as the pool has threads are decoded
+				// ahead of the one being added, so that the decoded segments
+				// held at once do not grow with the file.
+				ArrayList<Future<Segment>> decoded = new ArrayList<Future<Segment>>();
+				ArrayList<Item> items = new ArrayList<Item>();
+				ArrayList<TrigramIndex.Segment> index = new ArrayList<TrigramIndex.Segment>();
+				int previousType = META;
+				for (int x = 0; x < readers.size(); x++) {
+					while (pool != null && decoded.size() < Math.min(readers.size(), x + 1 + threads)) {
+						decoded.add(pool.submit(readers.get(decoded.size())));
+					}
+					Segment segment = pool == null ? readers.get(x).call() : get(decoded.set(x, null));
+					long segmentPosition = readers.get(x).position - 5;
+					int segmentLength = readers.get(x).length + 9;
+					if (segment.type != previousType)
+						finish(previousType, inventory, items, index, progress);
+					previousType = segment.type;
+					switch (segment.type) {
+					case META:
+						nextUserID = segment.nextUserID;
+						journalSequence = segment.journalSequence;
+						break;
+					case ITEMS:
+						// The items are held back until their last segment, so
+						// that their tree is built in one pass.
+						items.addAll(segment.items);
+						index.add(segment.index);
+						if (!segment.items.isEmpty())
+							itemSegments.add(new SnapshotLayout.Segment(segment.items.get(0).key, segment.items.size(),
+									segmentPosition, segmentLength));
+						break;
+					case USERS:
+						for (User u : segment.users) {
+							inventory.addUser(u);
+						}
+						if (!segment.users.isEmpty())
+							userSegments.add(new SnapshotLayout.Segment(segment.users.get(0).ID, segment.users.size(),
+									segmentPosition, segmentLength));
+						break;
+					case TRANSACTIONS:
+						if (segment.transactionCount > 0)
+							transactionSegments.add(new SnapshotLayout.Segment(transactions.size(),
+									segment.transactionCount, segmentPosition, segmentLength));
+						transactions.append(segment.times, segment.itemKeys, segment.quantities, segment.customerIDs,
+								segment.employeeIDs, segment.transactionCount);
+						break;
+					default:
+						LOGGER.warning("Skipping unknown section " + segment.type + " of " + filename + ".");
+					}
+					if (progress != null)
+						progress.bytesRead(segment.end, length);
+				}
+				finish(previousType, inventory, items, index, progress);
+			} finally {
+				if (pool != null)
+					pool.shutdownNow();
+			}
+		}
+		SnapshotLayout layout = new SnapshotLayout(filename, ascending(itemSegments), ascending(userSegments),
+				transactionSegments);
+		return new Snapshot(inventory, transactions, nextUserID, journalSequence, layout, null, null, null, -1);
+	}
+
+	/**
+	 * @return segments, or no segments when they do not cover ascending ranges,
+	 *         so that everything is encoded again by the next save.
+	 */
+	private static List<SnapshotLayout.Segment> ascending(List<SnapshotLayout.Segment> segments) {
+		for (int x = 1; x < segments.size(); x++) {
+			if (segments.get(x).first <= segments.get(x - 1).first)
+				return Collections.emptyList();
+		}
+		return segments;
+	}
+
+	/**
+	 * This method is called when the segments of one type have all been read.
+	 * It adds the items, which are held back until then, and tells progress.
+	 */
+	private static void finish(int type, Inventory inventory, ArrayList<Item> items,
+			ArrayList<TrigramIndex.Segment> index, Progress progress) {
+		if (type == ITEMS) {
+			inventory.addLoadedItems(items, index);
+			items.clear();
+			index.clear();
+		}
+		if (progress == null)
+			return;
+		if (type == ITEMS)
+			progress.itemsRead();
+		else if (type == USERS)
+			progress.usersRead();
+		else if (type == TRANSACTIONS)
+			progress.transactionsRead();
+	}
+
+	/**
+	 * This method waits for a segment decoded by the pool, passing on the
+	 * IOException of its SegmentReader.
+	 */
+	private static Segment get(Future<Segment> decoded) throws IOException {
+		try {
+			return decoded.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while the snapshot was being read.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * @return the first key after the range covered by segment x.
+	 */
+	private static long high(List<SnapshotLayout.Segment> segments, int x) {
+		return x + 1 < segments.size() ? segments.get(x + 1).first : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return the first key of the range covered by segment x.
+	 */
+	private static long low(List<SnapshotLayout.Segment> segments, int x) {
+		return x == 0 ? Long.MIN_VALUE : segments.get(x).first;
+	}
+
+	/**
+	 * @return the index of the first Item of items which key is not less than
+	 *         key.
+	 */
+	private static int lowerBoundOfItems(List<Item> items, long key) {
+		int low = 0, high = items.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (items.get(middle).key < key)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * @return the index of the first User of users which ID is not less than
+	 *         id.
+	 */
+	private static int lowerBoundOfUsers(List<User> users, long id) {
+		int low = 0, high = users.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (users.get(middle).ID < id)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position, String filename)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException(filename + " ends in the middle of a section.");
+		}
+	}
+}
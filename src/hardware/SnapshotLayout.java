@@ -0,0 +1,277 @@
+package hardware;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class remembers where each segment of the last saved snapshot file
+ * lies, and follows an Inventory as a listener to mark the segments of items
+ * and users which have changed since, so that the next save copies every
+ * unchanged segment from the file as it is and encodes only the changed ones.
+ * <p>
+ * A segment of items covers a range of keys, from the key of its first Item up
+ * to the first key of the next segment, the first segment covering every
+ * smaller key too, so that a change is marked in the segment in which the
+ * Item is saved, or would be. Segments of users cover ranges of IDs the same
+ * way. Since transactions are only appended, a segment of transactions is
+ * copied whenever it still holds the same range of indexes.
+ * <p>
+ * Changes are marked on the threads which make them, sales among them, so
+ * marking takes no lock: the segments and the bits of the changed ones are
+ * kept together in an immutable State, and a bit is set with compare-and-set,
+ * only if it is not set already. A save replaces the State, and a change which
+ * finds it replaced while marking marks it again in the new one. A change
+ * made while the layout has no segments of its type, as while the first save
+ * of a store is written, marks every segment the save then writes.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class SnapshotLayout implements Inventory.Listener {
+	/**
+	 * This class is the layout as it was when a save began, with the segments
+	 * which had changed by then.
+	 */
+	static final class Frozen {
+		final BitSet changedItems, changedUsers;
+		final String filename;
+		final List<Segment> items, transactions, users;
+
+		Frozen(String filename, List<Segment> items, List<Segment> users, List<Segment> transactions,
+				BitSet changedItems, BitSet changedUsers) {
+			this.filename = filename;
+			this.items = items;
+			this.users = users;
+			this.transactions = transactions;
+			this.changedItems = changedItems;
+			this.changedUsers = changedUsers;
+		}
+	}
+
+	/**
+	 * This class is where one segment lies in the file.
+	 */
+	static final class Segment {
+		/**
+		 * The number of records in the segment.
+		 */
+		final int count;
+		/**
+		 * The key, ID or index of the first record of the segment.
+		 */
+		final int first;
+		/**
+		 * The length of the segment with its type, length and checksum.
+		 */
+		final int length;
+		/**
+		 * The position of the type of the segment.
+		 */
+		final long position;
+
+		Segment(int first, int count, long position, int length) {
+			this.first = first;
+			this.count = count;
+			this.position = position;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * This class is the layout of one saved file, with a bit for each of its
+	 * segments of items and users, set once the segment has changed, and a
+	 * flag for each type, set once it has changed while it had no segments.
+	 */
+	private static final class State {
+		volatile boolean allItemsChanged, allUsersChanged;
+		final AtomicLongArray changedItems, changedUsers;
+		final String filename;
+		final List<Segment> items, transactions, users;
+
+		State(String filename, List<Segment> items, List<Segment> users, List<Segment> transactions) {
+			this.filename = filename;
+			this.items = items;
+			this.users = users;
+			this.transactions = transactions;
+			changedItems = new AtomicLongArray(Math.max(1, (items.size() + 63) >>> 6));
+			changedUsers = new AtomicLongArray(Math.max(1, (users.size() + 63) >>> 6));
+		}
+	}
+
+	/**
+	 * The State, which only freeze(), saved() and failed() replace or change
+	 * other than by marking, one at a time.
+	 */
+	private volatile State state;
+
+	/**
+	 * This constructor creates the layout of a store which has not been saved
+	 * yet, so that everything is encoded by the first save.
+	 */
+	public SnapshotLayout() {
+		List<Segment> none = Collections.emptyList();
+		state = new State(null, none, none, none);
+	}
+
+	SnapshotLayout(String filename, List<Segment> items, List<Segment> users, List<Segment> transactions) {
+		state = new State(filename, items, users, transactions);
+	}
+
+	@Override
+	public void itemAdded(Item item) {
+		markItem(item.key);
+	}
+
+	@Override
+	public void itemChanged(Item item) {
+		markItem(item.key);
+	}
+
+	@Override
+	public void itemRemoved(Item item) {
+		markItem(item.key);
+	}
+
+	@Override
+	public void userAdded(User user) {
+		markUser(user.ID);
+	}
+
+	@Override
+	public void userReplaced(User user) {
+		markUser(user.ID);
+	}
+
+	/**
+	 * This method tells the layout that a save which began with frozen has
+	 * failed, so that its changed segments are still changed.
+	 */
+	synchronized void failed(Frozen frozen) {
+		State current = state;
+		for (int x = frozen.changedItems.nextSetBit(0); x >= 0; x = frozen.changedItems.nextSetBit(x + 1)) {
+			set(current.changedItems, x);
+		}
+		for (int x = frozen.changedUsers.nextSetBit(0); x >= 0; x = frozen.changedUsers.nextSetBit(x + 1)) {
+			set(current.changedUsers, x);
+		}
+	}
+
+	/**
+	 * This method is called when a save begins, while the store does not
+	 * change, and starts marking changes afresh.
+	 *
+	 * @return the layout of the last saved file, with the segments changed
+	 *         since it was saved.
+	 */
+	synchronized Frozen freeze() {
+		State frozen = state;
+		// Changes still being marked in the frozen State find it replaced and
+		// mark themselves again in the new one.
+		state = new State(frozen.filename, frozen.items, frozen.users, frozen.transactions);
+		return new Frozen(frozen.filename, frozen.items, frozen.users, frozen.transactions,
+				toBitSet(frozen.changedItems), toBitSet(frozen.changedUsers));
+	}
+
+	/**
+	 * This method replaces the layout by that of a newly saved file. The
+	 * changes marked since the save began are marked again in every new
+	 * segment which overlaps the old segment they were marked in, or in every
+	 * new segment if they were marked while there were no old segments.
+	 */
+	synchronized void saved(String filename, List<Segment> items, List<Segment> users, List<Segment> transactions) {
+		State previous = state, current = new State(filename, items, users, transactions);
+		// The new State is in place before the bits of the previous one are
+		// read, so that a change marked in the previous one too late to be
+		// read is marked again in the new one.
+		state = current;
+		if (previous.allItemsChanged)
+			setAll(current.changedItems, items.size());
+		else
+			remap(previous.items, toBitSet(previous.changedItems), items, current.changedItems);
+		if (previous.allUsersChanged)
+			setAll(current.changedUsers, users.size());
+		else
+			remap(previous.users, toBitSet(previous.changedUsers), users, current.changedUsers);
+	}
+
+	private void markItem(int key) {
+		State marked;
+		do {
+			marked = state;
+			if (marked.items.isEmpty())
+				marked.allItemsChanged = true;
+			else
+				set(marked.changedItems, indexOf(marked.items, key));
+		} while (state != marked);
+	}
+
+	private void markUser(int id) {
+		State marked;
+		do {
+			marked = state;
+			if (marked.users.isEmpty())
+				marked.allUsersChanged = true;
+			else
+				set(marked.changedUsers, indexOf(marked.users, id));
+		} while (state != marked);
+	}
+
+	/**
+	 * @return the index of the segment which covers key, which is 0 for any
+	 *         key before the second segment.
+	 */
+	static int indexOf(List<Segment> segments, long key) {
+		int low = 1, high = segments.size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (segments.get(middle).first <= key)
+				low = middle + 1;
+			else
+				high = middle - 1;
+		}
+		return low - 1;
+	}
+
+	private static void remap(List<Segment> from, BitSet changed, List<Segment> to, AtomicLongArray remapped) {
+		if (to.isEmpty())
+			return;
+		for (int x = changed.nextSetBit(0); x >= 0; x = changed.nextSetBit(x + 1)) {
+			long low = x == 0 ? Long.MIN_VALUE : from.get(x).first;
+			long high = x + 1 < from.size() ? from.get(x + 1).first : Long.MAX_VALUE;
+			for (int y = indexOf(to, low); y < to.size() && (y == 0 || to.get(y).first < high); y++) {
+				set(remapped, y);
+			}
+		}
+	}
+
+	/**
+	 * This method sets a bit with compare-and-set, writing nothing if it is
+	 * set already, as it is for most changes to a busy segment.
+	 */
+	private static void set(AtomicLongArray bits, int index) {
+		int word = index >>> 6;
+		long bit = 1L << index, value;
+		do {
+			value = bits.get(word);
+			if ((value & bit) != 0)
+				return;
+		} while (!bits.compareAndSet(word, value, value | bit));
+	}
+
+	private static void setAll(AtomicLongArray bits, int count) {
+		for (int x = 0; x < count; x++) {
+			set(bits, x);
+		}
+	}
+
+	private static BitSet toBitSet(AtomicLongArray bits) {
+		long[] words = new long[bits.length()];
+		for (int x = 0; x < words.length; x++) {
+			words[x] = bits.get(x);
+		}
+		return BitSet.valueOf(words);
+	}
+}
@@ -1,9 +1,10 @@
 package hardware;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.logging.Logger;
 
 /**
  * This class represents a record of a past transaction between a customer and
@@ -14,117 +15,99 @@ import java.util.logging.Logger;
  * @since 1.0
  */
 public class Transaction implements Serializable {
-	private static final Logger LOGGER = Logger.getGlobal();
 	private static final long serialVersionUID = -7056694461443042602L;
 	private Date date;
-	private final FormLine itemIDFormLine = new FormLine("Item ID",
-			"Please enter a valid item ID. (Refer to table for valid options)") {
-		private static final long serialVersionUID = -6786024040782492162L;
+	private int itemKey, quantity, customerID, employeeID;
 
-		@Override
-		protected boolean verify() {
-			for (Item i : items) {
-				if (i.ID.equals(getInput().toUpperCase()))
-					return true;
-			}
-			return false;
-		}
-	};
-	private final Form form = new Form(new FormLine[] { itemIDFormLine, new FormLine("Quantity",
-			"Please enter a positive integer quantity less than or equal to the remaining stock.") {
-		private static final long serialVersionUID = -2206426118718946096L;
+	/**
+	 * This constructor creates a record of a transaction. It does not change
+	 * the stock of the sold Item.
+	 * 
+	 * @param date
+	 *            the date of the sale.
+	 * @param itemKey
+	 *            the key of the sold Item, as packed by ItemIDCodec.
+	 * @param quantity
+	 *            the quantity of the Item which was sold.
+	 * @param customerID
+	 *            the ID of the Customer who bought the Item.
+	 * @param employeeID
+	 *            the ID of the Employee who sold the Item.
+	 */
+	public Transaction(Date date, int itemKey, int quantity, int customerID, int employeeID) {
+		this.date = date;
+		this.itemKey = itemKey;
+		this.quantity = quantity;
+		this.customerID = customerID;
+		this.employeeID = employeeID;
+	}
 
-		@Override
-		protected boolean verify() {
-			try {
-				Item matchedItem = null;
-				for (Item i : items) {
-					if (i.ID.equals(itemIDFormLine.getInput().toUpperCase()))
-						matchedItem = i;
-				}
-				int quantity = Integer.parseInt(getInput());
-				return quantity > 0 && matchedItem.quantity >= quantity;
-			} catch (Exception e) {
-				LOGGER.warning("User has not entered an int when int was expected.");
-				return false;
-			}
-		}
-	}, new FormLine("Customer ID", "Please enter a valid customer ID. (Refer to table for valid options)") {
-		private static final long serialVersionUID = 4100519412911479339L;
+	/**
+	 * This constructor reads a past transaction from a stream written by
+	 * write(), without changing any stock.
+	 * 
+	 * @param in
+	 *            the stream to read from.
+	 * @throws IOException
+	 *             when the stream cannot be read.
+	 */
+	Transaction(DataInput in) throws IOException {
+		date = new Date(in.readLong());
+		itemKey = in.readInt();
+		quantity = in.readInt();
+		customerID = in.readInt();
+		employeeID = in.readInt();
+	}
 
-		@Override
-		protected boolean verify() {
-			int input;
-			try {
-				input = Integer.parseInt(getInput());
-			} catch (Exception e) {
-				LOGGER.warning("User has not entered an int when int was expected.");
-				return false;
-			}
-			for (User u : users) {
-				if (u.ID == input && u instanceof Customer)
-					return true;
-			}
-			return false;
-		}
-	}, new FormLine("Employee ID", "Please enter a valid employee ID. (Refer to table for valid options)") {
-		private static final long serialVersionUID = 6012418387238609499L;
+	/**
+	 * @return the ID of the Customer who bought the Item.
+	 */
+	public int getCustomerID() {
+		return customerID;
+	}
 
-		@Override
-		protected boolean verify() {
-			int input;
-			try {
-				input = Integer.parseInt(getInput());
-			} catch (Exception e) {
-				LOGGER.warning("User has not entered an int when int was expected.");
-				return false;
-			}
-			for (User u : users) {
-				if (u.ID == input && u instanceof Employee)
-					return true;
-			}
-			return false;
-		}
-	} });
-	private String itemID;
-	private final ArrayList<Item> items;
-	private int quantity, customerID, employeeID;
-	private final ArrayList<User> users;
+	/**
+	 * @return the ID of the Employee who sold the Item.
+	 */
+	public int getEmployeeID() {
+		return employeeID;
+	}
 
 	/**
-	 * This constructor creates a new transaction.
-	 * 
-	 * @param items
-	 *            The ArrayList of items, same as held by Main.
-	 * @param users
-	 *            The ArrayList of users, same as held by Main.
-	 * @throws CancelException
-	 *             when the user selects "Cancel."
+	 * @return the key of the sold Item, as packed by ItemIDCodec.
+	 */
+	public int getItemKey() {
+		return itemKey;
+	}
+
+	/**
+	 * @return the quantity of the Item which was sold.
+	 */
+	public int getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * @return the time of the sale, in milliseconds since the epoch.
 	 */
-	public Transaction(ArrayList<Item> items, ArrayList<User> users) throws CancelException {
-		this.items = items;
-		this.users = users;
-		date = new Date();
-		String[] result = form.result();
-		itemID = result[0].toUpperCase();
-		quantity = Integer.parseInt(result[1]);
-		Item matchedItem = null;
-		for (Item i : items) {
-			if (i.ID.equals(itemID))
-				matchedItem = i;
-		}
-		matchedItem.quantity -= quantity;
-		customerID = Integer.parseInt(result[2]);
-		employeeID = Integer.parseInt(result[3]);
+	public long getTime() {
+		return date.getTime();
 	}
 
 	/**
-	 * This method calculates a String Array to be used in the creation of a
-	 * table row.
+	 * This method writes this Transaction in the compact binary form read by
+	 * Transaction(DataInput).
 	 * 
-	 * @return a representation of this object as an array of Strings.
+	 * @param out
+	 *            the stream to write to.
+	 * @throws IOException
+	 *             when the stream cannot be written.
 	 */
-	public Object[] toStringArray() {
-		return new String[] { itemID, date.toString(), quantity + "", customerID + "", employeeID + "" };
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(date.getTime());
+		out.writeInt(itemKey);
+		out.writeInt(quantity);
+		out.writeInt(customerID);
+		out.writeInt(employeeID);
 	}
 }
\ No newline at end of file
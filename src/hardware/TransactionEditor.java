@@ -0,0 +1,89 @@
+package hardware;
+
+import java.util.Date;
+import java.util.logging.Logger;
+
+/**
+ * This class creates new transactions from user input, validated against the
+ * items and users of an Inventory. Its form is created only while the user is
+ * filling it in, so that no Swing components are kept in the Transaction
+ * objects themselves.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class TransactionEditor {
+	private static final Logger LOGGER = Logger.getGlobal();
+
+	private TransactionEditor() {
+	}
+
+	/**
+	 * This method shows a form for a new transaction and uses the resulting
+	 * user input to create it. It does not change the stock of the sold Item.
+	 *
+	 * @param inventory
+	 *            The Inventory of items and users, same as held by Main.
+	 * @return the new Transaction object.
+	 * @throws CancelException
+	 *             when the user selects "Cancel."
+	 */
+	public static Transaction newTransaction(Inventory inventory) throws CancelException {
+		FormLine itemIDFormLine = new FormLine("Item ID",
+				"Please enter a valid item ID. (Refer to table for valid options)") {
+			private static final long serialVersionUID = -6786024040782492162L;
+
+			@Override
+			protected boolean verify() {
+				return inventory.hasItem(getInput());
+			}
+		};
+		String[] result = new Form(new FormLine[] { itemIDFormLine, new FormLine("Quantity",
+				"Please enter a positive integer quantity less than or equal to the remaining stock.") {
+			private static final long serialVersionUID = -2206426118718946096L;
+
+			@Override
+			protected boolean verify() {
+				try {
+					Item matchedItem = inventory.getItem(itemIDFormLine.getInput());
+					int quantity = Integer.parseInt(getInput());
+					return quantity > 0 && matchedItem.getQuantity() >= quantity;
+				} catch (Exception e) {
+					LOGGER.warning("User has not entered an int when int was expected.");
+					return false;
+				}
+			}
+		}, new FormLine("Customer ID", "Please enter a valid customer ID. (Refer to table for valid options)") {
+			private static final long serialVersionUID = 4100519412911479339L;
+
+			@Override
+			protected boolean verify() {
+				int input;
+				try {
+					input = Integer.parseInt(getInput());
+				} catch (Exception e) {
+					LOGGER.warning("User has not entered an int when int was expected.");
+					return false;
+				}
+				return inventory.getUser(input) instanceof Customer;
+			}
+		}, new FormLine("Employee ID", "Please enter a valid employee ID. (Refer to table for valid options)") {
+			private static final long serialVersionUID = 6012418387238609499L;
+
+			@Override
+			protected boolean verify() {
+				int input;
+				try {
+					input = Integer.parseInt(getInput());
+				} catch (Exception e) {
+					LOGGER.warning("User has not entered an int when int was expected.");
+					return false;
+				}
+				return inventory.getUser(input) instanceof Employee;
+			}
+		} }).resultOnce();
+		return new Transaction(new Date(), ItemIDCodec.encode(result[0]), Integer.parseInt(result[1]),
+				Integer.parseInt(result[2]), Integer.parseInt(result[3]));
+	}
+}
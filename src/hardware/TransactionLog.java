@@ -0,0 +1,550 @@
+package hardware;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is the append-only log of the past transactions of the hardware
+ * store. It is stored by column, in chunks of primitive arrays, so that a
+ * transaction takes 24 bytes and no object, and reads it back through its
+ * index. Every append is reported to the registered listeners, so that views
+ * can follow the log one row at a time.
+ * <p>
+ * When the log is given a directory for its history, each chunk is written
+ * there as fixed-width records once it is full, and read from then on through
+ * a memory-mapped view of the file, so that only the chunk being appended to
+ * is on the heap however long the history grows. The history file is only a
+ * place to keep the chunks off the heap: it always has the same name, and is
+ * cut to nothing when a log first uses it, so a file a crash left behind is
+ * reused instead of piling up. It is deleted when the program exits, and the
+ * transactions are saved in the snapshot and the journal as before. The file
+ * is locked while a log uses it, so a second log given the same directory
+ * keeps its history on the heap.
+ * <p>
+ * Appends are made one at a time or one batch at a time, and a reader which
+ * has seen size() may read any transaction below it from any thread.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class TransactionLog {
+	/**
+	 * This class reads the transactions of a log in order, or from any index,
+	 * straight from the chunk which holds them, mapped or on the heap, without
+	 * creating a Transaction or copying the records. A Cursor is used by one
+	 * thread at a time.
+	 */
+	public class Cursor {
+		private Chunk chunk;
+		private int index = -1, offset;
+
+		/**
+		 * @return the ID of the Customer who bought the Item.
+		 */
+		public int getCustomerID() {
+			return chunk.getCustomerID(offset);
+		}
+
+		/**
+		 * @return the ID of the Employee who sold the Item.
+		 */
+		public int getEmployeeID() {
+			return chunk.getEmployeeID(offset);
+		}
+
+		/**
+		 * @return the position of the transaction in the log.
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return the key of the sold Item, as packed by ItemIDCodec.
+		 */
+		public int getItemKey() {
+			return chunk.getItemKey(offset);
+		}
+
+		/**
+		 * @return the quantity of the Item which was sold.
+		 */
+		public int getQuantity() {
+			return chunk.getQuantity(offset);
+		}
+
+		/**
+		 * @return the time of the sale, in milliseconds since the epoch.
+		 */
+		public long getTime() {
+			return chunk.getTime(offset);
+		}
+
+		/**
+		 * This method moves to the next transaction.
+		 *
+		 * @return true, if there is one.
+		 */
+		public boolean next() {
+			return seek(index + 1);
+		}
+
+		/**
+		 * This method moves to a transaction.
+		 *
+		 * @param index
+		 *            the position of the transaction in the log.
+		 * @return true, if there is a transaction at that position.
+		 */
+		public boolean seek(int index) {
+			if (index < 0 || index >= size)
+				return false;
+			this.index = index;
+			chunk = chunks[index >>> CHUNK_BITS];
+			offset = index & CHUNK_MASK;
+			return true;
+		}
+	}
+
+	/**
+	 * This interface receives every append made to a TransactionLog, on the
+	 * thread which made it.
+	 */
+	public interface Listener {
+		/**
+		 * @param index
+		 *            the index of the Transaction which was appended. When a
+		 *            batch is appended, only the index of its last Transaction
+		 *            is reported.
+		 */
+		void transactionAppended(int index);
+	}
+
+	/**
+	 * This class holds CHUNK_SIZE transactions. It is never changed once it
+	 * is full, so a reader may keep using a chunk which has been replaced.
+	 */
+	private abstract static class Chunk {
+		abstract int getCustomerID(int offset);
+
+		abstract int getEmployeeID(int offset);
+
+		abstract int getItemKey(int offset);
+
+		abstract int getQuantity(int offset);
+
+		abstract long getTime(int offset);
+	}
+
+	private static class HeapChunk extends Chunk {
+		final int[] customerIDs = new int[CHUNK_SIZE], employeeIDs = new int[CHUNK_SIZE],
+				itemKeys = new int[CHUNK_SIZE], quantities = new int[CHUNK_SIZE];
+		final long[] times = new long[CHUNK_SIZE];
+
+		@Override
+		int getCustomerID(int offset) {
+			return customerIDs[offset];
+		}
+
+		@Override
+		int getEmployeeID(int offset) {
+			return employeeIDs[offset];
+		}
+
+		@Override
+		int getItemKey(int offset) {
+			return itemKeys[offset];
+		}
+
+		@Override
+		int getQuantity(int offset) {
+			return quantities[offset];
+		}
+
+		@Override
+		long getTime(int offset) {
+			return times[offset];
+		}
+	}
+
+	/**
+	 * This class reads the records of a chunk from the history file in place.
+	 * A record is the time, then the item key, quantity, customer ID and
+	 * employee ID, as written by Transaction.write().
+	 */
+	private static class MappedChunk extends Chunk {
+		private final ByteBuffer records;
+
+		MappedChunk(ByteBuffer records) {
+			this.records = records;
+		}
+
+		@Override
+		int getCustomerID(int offset) {
+			return records.getInt(offset * RECORD_BYTES + 16);
+		}
+
+		@Override
+		int getEmployeeID(int offset) {
+			return records.getInt(offset * RECORD_BYTES + 20);
+		}
+
+		@Override
+		int getItemKey(int offset) {
+			return records.getInt(offset * RECORD_BYTES + 8);
+		}
+
+		@Override
+		int getQuantity(int offset) {
+			return records.getInt(offset * RECORD_BYTES + 12);
+		}
+
+		@Override
+		long getTime(int offset) {
+			return records.getLong(offset * RECORD_BYTES);
+		}
+	}
+
+	private static final int CHUNK_BITS = 14;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final String HISTORY_FILENAME = "transactions.history";
+	private static final Logger LOGGER = Logger.getGlobal();
+	private static final int RECORD_BYTES = 24;
+	private volatile Chunk[] chunks = new Chunk[0];
+	private FileChannel history;
+	private File historyDirectory;
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	private volatile long mappedBytes = 0;
+	private volatile int size;
+	private HeapChunk tail;
+	private ByteBuffer writeBuffer;
+
+	/**
+	 * This constructor creates an empty log which is kept on the heap.
+	 */
+	public TransactionLog() {
+		this(null);
+	}
+
+	/**
+	 * This constructor creates an empty log which keeps its full chunks in a
+	 * memory-mapped history file.
+	 *
+	 * @param historyDirectory
+	 *            the directory in which the history file is created, or cut
+	 *            to nothing if it exists, when the first chunk is full, or null
+	 *            to keep the log on the heap.
+	 */
+	public TransactionLog(File historyDirectory) {
+		this.historyDirectory = historyDirectory;
+	}
+
+	/**
+	 * This method registers a Listener to be told about every later append.
+	 *
+	 * @param listener
+	 *            the Listener to be registered.
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * This method appends a transaction to the end of the log.
+	 *
+	 * @param time
+	 *            the time of the sale, in milliseconds since the epoch.
+	 * @param itemKey
+	 *            the key of the sold Item, as packed by ItemIDCodec.
+	 * @param quantity
+	 *            the quantity of the Item which was sold.
+	 * @param customerID
+	 *            the ID of the Customer who bought the Item.
+	 * @param employeeID
+	 *            the ID of the Employee who sold the Item.
+	 */
+	public synchronized void append(long time, int itemKey, int quantity, int customerID, int employeeID) {
+		int index = size, offset = index & CHUNK_MASK;
+		if (offset == 0)
+			addChunk();
+		tail.times[offset] = time;
+		tail.itemKeys[offset] = itemKey;
+		tail.quantities[offset] = quantity;
+		tail.customerIDs[offset] = customerID;
+		tail.employeeIDs[offset] = employeeID;
+		if (offset == CHUNK_MASK)
+			map(index >>> CHUNK_BITS);
+		size = index + 1;
+		for (Listener l : listeners) {
+			l.transactionAppended(index);
+		}
+	}
+
+	/**
+	 * This method appends a Transaction to the end of the log.
+	 *
+	 * @param transaction
+	 *            the Transaction to be appended.
+	 */
+	public void append(Transaction transaction) {
+		append(transaction.getTime(), transaction.getItemKey(), transaction.getQuantity(),
+				transaction.getCustomerID(), transaction.getEmployeeID());
+	}
+
+	/**
+	 * This method appends a batch of transactions to the end of the log at
+	 * once, and reports it to the listeners once.
+	 *
+	 * @param batch
+	 *            the transactions to be appended, in order.
+	 */
+	public synchronized void append(List<Transaction> batch) {
+		if (batch.isEmpty())
+			return;
+		int index = size;
+		for (Transaction transaction : batch) {
+			int offset = index & CHUNK_MASK;
+			if (offset == 0)
+				addChunk();
+			tail.times[offset] = transaction.getTime();
+			tail.itemKeys[offset] = transaction.getItemKey();
+			tail.quantities[offset] = transaction.getQuantity();
+			tail.customerIDs[offset] = transaction.getCustomerID();
+			tail.employeeIDs[offset] = transaction.getEmployeeID();
+			if (offset == CHUNK_MASK)
+				map(index >>> CHUNK_BITS);
+			index++;
+		}
+		size = index;
+		for (Listener l : listeners) {
+			l.transactionAppended(index - 1);
+		}
+	}
+
+	/**
+	 * This method appends a batch of transactions held by column to the end
+	 * of the log at once, copying whole runs of each column, and reports it to
+	 * the listeners once.
+	 *
+	 * @param times
+	 *            the times of the sales, in milliseconds since the epoch.
+	 * @param itemKeys
+	 *            the keys of the sold items, as packed by ItemIDCodec.
+	 * @param quantities
+	 *            the quantities which were sold.
+	 * @param customerIDs
+	 *            the IDs of the customers who bought the items.
+	 * @param employeeIDs
+	 *            the IDs of the employees who sold the items.
+	 * @param count
+	 *            the number of transactions, from the start of each column.
+	 */
+	public synchronized void append(long[] times, int[] itemKeys, int[] quantities, int[] customerIDs,
+			int[] employeeIDs, int count) {
+		if (count == 0)
+			return;
+		int index = size;
+		for (int from = 0; from < count;) {
+			int offset = index & CHUNK_MASK;
+			if (offset == 0)
+				addChunk();
+			int run = Math.min(count - from, CHUNK_SIZE - offset);
+			System.arraycopy(times, from, tail.times, offset, run);
+			System.arraycopy(itemKeys, from, tail.itemKeys, offset, run);
+			System.arraycopy(quantities, from, tail.quantities, offset, run);
+			System.arraycopy(customerIDs, from, tail.customerIDs, offset, run);
+			System.arraycopy(employeeIDs, from, tail.employeeIDs, offset, run);
+			if (offset + run == CHUNK_SIZE)
+				map(index >>> CHUNK_BITS);
+			from += run;
+			index += run;
+		}
+		size = index;
+		for (Listener l : listeners) {
+			l.transactionAppended(index - 1);
+		}
+	}
+
+	/**
+	 * This method reads a transaction in the form written by
+	 * Transaction.write() and appends it to the end of the log.
+	 *
+	 * @param in
+	 *            the stream to read from.
+	 * @throws IOException
+	 *             when the stream cannot be read.
+	 */
+	public void append(DataInput in) throws IOException {
+		append(in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+	}
+
+	/**
+	 * @return a new Cursor, before the first transaction.
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * @param index
+	 *            the position of the transaction in the log.
+	 * @return the ID of the Customer who bought the Item.
+	 */
+	public int getCustomerID(int index) {
+		checkIndex(index);
+		return chunks[index >>> CHUNK_BITS].getCustomerID(index & CHUNK_MASK);
+	}
+
+	/**
+	 * @param index
+	 *            the position of the transaction in the log.
+	 * @return the ID of the Employee who sold the Item.
+	 */
+	public int getEmployeeID(int index) {
+		checkIndex(index);
+		return chunks[index >>> CHUNK_BITS].getEmployeeID(index & CHUNK_MASK);
+	}
+
+	/**
+	 * @param index
+	 *            the position of the transaction in the log.
+	 * @return the key of the sold Item, as packed by ItemIDCodec.
+	 */
+	public int getItemKey(int index) {
+		checkIndex(index);
+		return chunks[index >>> CHUNK_BITS].getItemKey(index & CHUNK_MASK);
+	}
+
+	/**
+	 * @return the number of bytes of the log which are read from the history
+	 *         file instead of the heap.
+	 */
+	public long getMappedBytes() {
+		return mappedBytes;
+	}
+
+	/**
+	 * @param index
+	 *            the position of the transaction in the log.
+	 * @return the quantity of the Item which was sold.
+	 */
+	public int getQuantity(int index) {
+		checkIndex(index);
+		return chunks[index >>> CHUNK_BITS].getQuantity(index & CHUNK_MASK);
+	}
+
+	/**
+	 * @param index
+	 *            the position of the transaction in the log.
+	 * @return the time of the sale, in milliseconds since the epoch.
+	 */
+	public long getTime(int index) {
+		checkIndex(index);
+		return chunks[index >>> CHUNK_BITS].getTime(index & CHUNK_MASK);
+	}
+
+	/**
+	 * @return the number of transactions in the log.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * This method writes a transaction in the same form as Transaction.write(),
+	 * without creating a Transaction.
+	 *
+	 * @param index
+	 *            the position of the transaction in the log.
+	 * @param out
+	 *            the stream to write to.
+	 * @throws IOException
+	 *             when the stream cannot be written.
+	 */
+	public void write(int index, DataOutput out) throws IOException {
+		checkIndex(index);
+		Chunk chunk = chunks[index >>> CHUNK_BITS];
+		int offset = index & CHUNK_MASK;
+		out.writeLong(chunk.getTime(offset));
+		out.writeInt(chunk.getItemKey(offset));
+		out.writeInt(chunk.getQuantity(offset));
+		out.writeInt(chunk.getCustomerID(offset));
+		out.writeInt(chunk.getEmployeeID(offset));
+	}
+
+	private void addChunk() {
+		tail = new HeapChunk();
+		Chunk[] added = Arrays.copyOf(chunks, chunks.length + 1);
+		added[added.length - 1] = tail;
+		chunks = added;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+	}
+
+	/**
+	 * This method writes a full chunk to the history file and replaces it by
+	 * a view of the file, unless the log is kept on the heap. When the file
+	 * cannot be written, the log stays on the heap from then on.
+	 */
+	private void map(int chunk) {
+		if (historyDirectory == null)
+			return;
+		try {
+			if (history == null) {
+				File file = new File(historyDirectory, HISTORY_FILENAME);
+				FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.READ, StandardOpenOption.WRITE);
+				FileLock lock;
+				try {
+					lock = channel.tryLock();
+				} catch (OverlappingFileLockException e) {
+					lock = null;
+				}
+				if (lock == null) {
+					channel.close();
+					throw new IOException(file + " is in use by another log.");
+				}
+				// The lock is released when the channel is closed, at exit.
+				channel.truncate(0);
+				file.deleteOnExit();
+				history = channel;
+				writeBuffer = ByteBuffer.allocateDirect(CHUNK_SIZE * RECORD_BYTES);
+			}
+			writeBuffer.clear();
+			for (int x = 0; x < CHUNK_SIZE; x++) {
+				writeBuffer.putLong(tail.times[x]).putInt(tail.itemKeys[x]).putInt(tail.quantities[x])
+						.putInt(tail.customerIDs[x]).putInt(tail.employeeIDs[x]);
+			}
+			writeBuffer.flip();
+			long position = (long) chunk * CHUNK_SIZE * RECORD_BYTES;
+			while (writeBuffer.hasRemaining()) {
+				history.write(writeBuffer, position + writeBuffer.position());
+			}
+			ByteBuffer records = history.map(FileChannel.MapMode.READ_ONLY, position, CHUNK_SIZE * RECORD_BYTES);
+			Chunk[] mapped = chunks.clone();
+			mapped[chunk] = new MappedChunk(records);
+			chunks = mapped;
+			mappedBytes += CHUNK_SIZE * RECORD_BYTES;
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Problem writing the transaction history, keeping it on the heap.", e);
+			historyDirectory = null;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package hardware;
+
+import java.util.Date;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class is a live table model of a TransactionLog. Since the log is only
+ * appended to, the model reads each cell straight from the columns of the log
+ * and only keeps count of how many appends it has told its table about.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class TransactionTableModel extends AbstractTableModel implements TransactionLog.Listener {
+	private static final String[] COLUMNS = { "Item ID", "Sale Date", "Quantity", "Customer ID", "Employee ID" };
+	private static final long serialVersionUID = -2944467703297862785L;
+	private final TransactionLog log;
+	private int rowCount;
+
+	/**
+	 * This constructor creates a model of log and registers it to follow every
+	 * later append. It must be called on the event dispatch thread.
+	 *
+	 * @param log
+	 *            the TransactionLog to be followed.
+	 */
+	public TransactionTableModel(TransactionLog log) {
+		this.log = log;
+		// Following before reading means that an append made meanwhile by
+		// another thread is told about twice rather than never.
+		log.addListener(this);
+		rowCount = log.size();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMNS.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return COLUMNS[column];
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		switch (column) {
+		case 0:
+			return ItemIDCodec.decode(log.getItemKey(row));
+		case 1:
+			return new Date(log.getTime(row)).toString();
+		case 2:
+			return Integer.toString(log.getQuantity(row));
+		case 3:
+			return Integer.toString(log.getCustomerID(row));
+		default:
+			return Integer.toString(log.getEmployeeID(row));
+		}
+	}
+
+	@Override
+	public void transactionAppended(int index) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (index >= rowCount) {
+					int first = rowCount;
+					rowCount = index + 1;
+					fireTableRowsInserted(first, index);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,388 @@
+package hardware;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is an inverted index from the upper case trigrams of the
+ * searchable fields of items to the sorted keys of the items which contain
+ * them. A substring query is answered by intersecting the posting lists of its
+ * trigrams, then checking the few remaining candidates, instead of scanning
+ * every item. It follows an Inventory as a listener, so that it is updated
+ * incrementally. The lock is only held while the candidates are found, not
+ * while they are checked and passed on, so a slow reader of the results does
+ * not hold up changes to the Inventory.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class TrigramIndex implements Inventory.Listener {
+	/**
+	 * This interface receives the matches of a search one at a time, in ID
+	 * order, so that they can be shown before the search has finished.
+	 */
+	public interface Results {
+		/**
+		 * @param item
+		 *            the Item which matched.
+		 * @return true to keep searching, false to stop the search.
+		 */
+		boolean found(Item item);
+	}
+
+	private static class Postings {
+		int[] keys = new int[4];
+		int size;
+
+		void add(int key) {
+			if (size == keys.length)
+				keys = Arrays.copyOf(keys, size * 2);
+			if (size == 0 || key > keys[size - 1]) {
+				keys[size++] = key;
+				return;
+			}
+			int index = Arrays.binarySearch(keys, 0, size, key);
+			if (index >= 0)
+				return;
+			index = -index - 1;
+			System.arraycopy(keys, index, keys, index + 1, size - index);
+			keys[index] = key;
+			size++;
+		}
+
+		/**
+		 * This method appends every key of other, which must all be greater
+		 * than the keys already held.
+		 */
+		void addAll(Postings other) {
+			if (size + other.size > keys.length)
+				keys = Arrays.copyOf(keys, Math.max(size + other.size, size * 2));
+			System.arraycopy(other.keys, 0, keys, size, other.size);
+			size += other.size;
+		}
+
+		void remove(int key) {
+			int index = Arrays.binarySearch(keys, 0, size, key);
+			if (index < 0)
+				return;
+			System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+			size--;
+		}
+	}
+
+	/**
+	 * This class is the index of a run of items in ascending key order, built
+	 * apart from any TrigramIndex, so that the runs of a large store being
+	 * loaded can be indexed on several threads at once, then merged in order
+	 * by addSegments() without finding a trigram twice.
+	 */
+	static final class Segment {
+		private final String[][] fields;
+		private final Postings keys = new Postings();
+		private final HashMap<Long, Postings> postings = new HashMap<Long, Postings>();
+
+		/**
+		 * @param items
+		 *            the items to be indexed, in ascending key order.
+		 */
+		Segment(List<Item> items) {
+			fields = new String[items.size()][];
+			for (int x = 0; x < fields.length; x++) {
+				Item item = items.get(x);
+				fields[x] = upperCase(item.getSearchFields());
+				keys.add(item.key);
+				addPostings(item.key, fields[x], postings);
+			}
+		}
+	}
+
+	private final Postings allKeys = new Postings();
+	private final ConcurrentHashMap<Integer, String[]> fieldsByKey = new ConcurrentHashMap<Integer, String[]>();
+	private final Inventory inventory;
+	private final HashMap<Long, Postings> postings = new HashMap<Long, Postings>();
+
+	/**
+	 * This constructor indexes every item of inventory. It does not register
+	 * the index as a listener, which is left to the Inventory.
+	 *
+	 * @param inventory
+	 *            the Inventory to be indexed.
+	 */
+	public TrigramIndex(Inventory inventory) {
+		this.inventory = inventory;
+		for (Item i : inventory.getItems()) {
+			index(i.key, upperCase(i.getSearchFields()));
+		}
+	}
+
+	/**
+	 * This method adds the items of segments, which were built from items
+	 * being added to the Inventory in ascending key order. When their keys
+	 * follow every key already indexed, the posting lists of each segment are
+	 * appended to the existing ones; otherwise the items are indexed one at a
+	 * time.
+	 *
+	 * @param segments
+	 *            the segments to be added, in order.
+	 */
+	synchronized void addSegments(List<Segment> segments) {
+		for (Segment segment : segments) {
+			Postings keys = segment.keys;
+			if (keys.size == 0)
+				continue;
+			if (allKeys.size > 0 && keys.keys[0] <= allKeys.keys[allKeys.size - 1]) {
+				for (int x = 0; x < keys.size; x++) {
+					index(keys.keys[x], segment.fields[x]);
+				}
+				continue;
+			}
+			allKeys.addAll(keys);
+			for (int x = 0; x < keys.size; x++) {
+				fieldsByKey.put(keys.keys[x], segment.fields[x]);
+			}
+			for (Map.Entry<Long, Postings> entry : segment.postings.entrySet()) {
+				Postings p = postings.get(entry.getKey());
+				if (p == null)
+					postings.put(entry.getKey(), entry.getValue());
+				else
+					p.addAll(entry.getValue());
+			}
+		}
+	}
+
+	@Override
+	public synchronized void itemAdded(Item item) {
+		index(item.key, upperCase(item.getSearchFields()));
+	}
+
+	/**
+	 * Every sale reports its Item as changed, though only its quantity has, so
+	 * its fields are compared with the indexed ones before being upper-cased.
+	 */
+	@Override
+	public void itemChanged(Item item) {
+		String[] fields = item.getSearchFields();
+		if (equalsIgnoringCase(fields, fieldsByKey.get(item.key)))
+			return;
+		fields = upperCase(fields);
+		synchronized (this) {
+			if (fieldsByKey.containsKey(item.key)) {
+				unindex(item.key);
+				index(item.key, fields);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void itemRemoved(Item item) {
+		unindex(item.key);
+	}
+
+	@Override
+	public void userAdded(User user) {
+	}
+
+	@Override
+	public void userReplaced(User user) {
+	}
+
+	/**
+	 * This method finds the items which have a searchable field containing the
+	 * query, ignoring case. Queries shorter than a trigram fall back to
+	 * checking every item.
+	 *
+	 * @param query
+	 *            the text to be found.
+	 * @return the matching items, in ID order.
+	 */
+	public ArrayList<Item> search(String query) {
+		ArrayList<Item> list = new ArrayList<Item>();
+		search(query, new Results() {
+			@Override
+			public boolean found(Item item) {
+				return list.add(item);
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * This method passes the items which have a searchable field containing
+	 * the query, ignoring case, to results as soon as each is found, until
+	 * results asks to stop.
+	 *
+	 * @param query
+	 *            the text to be found.
+	 * @param results
+	 *            the receiver of the matching items, in ID order.
+	 */
+	public void search(String query, Results results) {
+		String upperQuery = query.toUpperCase();
+		int[] candidates = candidates(upperQuery);
+		for (int key : candidates) {
+			if (matches(fieldsByKey.get(key), upperQuery)) {
+				Item item = inventory.getItem(key);
+				if (item != null && !results.found(item))
+					return;
+			}
+		}
+	}
+
+	/**
+	 * This method copies out the keys of the items which contain every trigram
+	 * of the query, so that they can be checked without holding the lock.
+	 */
+	private synchronized int[] candidates(String upperQuery) {
+		if (upperQuery.length() < 3)
+			return Arrays.copyOf(allKeys.keys, allKeys.size);
+		HashSet<Long> trigrams = new HashSet<Long>();
+		addTrigrams(upperQuery, trigrams);
+		Postings[] lists = new Postings[trigrams.size()];
+		int listCount = 0;
+		for (Long trigram : trigrams) {
+			Postings p = postings.get(trigram);
+			if (p == null)
+				return new int[0];
+			lists[listCount++] = p;
+		}
+		Arrays.sort(lists, new Comparator<Postings>() {
+			@Override
+			public int compare(Postings p1, Postings p2) {
+				return Integer.compare(p1.size, p2.size);
+			}
+		});
+		int[] candidates = Arrays.copyOf(lists[0].keys, lists[0].size);
+		int candidateCount = candidates.length;
+		for (int x = 1; x < lists.length && candidateCount > 0; x++) {
+			candidateCount = intersect(candidates, candidateCount, lists[x]);
+		}
+		return Arrays.copyOf(candidates, candidateCount);
+	}
+
+	private void index(int key, String[] fields) {
+		allKeys.add(key);
+		fieldsByKey.put(key, fields);
+		addPostings(key, fields, postings);
+	}
+
+	private void unindex(int key) {
+		String[] fields = fieldsByKey.remove(key);
+		if (fields == null)
+			return;
+		allKeys.remove(key);
+		HashSet<Long> trigrams = new HashSet<Long>();
+		for (String field : fields) {
+			addTrigrams(field, trigrams);
+		}
+		for (Long trigram : trigrams) {
+			Postings p = postings.get(trigram);
+			p.remove(key);
+			if (p.size == 0)
+				postings.remove(trigram);
+		}
+	}
+
+	/**
+	 * This method adds key to the posting list of every trigram of fields.
+	 */
+	private static void addPostings(int key, String[] fields, HashMap<Long, Postings> postings) {
+		HashSet<Long> trigrams = new HashSet<Long>();
+		for (String field : fields) {
+			addTrigrams(field, trigrams);
+		}
+		for (Long trigram : trigrams) {
+			Postings p = postings.get(trigram);
+			if (p == null) {
+				p = new Postings();
+				postings.put(trigram, p);
+			}
+			p.add(key);
+		}
+	}
+
+	/**
+	 * This method packs each trigram of text into a long, 21 bits a character,
+	 * so that the characters do not overlap in Long.hashCode() and common
+	 * trigrams do not collide in the postings map.
+	 */
+	private static void addTrigrams(String text, HashSet<Long> trigrams) {
+		for (int x = 0; x + 3 <= text.length(); x++) {
+			trigrams.add(((long) text.charAt(x) << 42) | ((long) text.charAt(x + 1) << 21) | text.charAt(x + 2));
+		}
+	}
+
+	/**
+	 * @return true, if indexed holds as many fields as fields, each differing
+	 *         from its counterpart at most in case.
+	 */
+	private static boolean equalsIgnoringCase(String[] fields, String[] indexed) {
+		if (indexed == null || indexed.length != fields.length)
+			return false;
+		for (int x = 0; x < fields.length; x++) {
+			if (!fields[x].equalsIgnoreCase(indexed[x]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This method keeps only the candidates which are also in p. Both lists
+	 * are sorted, so each candidate is searched for only after the previous
+	 * one.
+	 */
+	private static int intersect(int[] candidates, int candidateCount, Postings p) {
+		int kept = 0, from = 0;
+		for (int x = 0; x < candidateCount; x++) {
+			int index = Arrays.binarySearch(p.keys, from, p.size, candidates[x]);
+			if (index >= 0) {
+				candidates[kept++] = candidates[x];
+				from = index + 1;
+			} else {
+				from = -index - 1;
+				if (from == p.size)
+					break;
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * This method tells whether any of the upper case fields contains the
+	 * upper case query.
+	 *
+	 * @param fields
+	 *            the upper case searchable fields of an Item.
+	 * @param upperQuery
+	 *            the upper case query.
+	 * @return true, if a field contains the query.
+	 */
+	static boolean matches(String[] fields, String upperQuery) {
+		if (fields == null)
+			return false;
+		for (String field : fields) {
+			if (field.contains(upperQuery))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param fields
+	 *            the fields to be converted.
+	 * @return a new array of the fields in upper case.
+	 */
+	static String[] upperCase(String[] fields) {
+		String[] value = new String[fields.length];
+		for (int x = 0; x < fields.length; x++) {
+			value[x] = fields[x].toUpperCase();
+		}
+		return value;
+	}
+}
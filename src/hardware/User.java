@@ -1,9 +1,13 @@
 package hardware;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
  * This abstract class represents the information basal to both User subclasses.
+ * Users are plain data, they are created and edited through UserEditor.
  * 
  * @author Peter Wesley Hutcheson
  * @version 1.0
@@ -11,27 +15,6 @@ import java.io.Serializable;
  */
 public abstract class User implements Serializable, Comparable<User> {
 	private static final long serialVersionUID = -6645417989631435674L;
-	private static final ClassQueryDialog WHICH_CLASS = new ClassQueryDialog("Employee", "Customer");
-	/**
-	 * These FormLine objects are initialized and used in forms for both
-	 * subclasses.
-	 */
-	protected final FormLine[] basicLines = {
-			new FormLine("First Name", "Please enter a name with at least 1 character.") {
-				private static final long serialVersionUID = -3334071895206549038L;
-
-				@Override
-				protected boolean verify() {
-					return getInput().length() > 0;
-				}
-			}, new FormLine("Last Name", "Please enter a name with at least 1 character.") {
-				private static final long serialVersionUID = 1841496380608411639L;
-
-				@Override
-				protected boolean verify() {
-					return getInput().length() > 0;
-				}
-			} };
 	/**
 	 * This string represents the user's first name.
 	 */
@@ -45,6 +28,37 @@ public abstract class User implements Serializable, Comparable<User> {
 	 */
 	protected int ID;
 
+	/**
+	 * This constructor initializes the fields basal to both User subclasses.
+	 * 
+	 * @param id
+	 *            the user's ID number.
+	 * @param firstName
+	 *            the user's first name.
+	 * @param lastName
+	 *            the user's last name.
+	 */
+	protected User(int id, String firstName, String lastName) {
+		ID = id;
+		this.firstName = firstName;
+		this.lastName = lastName;
+	}
+
+	/**
+	 * This constructor reads the fields basal to both User subclasses from a
+	 * stream written by write().
+	 * 
+	 * @param in
+	 *            the stream to read from.
+	 * @throws IOException
+	 *             when the stream cannot be read.
+	 */
+	protected User(DataInput in) throws IOException {
+		ID = in.readInt();
+		firstName = in.readUTF();
+		lastName = in.readUTF();
+	}
+
 	/**
 	 * This method helps to sort users by their ID number.
 	 * 
@@ -78,18 +92,46 @@ public abstract class User implements Serializable, Comparable<User> {
 	}
 
 	/**
-	 * This method constructs a new User object with a type determined by the
-	 * user input from a ClassQueryDialog object.
+	 * This method checks the fields of a new or updated User against the rules
+	 * of the user forms.
 	 * 
-	 * @param id
-	 *            The User ID for the new User object.
-	 * @return The generated User object.
-	 * @throws CancelException
-	 *             When the user presses "Cancel."
+	 * @throws ValidationException
+	 *             when a field breaks a rule.
+	 */
+	void validate() throws ValidationException {
+		if (firstName == null || firstName.length() == 0 || lastName == null || lastName.length() == 0)
+			throw new ValidationException("Please enter a name with at least 1 character.");
+	}
+
+	/**
+	 * This method writes this User in the compact binary form read by
+	 * User.read(), preceded by a flag telling which subclass it is.
+	 * 
+	 * @param out
+	 *            the stream to write to.
+	 * @throws IOException
+	 *             when the stream cannot be written.
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeBoolean(this instanceof Employee);
+		out.writeInt(ID);
+		out.writeUTF(firstName);
+		out.writeUTF(lastName);
+	}
+
+	/**
+	 * This method reads a User of the right subclass from a stream written by
+	 * write().
+	 * 
+	 * @param in
+	 *            the stream to read from.
+	 * @return the resulting User object.
+	 * @throws IOException
+	 *             when the stream cannot be read.
 	 */
-	public static User newUser(int id) throws CancelException {
-		if (WHICH_CLASS.isClass1())
-			return new Employee(id);
-		return new Customer(id);
+	public static User read(DataInput in) throws IOException {
+		if (in.readBoolean())
+			return new Employee(in);
+		return new Customer(in);
 	}
 }
\ No newline at end of file
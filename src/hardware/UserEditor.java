@@ -0,0 +1,136 @@
+package hardware;
+
+import java.util.logging.Logger;
+
+/**
+ * This class creates and updates users from user input. Its forms are created
+ * only while the user is filling them in, so that no Swing components are kept
+ * in the User objects themselves.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class UserEditor {
+	private static final Logger LOGGER = Logger.getGlobal();
+	private static final ClassQueryDialog WHICH_CLASS = new ClassQueryDialog("Employee", "Customer");
+
+	private UserEditor() {
+	}
+
+	/**
+	 * This method shows a form initialized with the values of an existing User
+	 * and uses the resulting user input to create its replacement.
+	 *
+	 * @param user
+	 *            the User to be updated.
+	 * @return a new User object of the same class and with the same ID.
+	 * @throws CancelException
+	 *             when the user presses "Cancel."
+	 */
+	public static User edit(User user) throws CancelException {
+		String[] userStringArray = user.toStringArray();
+		String[] initializationVector = new String[userStringArray.length - 1];
+		for (int x = 1; x < userStringArray.length; x++) {
+			initializationVector[x - 1] = userStringArray[x];
+		}
+		if (user instanceof Employee)
+			return newEmployee(user.ID, initializationVector);
+		return newCustomer(user.ID, initializationVector);
+	}
+
+	/**
+	 * This method constructs a new User object with a type determined by the
+	 * user input from a ClassQueryDialog object, then filled in by the user in
+	 * a form.
+	 *
+	 * @param id
+	 *            The User ID for the new User object.
+	 * @return The generated User object.
+	 * @throws CancelException
+	 *             When the user presses "Cancel."
+	 */
+	public static User newUser(int id) throws CancelException {
+		if (WHICH_CLASS.isClass1())
+			return newEmployee(id, null);
+		return newCustomer(id, null);
+	}
+
+	/**
+	 * This method creates the FormLine objects required by the forms of both
+	 * User subclasses.
+	 *
+	 * @return the first and last name FormLine objects.
+	 */
+	private static FormLine[] basicLines() {
+		return new FormLine[] { new FormLine("First Name", "Please enter a name with at least 1 character.") {
+			private static final long serialVersionUID = -3334071895206549038L;
+
+			@Override
+			protected boolean verify() {
+				return getInput().length() > 0;
+			}
+		}, new FormLine("Last Name", "Please enter a name with at least 1 character.") {
+			private static final long serialVersionUID = 1841496380608411639L;
+
+			@Override
+			protected boolean verify() {
+				return getInput().length() > 0;
+			}
+		} };
+	}
+
+	private static Customer newCustomer(int id, String[] initializationVector) throws CancelException {
+		FormLine[] basicLines = basicLines();
+		Form form = new Form(new FormLine[] { basicLines[0], basicLines[1],
+				new FormLine("Phone Number", "Please enter a phone number in the format \"XXX-XXX-XXXX\"") {
+					private static final long serialVersionUID = -5844465642452454033L;
+
+					@Override
+					protected boolean verify() {
+						return Customer.isValidPhone(getInput());
+					}
+				}, new FormLine("Address", "Please enter an address with at least 1 character.") {
+					private static final long serialVersionUID = 9167400530254009190L;
+
+					@Override
+					protected boolean verify() {
+						return getInput().length() > 0;
+					}
+				} });
+		if (initializationVector != null)
+			form.initialize(initializationVector);
+		String[] result = form.resultOnce();
+		return new Customer(id, result[0], result[1], result[2], result[3]);
+	}
+
+	private static Employee newEmployee(int id, String[] initializationVector) throws CancelException {
+		FormLine[] basicLines = basicLines();
+		Form form = new Form(new FormLine[] { basicLines[0], basicLines[1],
+				new FormLine("SSN", "Please enter a 9 digit integer.") {
+					private static final long serialVersionUID = 4905308045461775352L;
+
+					@Override
+					protected boolean verify() {
+						return getInput().matches("\\d{9}");
+					}
+				}, new FormLine("Salary", "Please enter a number for the salary.") {
+					private static final long serialVersionUID = -7256671107552664565L;
+
+					@Override
+					protected boolean verify() {
+						try {
+							Float.parseFloat(getInput());
+						} catch (Exception e) {
+							LOGGER.warning("User has not entered a float when float was expected.");
+							return false;
+						}
+						return true;
+					}
+				} });
+		if (initializationVector != null)
+			form.initialize(initializationVector);
+		String[] result = form.resultOnce();
+		return new Employee(id, result[0], result[1], Integer.parseInt(result[2]), Float.parseFloat(result[3]));
+	}
+}
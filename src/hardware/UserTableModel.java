@@ -0,0 +1,92 @@
+package hardware;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class is a live table model of the users of an Inventory, in ID order.
+ * It keeps its own sorted tree of rows on the event dispatch thread and patches
+ * it one row at a time as the Inventory changes, instead of being rebuilt.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class UserTableModel extends AbstractTableModel implements Inventory.Listener {
+	private static final String[] COLUMNS = { "ID", "First Name", "Last Name", "Phone #/SSN", "Address/Salary" };
+	private static final long serialVersionUID = 6085245920357126718L;
+	private final RankedTree<User> rows = new RankedTree<User>();
+
+	/**
+	 * This constructor creates a model of the users of inventory and registers
+	 * it to follow every later change. It must be called on the event dispatch
+	 * thread.
+	 *
+	 * @param inventory
+	 *            the Inventory to be followed.
+	 */
+	public UserTableModel(Inventory inventory) {
+		// Following before reading means that a User added meanwhile by
+		// another thread is told about twice rather than never.
+		inventory.addListener(this);
+		for (User u : inventory.getUsers()) {
+			rows.insert(u);
+		}
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMNS.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return COLUMNS[column];
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		User u = rows.get(row);
+		String[] s = u.toStringArray();
+		if (u instanceof Employee)
+			s[4] = "$" + s[4];
+		return s[column];
+	}
+
+	@Override
+	public void itemAdded(Item item) {
+	}
+
+	@Override
+	public void itemChanged(Item item) {
+	}
+
+	@Override
+	public void itemRemoved(Item item) {
+	}
+
+	@Override
+	public void userAdded(User user) {
+		userReplaced(user);
+	}
+
+	@Override
+	public void userReplaced(User user) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				boolean replaced = rows.put(user) != null;
+				int index = rows.rank(user);
+				if (replaced)
+					fireTableRowsUpdated(index, index);
+				else
+					fireTableRowsInserted(index, index);
+			}
+		});
+	}
+}
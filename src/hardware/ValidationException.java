@@ -0,0 +1,26 @@
+package hardware;
+
+/**
+ * This exception is thrown by InventoryService when a change breaks one of the
+ * rules which the forms check, such as an unknown item ID or a quantity
+ * larger than the stock. Its message tells what is expected instead.
+ * 
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class ValidationException extends Exception {
+	private static final long serialVersionUID = -2309587437861934770L;
+
+	/**
+	 * This constructor records no stack trace, which would cost more than the
+	 * check itself when a batch rejects many lines, and would only point at
+	 * the check which is already named by the message.
+	 *
+	 * @param message
+	 *            what was expected instead of the rejected input.
+	 */
+	public ValidationException(String message) {
+		super(message, null, false, false);
+	}
+}
@@ -0,0 +1,19 @@
+package hardware.legacy;
+
+/**
+ * This class has the serialized fields of an Appliance in database.srl.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+class Appliance extends Item {
+	private static final long serialVersionUID = -6956503668441872944L;
+	private String brand;
+	private byte type;
+
+	@Override
+	hardware.Item convert(int key) {
+		return new hardware.Appliance(key, name, quantity, price, brand, type);
+	}
+}
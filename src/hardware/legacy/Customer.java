@@ -0,0 +1,18 @@
+package hardware.legacy;
+
+/**
+ * This class has the serialized fields of a Customer in database.srl.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+class Customer extends User {
+	private static final long serialVersionUID = 7763308262657582054L;
+	private String phone, address;
+
+	@Override
+	hardware.User convert() {
+		return new hardware.Customer(ID, firstName, lastName, phone, address);
+	}
+}
@@ -0,0 +1,19 @@
+package hardware.legacy;
+
+/**
+ * This class has the serialized fields of an Employee in database.srl.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+class Employee extends User {
+	private static final long serialVersionUID = -3139314890369541999L;
+	private float salary;
+	private int ssn;
+
+	@Override
+	hardware.User convert() {
+		return new hardware.Employee(ID, firstName, lastName, ssn, salary);
+	}
+}
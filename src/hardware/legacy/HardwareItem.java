@@ -0,0 +1,18 @@
+package hardware.legacy;
+
+/**
+ * This class has the serialized fields of a HardwareItem in database.srl.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+class HardwareItem extends Item {
+	private static final long serialVersionUID = -2581325354044554553L;
+	private byte category;
+
+	@Override
+	hardware.Item convert(int key) {
+		return new hardware.HardwareItem(key, name, quantity, price, category);
+	}
+}
@@ -0,0 +1,38 @@
+package hardware.legacy;
+
+import java.io.Serializable;
+
+/**
+ * This class has the serialized fields of an Item in database.srl. The
+ * FormLine objects it was saved with are skipped.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+abstract class Item implements Serializable {
+	private static final long serialVersionUID = -8698502419721443470L;
+	/**
+	 * The ID of this Item, 5 alphanumeric characters.
+	 */
+	protected String ID;
+	/**
+	 * The name of this Item.
+	 */
+	protected String name;
+	/**
+	 * The price of this Item.
+	 */
+	protected float price;
+	/**
+	 * The quantity of this Item in stock.
+	 */
+	protected int quantity;
+
+	/**
+	 * @param key
+	 *            the key of this Item, packed from its ID by ItemIDCodec.
+	 * @return the Item in the current format.
+	 */
+	abstract hardware.Item convert(int key);
+}
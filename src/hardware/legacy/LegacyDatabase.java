@@ -0,0 +1,126 @@
+package hardware.legacy;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.logging.Logger;
+
+import hardware.Inventory;
+import hardware.ItemIDCodec;
+import hardware.TransactionLog;
+
+/**
+ * This class reads database.srl, the database file which earlier versions
+ * wrote with Java serialization, so that it can be saved again as a snapshot.
+ * <p>
+ * The file holds a Main object with its items, users and transactions, which
+ * were written together with the forms they showed. Those classes have since
+ * changed, so the file is read through the classes of this package instead,
+ * which have the serialized fields of the earlier ones and their
+ * serialVersionUIDs. No other class is resolved: the forms and their Swing
+ * components are skipped, and are never instantiated.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+public class LegacyDatabase {
+	/**
+	 * This class resolves the classes of the earlier versions to the classes
+	 * of this package, and the few classes of the JDK which their fields use
+	 * to themselves. Every other class is treated as not found.
+	 */
+	private static class LegacyInputStream extends ObjectInputStream {
+		LegacyInputStream(String filename) throws IOException {
+			super(new BufferedInputStream(new FileInputStream(filename)));
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			String name = desc.getName();
+			if (name.startsWith(LEGACY_PACKAGE)) {
+				String simpleName = name.substring(LEGACY_PACKAGE.length());
+				for (Class<?> c : LEGACY_CLASSES) {
+					if (c.getSimpleName().equals(simpleName))
+						return c;
+				}
+			} else if (name.matches("\\[+[ZBCSIJFD]") || name.equals("java.util.ArrayList")
+					|| name.equals("java.util.Date") || name.matches("java\\.lang\\.[A-Za-z]+")) {
+				return super.resolveClass(desc);
+			}
+			throw new ClassNotFoundException(name);
+		}
+	}
+
+	private static final Class<?>[] LEGACY_CLASSES = { Appliance.class, Customer.class, Employee.class,
+			HardwareItem.class, Item.class, Main.class, Transaction.class, User.class };
+	private static final String LEGACY_PACKAGE = "hardware.";
+	private static final Logger LOGGER = Logger.getGlobal();
+
+	private LegacyDatabase() {
+	}
+
+	/**
+	 * This method reads a legacy database file into an empty store. Item IDs
+	 * are packed into keys by ItemIDCodec. Items with an ID which cannot be
+	 * packed, and transactions of such items, are left out with a warning, as
+	 * are items and users whose ID is taken.
+	 *
+	 * @param filename
+	 *            the name of the legacy database file.
+	 * @param inventory
+	 *            the Inventory the items and users are added to.
+	 * @param transactions
+	 *            the TransactionLog the transactions are appended to.
+	 * @return the ID the next new User is to be given.
+	 * @throws IOException
+	 *             when the file cannot be read or does not hold a Main object
+	 *             of an earlier version.
+	 */
+	public static int read(String filename, Inventory inventory, TransactionLog transactions) throws IOException {
+		Main main;
+		try (ObjectInputStream in = new LegacyInputStream(filename)) {
+			Object object = in.readObject();
+			if (!(object instanceof Main))
+				throw new InvalidObjectException(filename + " does not hold a store.");
+			main = (Main) object;
+		} catch (ClassNotFoundException e) {
+			throw new InvalidClassException(e.getMessage(), "Unexpected class in " + filename);
+		}
+		int skipped = 0;
+		if (main.items != null) {
+			for (Item item : main.items) {
+				int key = ItemIDCodec.encode(item.ID);
+				if (key == ItemIDCodec.NO_KEY || !inventory.addItem(item.convert(key))) {
+					LOGGER.warning("Legacy item " + item.ID + " is left out: its ID is invalid or taken.");
+					skipped++;
+				}
+			}
+		}
+		if (main.users != null) {
+			for (User user : main.users) {
+				if (!inventory.addUser(user.convert())) {
+					LOGGER.warning("Legacy user " + user.ID + " is left out: its ID is taken.");
+					skipped++;
+				}
+			}
+		}
+		if (main.transactions != null) {
+			for (Transaction transaction : main.transactions) {
+				int key = ItemIDCodec.encode(transaction.itemID);
+				if (key == ItemIDCodec.NO_KEY) {
+					LOGGER.warning("Legacy transaction of item " + transaction.itemID + " is left out.");
+					skipped++;
+				} else {
+					transactions.append(transaction.convert(key));
+				}
+			}
+		}
+		LOGGER.info("Read " + filename + ", leaving out " + skipped + " entries.");
+		return Math.max(1, main.nextUserID);
+	}
+}
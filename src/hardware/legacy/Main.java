@@ -0,0 +1,32 @@
+package hardware.legacy;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * This class has the serialized fields of the Main object which database.srl
+ * holds.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+class Main implements Serializable {
+	private static final long serialVersionUID = -8400643378888310221L;
+	/**
+	 * The items of the store.
+	 */
+	ArrayList<Item> items;
+	/**
+	 * The ID the next new User is given.
+	 */
+	int nextUserID;
+	/**
+	 * The transactions of the store, oldest first.
+	 */
+	ArrayList<Transaction> transactions;
+	/**
+	 * The users of the store.
+	 */
+	ArrayList<User> users;
+}
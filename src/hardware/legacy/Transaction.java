@@ -0,0 +1,31 @@
+package hardware.legacy;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * This class has the serialized fields of a Transaction in database.srl. The
+ * lists of items and users and the Form it was saved with are skipped.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+class Transaction implements Serializable {
+	private static final long serialVersionUID = -7056694461443042602L;
+	private Date date;
+	/**
+	 * The ID of the sold Item, 5 alphanumeric characters.
+	 */
+	String itemID;
+	private int quantity, customerID, employeeID;
+
+	/**
+	 * @param itemKey
+	 *            the key of the sold Item, packed from itemID by ItemIDCodec.
+	 * @return the Transaction in the current format.
+	 */
+	hardware.Transaction convert(int itemKey) {
+		return new hardware.Transaction(date, itemKey, quantity, customerID, employeeID);
+	}
+}
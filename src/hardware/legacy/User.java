@@ -0,0 +1,32 @@
+package hardware.legacy;
+
+import java.io.Serializable;
+
+/**
+ * This class has the serialized fields of a User in database.srl. The
+ * FormLine objects it was saved with are skipped.
+ *
+ * @author Peter Wesley Hutcheson
+ * @version 1.0
+ * @since 1.0
+ */
+abstract class User implements Serializable {
+	private static final long serialVersionUID = -6645417989631435674L;
+	/**
+	 * The first name of this User.
+	 */
+	protected String firstName;
+	/**
+	 * The ID of this User.
+	 */
+	protected int ID;
+	/**
+	 * The last name of this User.
+	 */
+	protected String lastName;
+
+	/**
+	 * @return the User in the current format.
+	 */
+	abstract hardware.User convert();
+}